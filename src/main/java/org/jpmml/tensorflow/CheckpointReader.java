@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.primitives.Ints;
+import org.tensorflow.framework.DataType;
+import org.tensorflow.util.BundleEntryProto;
+import org.tensorflow.util.BundleHeaderProto;
+
+/**
+ * <p>
+ * A pure-Java reader for TensorFlow V2 checkpoints (aka tensor bundles).
+ * </p>
+ *
+ * A checkpoint consists of an index file <code>&lt;prefix&gt;.index</code>, which is a LevelDB-style sorted string table (SSTable) that maps tensor names to {@link BundleEntryProto} messages,
+ * and one or more data files <code>&lt;prefix&gt;.data-&lt;shard&gt;-of-&lt;shards&gt;</code>, which hold the tensor contents.
+ * Tensors are memory-mapped and decoded on demand, one at a time, so that data files may be larger than 2 GB.
+ */
+public class CheckpointReader implements AutoCloseable {
+
+	private BundleHeaderProto header = null;
+
+	private Map<String, BundleEntryProto> entries = null;
+
+	private FileChannel[] shards = null;
+
+
+	/**
+	 * @param prefix The checkpoint prefix. For a SavedModel directory, this is <code>variables/variables</code>.
+	 */
+	public CheckpointReader(File prefix) throws IOException {
+		File indexFile = new File(prefix.getPath() + ".index");
+
+		ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()))
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+		Map<String, BundleEntryProto> entries = new LinkedHashMap<>();
+
+		ByteBuffer indexBlock = readTableIndexBlock(index);
+
+		byte[] lastIndexKey = null;
+
+		while(indexBlock.hasRemaining()){
+			Map.Entry<byte[], ByteBuffer> indexEntry = readBlockEntry(indexBlock, lastIndexKey);
+
+			lastIndexKey = indexEntry.getKey();
+
+			ByteBuffer dataBlock = readBlock(index, indexEntry.getValue());
+
+			byte[] lastKey = null;
+
+			while(dataBlock.hasRemaining()){
+				Map.Entry<byte[], ByteBuffer> dataEntry = readBlockEntry(dataBlock, lastKey);
+
+				byte[] key = dataEntry.getKey();
+
+				if(key.length == 0){
+					this.header = BundleHeaderProto.parseFrom(dataEntry.getValue());
+				} else
+
+				{
+					entries.put(new String(key, StandardCharsets.UTF_8), BundleEntryProto.parseFrom(dataEntry.getValue()));
+				}
+
+				lastKey = key;
+			}
+		}
+
+		if(this.header == null){
+			throw new IOException("Missing bundle header");
+		}
+
+		this.entries = entries;
+
+		int numShards = this.header.getNumShards();
+
+		this.shards = new FileChannel[numShards];
+
+		try {
+			for(int i = 0; i < numShards; i++){
+				File dataFile = new File(prefix.getPath() + String.format(".data-%05d-of-%05d", i, numShards));
+
+				this.shards[i] = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+			}
+		} catch(IOException ioe){
+			close();
+
+			throw ioe;
+		}
+	}
+
+	@Override
+	public void close(){
+		FileChannel[] shards = this.shards;
+
+		if(shards == null){
+			return;
+		}
+
+		this.shards = null;
+
+		// Mapped byte buffers stay valid after their channel has been closed, and are released by the garbage collector
+		for(FileChannel shard : shards){
+
+			if(shard == null){
+				continue;
+			}
+
+			try {
+				shard.close();
+			} catch(IOException ioe){
+				// Ignored
+			}
+		}
+	}
+
+	public Set<String> getKeys(){
+		return this.entries.keySet();
+	}
+
+	public BundleEntryProto getEntry(String key){
+		BundleEntryProto entry = this.entries.get(key);
+
+		if(entry == null){
+			throw new IllegalArgumentException(key);
+		}
+
+		return entry;
+	}
+
+	/**
+	 * @return A primitive array (for numeric and boolean tensors) or a {@link String} array (for string tensors).
+	 *
+	 * @see TensorUtil#toArray(org.tensorflow.Tensor)
+	 */
+	public Object getValues(String key){
+		BundleEntryProto entry = getEntry(key);
+
+		if(entry.getSlicesCount() > 0){
+			throw new IllegalArgumentException("Partitioned tensor " + key + " is not supported");
+		}
+
+		DataType dataType = entry.getDtype();
+
+		int numElements = ShapeUtil.getNumElements(entry.getShape());
+
+		ByteBuffer byteBuffer = getContent(entry);
+
+		switch(dataType){
+			case DT_STRING:
+				return (Utf8StringArray.decodeCheckpoint(byteBuffer, numElements)).toStringArray();
+			default:
+				return TensorUtil.toArray(dataType, numElements, byteBuffer);
+		}
+	}
+
+	private ByteBuffer getContent(BundleEntryProto entry){
+		FileChannel shard = this.shards[entry.getShardId()];
+
+		ByteBuffer content;
+
+		try {
+			// A data file may be larger than 2 GB, but a single tensor may not
+			content = shard.map(FileChannel.MapMode.READ_ONLY, entry.getOffset(), Ints.checkedCast(entry.getSize()));
+		} catch(IOException ioe){
+			throw new RuntimeException(ioe);
+		}
+
+		ByteOrder byteOrder;
+
+		BundleHeaderProto.Endianness endianness = this.header.getEndianness();
+		switch(endianness){
+			case LITTLE:
+				byteOrder = ByteOrder.LITTLE_ENDIAN;
+				break;
+			case BIG:
+				byteOrder = ByteOrder.BIG_ENDIAN;
+				break;
+			default:
+				throw new IllegalArgumentException();
+		}
+
+		return content.order(byteOrder);
+	}
+
+	static
+	private ByteBuffer readTableIndexBlock(ByteBuffer table) throws IOException {
+		int footerOffset = table.limit() - TABLE_FOOTER_SIZE;
+		if(footerOffset < 0){
+			throw new IOException("Truncated SSTable");
+		}
+
+		ByteBuffer footer = table.duplicate()
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+		footer.position(footerOffset);
+
+		// The metaindex block handle
+		readVarint(footer);
+		readVarint(footer);
+
+		long indexOffset = readVarint(footer);
+		long indexSize = readVarint(footer);
+
+		long magic = footer.getLong(table.limit() - 8);
+		if(magic != TABLE_MAGIC){
+			throw new IOException("Invalid SSTable magic number " + Long.toHexString(magic));
+		}
+
+		return readBlock(table, indexOffset, indexSize);
+	}
+
+	static
+	private ByteBuffer readBlock(ByteBuffer table, ByteBuffer blockHandle) throws IOException {
+		long offset = readVarint(blockHandle);
+		long size = readVarint(blockHandle);
+
+		return readBlock(table, offset, size);
+	}
+
+	/**
+	 * @return A buffer that spans block entries, but not block restart points.
+	 */
+	static
+	private ByteBuffer readBlock(ByteBuffer table, long offset, long size) throws IOException {
+		ByteBuffer block = table.duplicate()
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+		block.position(Ints.checkedCast(offset));
+		block.limit(Ints.checkedCast(offset + size));
+
+		// The block trailer is 1-byte compression type followed by a 4-byte checksum
+		int compressionType = table.get(Ints.checkedCast(offset + size));
+		if(compressionType != 0){
+			throw new IOException("Compressed SSTable blocks are not supported");
+		}
+
+		block = block.slice()
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+		int numRestarts = block.getInt(block.limit() - 4);
+
+		block.limit(block.limit() - 4 - (numRestarts * 4));
+
+		return block;
+	}
+
+	/**
+	 * @param lastKey The key of the previous entry in the same block. Keys are prefix-compressed against it.
+	 */
+	static
+	private Map.Entry<byte[], ByteBuffer> readBlockEntry(ByteBuffer block, byte[] lastKey){
+		int shared = Ints.checkedCast(readVarint(block));
+		int nonShared = Ints.checkedCast(readVarint(block));
+		int valueLength = Ints.checkedCast(readVarint(block));
+
+		byte[] keyBytes = new byte[shared + nonShared];
+
+		if(shared > 0){
+			System.arraycopy(lastKey, 0, keyBytes, 0, shared);
+		}
+
+		block.get(keyBytes, shared, nonShared);
+
+		ByteBuffer value = block.slice();
+
+		value.limit(valueLength);
+
+		block.position(block.position() + valueLength);
+
+		return new AbstractMap.SimpleImmutableEntry<>(keyBytes, value);
+	}
+
+	static
+	private long readVarint(ByteBuffer byteBuffer){
+		long result = 0;
+
+		for(int shift = 0; shift < 64; shift += 7){
+			byte b = byteBuffer.get();
+
+			result |= (long)(b & 0x7F) << shift;
+
+			if((b & 0x80) == 0){
+				return result;
+			}
+		}
+
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	/**
+	 * Two block handles (padded to 40 bytes) followed by an 8-byte magic number.
+	 */
+	private static final int TABLE_FOOTER_SIZE = 48;
+
+	private static final long TABLE_MAGIC = 0xdb4775248b80fb57L;
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Longs;
+
+/**
+ * <p>
+ * A content-addressed store of PMML documents on the local filesystem.
+ * </p>
+ *
+ * A SavedModel directory is identified by the SHA-256 fingerprint of its graph file and its variable files.
+ * When the total size of the store exceeds the limit, the least recently used documents are evicted.
+ */
+public class ConversionCache {
+
+	private File dir = null;
+
+	private long maxSize = 0;
+
+	private boolean compress = false;
+
+
+	public ConversionCache(File dir, long maxSize, boolean compress) throws IOException {
+		this.dir = dir;
+		this.maxSize = maxSize;
+		this.compress = compress;
+
+		if(!dir.isDirectory() && !dir.mkdirs()){
+			throw new IOException("Failed to create cache directory " + dir);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the PMML document was found and copied to the output file, <code>false</code> otherwise.
+	 */
+	public boolean get(String key, File output) throws IOException {
+		File file = getFile(key);
+
+		if(!file.isFile()){
+			return false;
+		}
+
+		try(InputStream is = openInputStream(file); OutputStream os = new FileOutputStream(output)){
+			ByteStreams.copy(is, os);
+		} catch(IOException ioe){
+			// The entry may have been evicted by a concurrent writer
+			if(!file.isFile()){
+				return false;
+			}
+
+			throw ioe;
+		}
+
+		// Mark as recently used
+		file.setLastModified(System.currentTimeMillis());
+
+		return true;
+	}
+
+	public void put(String key, File input) throws IOException {
+		File file = getFile(key);
+
+		File tempFile = File.createTempFile("entry", ".tmp", this.dir);
+
+		try {
+			try(InputStream is = new FileInputStream(input); OutputStream os = openOutputStream(tempFile)){
+				ByteStreams.copy(is, os);
+			}
+
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
+		}
+
+		evict();
+	}
+
+	synchronized
+	private void evict(){
+		String suffix = getSuffix();
+
+		File[] files = this.dir.listFiles();
+		if(files == null){
+			return;
+		}
+
+		List<File> entries = new ArrayList<>();
+
+		long size = 0;
+
+		for(File file : files){
+
+			if(!(file.getName()).endsWith(suffix)){
+				continue;
+			}
+
+			entries.add(file);
+
+			size += file.length();
+		}
+
+		if(size <= this.maxSize){
+			return;
+		}
+
+		Comparator<File> comparator = new Comparator<File>(){
+
+			@Override
+			public int compare(File left, File right){
+				return Longs.compare(left.lastModified(), right.lastModified());
+			}
+		};
+
+		Collections.sort(entries, comparator);
+
+		for(File entry : entries){
+
+			if(size <= this.maxSize){
+				break;
+			}
+
+			long length = entry.length();
+
+			if(entry.delete()){
+				size -= length;
+			}
+		}
+	}
+
+	private File getFile(String key){
+		return new File(this.dir, key + getSuffix());
+	}
+
+	private String getSuffix(){
+		return (this.compress ? ".pmml.gz" : ".pmml");
+	}
+
+	private InputStream openInputStream(File file) throws IOException {
+		InputStream is = new FileInputStream(file);
+
+		if(this.compress){
+			is = new GZIPInputStream(is, 64 * 1024);
+		}
+
+		return is;
+	}
+
+	private OutputStream openOutputStream(File file) throws IOException {
+		OutputStream os = new FileOutputStream(file);
+
+		if(this.compress){
+			os = new GZIPOutputStream(os, 64 * 1024);
+		}
+
+		return os;
+	}
+
+	public File getDir(){
+		return this.dir;
+	}
+
+	public long getMaxSize(){
+		return this.maxSize;
+	}
+
+	public boolean getCompress(){
+		return this.compress;
+	}
+
+	/**
+	 * <p>
+	 * Computes the fingerprint of a SavedModel directory.
+	 * </p>
+	 *
+	 * The fingerprint covers the <code>saved_model.pb</code> or <code>saved_model.pbtxt</code> file, and all files in the <code>variables</code> directory.
+	 * The names of files are hashed together with their contents, so that renamed files yield a different fingerprint.
+	 *
+	 * @param salt Any other input that affects the result of the conversion, such as the version of the converter.
+	 */
+	static
+	public String fingerprint(File savedModelDir, String salt) throws IOException {
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException nsae){
+			throw new IllegalStateException(nsae);
+		}
+
+		update(digest, salt);
+
+		List<String> names = new ArrayList<>();
+
+		for(String name : Arrays.asList("saved_model.pb", "saved_model.pbtxt")){
+
+			if((new File(savedModelDir, name)).isFile()){
+				names.add(name);
+			}
+		}
+
+		if(names.isEmpty()){
+			throw new IllegalArgumentException("Directory " + savedModelDir + " is not a SavedModel directory");
+		}
+
+		File variablesDir = new File(savedModelDir, "variables");
+
+		String[] variableNames = variablesDir.list();
+		if(variableNames != null){
+			Arrays.sort(variableNames);
+
+			for(String variableName : variableNames){
+				names.add("variables/" + variableName);
+			}
+		}
+
+		byte[] buffer = new byte[64 * 1024];
+
+		for(String name : names){
+			File file = new File(savedModelDir, name);
+
+			if(!file.isFile()){
+				continue;
+			}
+
+			update(digest, name);
+			update(digest, String.valueOf(file.length()));
+
+			try(InputStream is = new FileInputStream(file)){
+
+				while(true){
+					int count = is.read(buffer);
+
+					if(count < 0){
+						break;
+					}
+
+					digest.update(buffer, 0, count);
+				}
+			}
+		}
+
+		return BaseEncoding.base16().lowerCase().encode(digest.digest());
+	}
+
+	static
+	private void update(MessageDigest digest, String value){
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+/**
+ * <p>
+ * A service provider interface for observing the phases of a conversion.
+ * </p>
+ *
+ * Listeners are discovered using {@link java.util.ServiceLoader}, or registered programmatically using {@link ConversionMetrics#addListener(ConversionListener)}.
+ * Phases nest. On any given thread, a phase ends before its enclosing phase does.
+ */
+public interface ConversionListener {
+
+	/**
+	 * @return <code>true</code> if this listener wants to be notified about phases right now, <code>false</code> otherwise.
+	 * If no listener is enabled, then phases are not measured at all.
+	 */
+	boolean isEnabled();
+
+	void phaseStarted(ConversionPhase phase);
+
+	void phaseEnded(ConversionPhase phase);
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Measures conversion phases, and reports them to registered {@link ConversionListener listeners}.
+ * </p>
+ *
+ * <pre>
+ * try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.ENCODE_LAYER, name)){
+ *   // Do the work
+ *   phase.addBytes(bytes);
+ * }
+ * </pre>
+ */
+public class ConversionMetrics {
+
+	private ConversionMetrics(){
+	}
+
+	/**
+	 * <p>
+	 * Begins a phase, and reports it to all enabled listeners.
+	 * </p>
+	 *
+	 * The end of the phase is reported to the same listeners, even if they have been disabled or removed in the meantime.
+	 * Listeners that are enabled or added in the meantime are not notified.
+	 */
+	static
+	public ConversionPhase begin(ConversionPhase.Type type, String name){
+		List<ConversionListener> listeners = getEnabledListeners();
+
+		ConversionPhase phase = new ConversionPhase(type, name, ConversionMetrics.model.get(), listeners);
+
+		if(phase.isEnabled()){
+
+			for(ConversionListener listener : listeners){
+				listener.phaseStarted(phase);
+			}
+
+			phase.setStartAllocatedBytes(getAllocatedBytes());
+			phase.setStartTime(System.nanoTime());
+		}
+
+		return phase;
+	}
+
+	static
+	void end(ConversionPhase phase){
+		phase.setDuration(System.nanoTime() - phase.getStartTime());
+
+		long startAllocatedBytes = phase.getStartAllocatedBytes();
+		if(startAllocatedBytes > -1L){
+			phase.setAllocatedBytes(getAllocatedBytes() - startAllocatedBytes);
+		}
+
+		List<ConversionListener> listeners = phase.getListeners();
+
+		for(ConversionListener listener : listeners){
+			listener.phaseEnded(phase);
+		}
+	}
+
+	static
+	public boolean isEnabled(){
+
+		for(ConversionListener listener : ConversionMetrics.listeners){
+
+			if(listener.isEnabled()){
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	static
+	public void addListener(ConversionListener listener){
+		ConversionMetrics.listeners.add(listener);
+	}
+
+	static
+	public void removeListener(ConversionListener listener){
+		ConversionMetrics.listeners.remove(listener);
+	}
+
+	/**
+	 * <p>
+	 * Associates the phases that are started on the current thread with a model.
+	 * </p>
+	 */
+	static
+	public void setModel(String model){
+
+		if(model != null){
+			ConversionMetrics.model.set(model);
+		} else
+
+		{
+			ConversionMetrics.model.remove();
+		}
+	}
+
+	static
+	public String getModel(){
+		return ConversionMetrics.model.get();
+	}
+
+	static
+	private List<ConversionListener> getEnabledListeners(){
+		List<ConversionListener> result = null;
+
+		for(ConversionListener listener : ConversionMetrics.listeners){
+
+			if(listener.isEnabled()){
+
+				if(result == null){
+					result = new ArrayList<>(ConversionMetrics.listeners.size());
+				}
+
+				result.add(listener);
+			}
+		}
+
+		if(result == null){
+			return Collections.emptyList();
+		}
+
+		return result;
+	}
+
+	static
+	private long getAllocatedBytes(){
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+		if(threadMXBean instanceof com.sun.management.ThreadMXBean){
+			com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean)threadMXBean;
+
+			if(sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled()){
+				return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+
+		return -1L;
+	}
+
+	static
+	private List<ConversionListener> loadListeners(){
+		List<ConversionListener> result = new CopyOnWriteArrayList<>();
+
+		ServiceLoader<ConversionListener> serviceLoader = ServiceLoader.load(ConversionListener.class);
+
+		Iterator<ConversionListener> it = serviceLoader.iterator();
+
+		while(true){
+
+			try {
+				if(!it.hasNext()){
+					break;
+				}
+
+				result.add(it.next());
+			} catch(ServiceConfigurationError | LinkageError e){
+				// The JFR listener requires Java 8u262 or newer
+				logger.debug("Failed to load conversion listener", e);
+			}
+		}
+
+		return result;
+	}
+
+	private static final ThreadLocal<String> model = new ThreadLocal<>();
+
+	private static final List<ConversionListener> listeners = loadListeners();
+
+	private static final Logger logger = LoggerFactory.getLogger(ConversionMetrics.class);
+}
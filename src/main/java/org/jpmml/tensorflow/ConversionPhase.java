@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.List;
+
+/**
+ * @see ConversionMetrics#begin(ConversionPhase.Type, String)
+ */
+public class ConversionPhase implements AutoCloseable {
+
+	private Type type = null;
+
+	private String name = null;
+
+	private String model = null;
+
+	private List<ConversionListener> listeners = null;
+
+	private long startTime = 0L;
+
+	private long duration = -1L;
+
+	private long startAllocatedBytes = -1L;
+
+	private long allocatedBytes = -1L;
+
+	private long bytes = 0L;
+
+	private long nativeBytes = 0L;
+
+
+	ConversionPhase(Type type, String name, String model, List<ConversionListener> listeners){
+		this.type = type;
+		this.name = name;
+		this.model = model;
+		this.listeners = listeners;
+	}
+
+	@Override
+	public void close(){
+
+		if(isEnabled()){
+			ConversionMetrics.end(this);
+		}
+	}
+
+	/**
+	 * @param bytes The size of the data that was processed during this phase.
+	 */
+	public ConversionPhase addBytes(long bytes){
+
+		if(isEnabled()){
+			this.bytes += bytes;
+		}
+
+		return this;
+	}
+
+	/**
+	 * @param nativeBytes The size of the native TensorFlow memory that was allocated during this phase.
+	 */
+	public ConversionPhase addNativeBytes(long nativeBytes){
+
+		if(isEnabled()){
+			this.nativeBytes += nativeBytes;
+		}
+
+		return this;
+	}
+
+	public Type getType(){
+		return this.type;
+	}
+
+	public String getName(){
+		return this.name;
+	}
+
+	/**
+	 * @return The name of the model that is being converted, or <code>null</code>.
+	 *
+	 * @see ConversionMetrics#setModel(String)
+	 */
+	public String getModel(){
+		return this.model;
+	}
+
+	public boolean isEnabled(){
+		return !this.listeners.isEmpty();
+	}
+
+	/**
+	 * @return The listeners that were notified about the start of this phase.
+	 */
+	List<ConversionListener> getListeners(){
+		return this.listeners;
+	}
+
+	/**
+	 * @return The start time, as returned by {@link System#nanoTime()}.
+	 */
+	public long getStartTime(){
+		return this.startTime;
+	}
+
+	void setStartTime(long startTime){
+		this.startTime = startTime;
+	}
+
+	/**
+	 * @return The duration in nanoseconds, or <code>-1</code> if the phase has not ended yet.
+	 */
+	public long getDuration(){
+		return this.duration;
+	}
+
+	void setDuration(long duration){
+		this.duration = duration;
+	}
+
+	long getStartAllocatedBytes(){
+		return this.startAllocatedBytes;
+	}
+
+	void setStartAllocatedBytes(long startAllocatedBytes){
+		this.startAllocatedBytes = startAllocatedBytes;
+	}
+
+	/**
+	 * @return The size of the Java heap memory that was allocated by the current thread during this phase, or <code>-1</code> if not available.
+	 */
+	public long getAllocatedBytes(){
+		return this.allocatedBytes;
+	}
+
+	void setAllocatedBytes(long allocatedBytes){
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	public long getBytes(){
+		return this.bytes;
+	}
+
+	public long getNativeBytes(){
+		return this.nativeBytes;
+	}
+
+	@Override
+	public String toString(){
+		return this.type + " " + this.name + " (" + (this.duration / 1000000d) + " ms., " + this.allocatedBytes + " allocated bytes, " + this.bytes + " bytes, " + this.nativeBytes + " native bytes)";
+	}
+
+	static
+	public enum Type {
+		LOAD_SAVED_MODEL,
+		PARSE_GRAPH,
+		BUILD_INDEX,
+		INITIALIZE_TABLE,
+		FETCH_VARIABLES,
+		FETCH_VARIABLE,
+		ENCODE_MODEL,
+		ENCODE_LAYER,
+		MARSHAL_PMML,
+		;
+	}
+}
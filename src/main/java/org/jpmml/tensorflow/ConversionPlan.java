@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.dmg.pmml.PMML;
+import org.dmg.pmml.PMMLObject;
+import org.dmg.pmml.VisitorAction;
+import org.dmg.pmml.neural_network.Connection;
+import org.dmg.pmml.neural_network.Neuron;
+import org.dmg.pmml.regression.CategoricalPredictor;
+import org.dmg.pmml.regression.NumericPredictor;
+import org.dmg.pmml.regression.RegressionTable;
+import org.jpmml.model.JAXBUtil;
+import org.jpmml.model.visitors.AbstractVisitor;
+
+/**
+ * <p>
+ * A PMML document together with the locations of all the values that were taken from the variables of the SavedModel.
+ * </p>
+ *
+ * A conversion plan is created by converting a SavedModel once, using {@link Estimator#encodeConversionPlan()}.
+ * It can then be applied to the variables of any SavedModel that has an identical graph.
+ * Neuron biases, connection weights, regression table intercepts and regression coefficients are patched in place,
+ * without parsing the graph, initializing lookup tables, or building the data dictionary again.
+ *
+ * Zero values are omitted from the PMML document, so they do not have locations.
+ * If a value that was zero has become non-zero, then the conversion plan is not applicable, and the SavedModel must be converted anew.
+ */
+public class ConversionPlan {
+
+	private String head = null;
+
+	private PMML pmml = null;
+
+	private List<String> variableNames = null;
+
+	private List<String> checkpointKeys = null;
+
+	private int[] variableSizes = null;
+
+	private int[] slotVariables = null;
+
+	private int[] slotIndices = null;
+
+
+	private ConversionPlan(String head, PMML pmml, List<String> variableNames, List<String> checkpointKeys, int[] variableSizes, int[] slotVariables, int[] slotIndices){
+		this.head = head;
+		this.pmml = pmml;
+		this.variableNames = variableNames;
+		this.checkpointKeys = checkpointKeys;
+		this.variableSizes = variableSizes;
+		this.slotVariables = slotVariables;
+		this.slotIndices = slotIndices;
+	}
+
+	/**
+	 * @param prefix The prefix of checkpoint files, such as <code>variables/variables</code>.
+	 *
+	 * @see #apply(CheckpointReader)
+	 */
+	public PMML apply(File prefix) throws IOException {
+
+		try(CheckpointReader checkpointReader = new CheckpointReader(prefix)){
+			return apply(checkpointReader);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Variables are looked up by the checkpoint keys that they had in the converted SavedModel.
+	 * </p>
+	 *
+	 * @see #apply(Map)
+	 */
+	public PMML apply(CheckpointReader checkpointReader){
+		Map<String, float[]> values = new HashMap<>();
+
+		try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.FETCH_VARIABLES, String.valueOf(this.variableNames.size()))){
+
+			for(int k = 0; k < this.variableNames.size(); k++){
+				String variableName = this.variableNames.get(k);
+
+				Object array = checkpointReader.getValues(this.checkpointKeys.get(k));
+
+				if(!(array instanceof float[])){
+					throw new IllegalArgumentException("Variable " + variableName + " is not a float tensor");
+				}
+
+				values.put(variableName, (float[])array);
+
+				phase.addBytes(4L * ((float[])array).length);
+			}
+		}
+
+		return apply(values);
+	}
+
+	/**
+	 * <p>
+	 * Patches the PMML document of this conversion plan in place.
+	 * All values are validated before the first one is patched, so a failed application leaves the PMML document unchanged.
+	 * </p>
+	 *
+	 * @param values A map from variable names to their values.
+	 *
+	 * @return The PMML document of this conversion plan.
+	 */
+	public PMML apply(Map<String, float[]> values){
+		float[][] arrays = new float[this.variableNames.size()][];
+
+		BitSet[] boundIndices = new BitSet[arrays.length];
+
+		for(int k = 0; k < arrays.length; k++){
+			String variableName = this.variableNames.get(k);
+
+			float[] array = values.get(variableName);
+			if(array == null){
+				throw new IllegalArgumentException("Variable " + variableName + " is not defined");
+			} // End if
+
+			if(array.length != this.variableSizes[k]){
+				throw new IllegalArgumentException("Variable " + variableName + " has " + array.length + " elements, expected " + this.variableSizes[k] + " elements");
+			}
+
+			arrays[k] = array;
+			boundIndices[k] = new BitSet(array.length);
+		}
+
+		List<PMMLObject> slots = collectSlots(this.pmml);
+		if(slots.size() != this.slotVariables.length){
+			throw new IllegalArgumentException("Expected " + this.slotVariables.length + " slots, got " + slots.size() + " slots");
+		}
+
+		ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.ENCODE_MODEL, "plan");
+
+		try {
+
+			for(int i = 0; i < slots.size(); i++){
+				int variable = this.slotVariables[i];
+
+				if(variable < 0){
+					continue;
+				}
+
+				int index = this.slotIndices[i];
+
+				float value = arrays[variable][index];
+				if(Float.isNaN(value)){
+					throw new IllegalArgumentException("Variable " + this.variableNames.get(variable) + " has a missing value at index " + index);
+				}
+
+				boundIndices[variable].set(index);
+			}
+
+			// The values that were omitted as zero must still be zero
+			for(int k = 0; k < arrays.length; k++){
+				float[] array = arrays[k];
+				BitSet indices = boundIndices[k];
+
+				for(int index = indices.nextClearBit(0); index < array.length; index = indices.nextClearBit(index + 1)){
+
+					if(!FloatMatrix.isMissing(array[index])){
+						throw new IllegalArgumentException("Variable " + this.variableNames.get(k) + " has a non-zero value at index " + index + ", where the conversion plan expects zero");
+					}
+				}
+			}
+
+			for(int i = 0; i < slots.size(); i++){
+				int variable = this.slotVariables[i];
+
+				if(variable < 0){
+					continue;
+				}
+
+				setValue(slots.get(i), FloatMatrix.toDouble(arrays[variable][this.slotIndices[i]]));
+			}
+		} finally {
+			phase.close();
+		}
+
+		return this.pmml;
+	}
+
+	public void write(OutputStream os) throws IOException, JAXBException {
+		GZIPOutputStream gzipOs = new GZIPOutputStream(os, 64 * 1024);
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(gzipOs, 64 * 1024));
+
+		dos.writeInt(ConversionPlan.MAGIC);
+		dos.writeInt(ConversionPlan.VERSION);
+
+		dos.writeUTF(this.head);
+
+		dos.writeInt(this.variableNames.size());
+
+		for(int k = 0; k < this.variableNames.size(); k++){
+			dos.writeUTF(this.variableNames.get(k));
+			dos.writeUTF(this.checkpointKeys.get(k));
+			dos.writeInt(this.variableSizes[k]);
+		}
+
+		dos.writeInt(this.slotVariables.length);
+
+		for(int i = 0; i < this.slotVariables.length; i++){
+			dos.writeInt(this.slotVariables[i]);
+			dos.writeInt(this.slotIndices[i]);
+		}
+
+		JAXBUtil.marshalPMML(this.pmml, new StreamResult(dos));
+
+		dos.flush();
+
+		// The underlying stream is left open
+		gzipOs.finish();
+	}
+
+	public String getHead(){
+		return this.head;
+	}
+
+	public PMML getPMML(){
+		return this.pmml;
+	}
+
+	public List<String> getVariableNames(){
+		return this.variableNames;
+	}
+
+	public List<String> getCheckpointKeys(){
+		return this.checkpointKeys;
+	}
+
+	static
+	public ConversionPlan read(InputStream is) throws IOException, JAXBException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new GZIPInputStream(is, 64 * 1024), 64 * 1024));
+
+		if(dis.readInt() != ConversionPlan.MAGIC){
+			throw new IOException("Not a conversion plan");
+		} // End if
+
+		if(dis.readInt() != ConversionPlan.VERSION){
+			throw new IOException("Unsupported conversion plan version");
+		}
+
+		String head = dis.readUTF();
+
+		int variableCount = dis.readInt();
+
+		List<String> variableNames = new ArrayList<>(variableCount);
+		List<String> checkpointKeys = new ArrayList<>(variableCount);
+		int[] variableSizes = new int[variableCount];
+
+		for(int k = 0; k < variableCount; k++){
+			variableNames.add(dis.readUTF());
+			checkpointKeys.add(dis.readUTF());
+			variableSizes[k] = dis.readInt();
+		}
+
+		int slotCount = dis.readInt();
+
+		int[] slotVariables = new int[slotCount];
+		int[] slotIndices = new int[slotCount];
+
+		for(int i = 0; i < slotCount; i++){
+			slotVariables[i] = dis.readInt();
+			slotIndices[i] = dis.readInt();
+
+			if(slotVariables[i] >= variableCount || (slotVariables[i] > -1 && (slotIndices[i] < 0 || slotIndices[i] >= variableSizes[slotVariables[i]]))){
+				throw new IOException("Invalid slot " + i);
+			}
+		}
+
+		PMML pmml = JAXBUtil.unmarshalPMML(new StreamSource(dis));
+
+		return new ConversionPlan(head, pmml, variableNames, checkpointKeys, variableSizes, slotVariables, slotIndices);
+	}
+
+	/**
+	 * <p>
+	 * Collects all PMML objects that hold a single variable-derived value, in document order.
+	 * </p>
+	 */
+	static
+	private List<PMMLObject> collectSlots(PMML pmml){
+		final
+		List<PMMLObject> result = new ArrayList<>();
+
+		AbstractVisitor visitor = new AbstractVisitor(){
+
+			@Override
+			public VisitorAction visit(Neuron neuron){
+				result.add(neuron);
+
+				return super.visit(neuron);
+			}
+
+			@Override
+			public VisitorAction visit(Connection connection){
+				result.add(connection);
+
+				return super.visit(connection);
+			}
+
+			@Override
+			public VisitorAction visit(RegressionTable regressionTable){
+				result.add(regressionTable);
+
+				return super.visit(regressionTable);
+			}
+
+			@Override
+			public VisitorAction visit(NumericPredictor numericPredictor){
+				result.add(numericPredictor);
+
+				return super.visit(numericPredictor);
+			}
+
+			@Override
+			public VisitorAction visit(CategoricalPredictor categoricalPredictor){
+				result.add(categoricalPredictor);
+
+				return super.visit(categoricalPredictor);
+			}
+		};
+		visitor.applyTo(pmml);
+
+		return result;
+	}
+
+	static
+	private void setValue(PMMLObject slot, double value){
+
+		if(slot instanceof Neuron){
+			((Neuron)slot).setBias(value);
+		} else
+
+		if(slot instanceof Connection){
+			((Connection)slot).setWeight(value);
+		} else
+
+		if(slot instanceof RegressionTable){
+			((RegressionTable)slot).setIntercept(value);
+		} else
+
+		if(slot instanceof NumericPredictor){
+			((NumericPredictor)slot).setCoefficient(value);
+		} else
+
+		if(slot instanceof CategoricalPredictor){
+			((CategoricalPredictor)slot).setCoefficient(value);
+		} else
+
+		{
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Records which variable elements the values of PMML objects are taken from, while an estimator is encoding the PMML document.
+	 * </p>
+	 */
+	static
+	public class Recorder {
+
+		private Map<String, Integer> variables = new LinkedHashMap<>();
+
+		private List<Integer> variableSizes = new ArrayList<>();
+
+		private Map<PMMLObject, int[]> bindings = new IdentityHashMap<>();
+
+
+		Recorder(){
+		}
+
+		/**
+		 * @return The identifier of the variable.
+		 */
+		public int addVariable(String name, int size){
+			Integer variable = this.variables.get(name);
+
+			if(variable == null){
+				variable = this.variables.size();
+
+				this.variables.put(name, variable);
+				this.variableSizes.add(size);
+			} else
+
+			{
+				if(this.variableSizes.get(variable) != size){
+					throw new IllegalArgumentException("Variable " + name + " has conflicting sizes");
+				}
+			}
+
+			return variable;
+		}
+
+		/**
+		 * @param slot A {@link Neuron}, {@link Connection}, {@link RegressionTable}, {@link NumericPredictor} or {@link CategoricalPredictor} object.
+		 * @param variable The identifier of the variable.
+		 * @param index The index of the element in the flattened variable.
+		 */
+		public void bind(PMMLObject slot, int variable, int index){
+
+			if(variable < 0 || variable >= this.variableSizes.size() || index < 0 || index >= this.variableSizes.get(variable)){
+				throw new IllegalArgumentException();
+			}
+
+			int[] binding = {variable, index};
+
+			if(this.bindings.put(slot, binding) != null){
+				throw new IllegalArgumentException("Slot " + slot + " is already bound");
+			}
+		}
+
+		ConversionPlan createPlan(String head, PMML pmml, SavedModel savedModel){
+			List<PMMLObject> slots = collectSlots(pmml);
+
+			int[] slotVariables = new int[slots.size()];
+			int[] slotIndices = new int[slots.size()];
+
+			int boundSlots = 0;
+
+			for(int i = 0; i < slots.size(); i++){
+				int[] binding = this.bindings.get(slots.get(i));
+
+				if(binding == null){
+					slotVariables[i] = -1;
+					slotIndices[i] = -1;
+
+					continue;
+				}
+
+				slotVariables[i] = binding[0];
+				slotIndices[i] = binding[1];
+
+				boundSlots++;
+			}
+
+			if(boundSlots != this.bindings.size()){
+				throw new IllegalArgumentException("Some bound slots are not part of the PMML document");
+			}
+
+			List<String> variableNames = new ArrayList<>(this.variables.keySet());
+			List<String> checkpointKeys = savedModel.getCheckpointKeys(variableNames);
+
+			int[] variableSizes = new int[this.variableSizes.size()];
+
+			for(int k = 0; k < variableSizes.length; k++){
+				variableSizes[k] = this.variableSizes.get(k);
+			}
+
+			return new ConversionPlan(head, pmml, variableNames, checkpointKeys, variableSizes, slotVariables, slotIndices);
+		}
+	}
+
+	private static final int MAGIC = 0x4A504C4E;
+
+	private static final int VERSION = 1;
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.dmg.pmml.PMML;
+import org.jpmml.model.MetroJAXBUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tensorflow.SavedModelBundle;
+
+/**
+ * <p>
+ * A long-running conversion service.
+ * </p>
+ *
+ * Endpoint <code>POST /convert</code> accepts either a <code>path</code> query parameter, which names a SavedModel directory in the local filesystem,
+ * or a request body, which is a (optionally gzip-compressed) tar archive of a SavedModel directory.
+ * The response body is the PMML document.
+ *
+ * At most <code>threads</code> conversions run at the same time, and at most <code>queueCapacity</code> requests wait for their turn.
+ * Requests over that limit are rejected with status code 503.
+ * Uploads over <code>maxUploadSize</code> bytes, or that extract to more than <code>maxExtractedSize</code> bytes or 10000 files, are rejected with status code 413.
+ */
+public class ConverterServer {
+
+	@Parameter (
+		names = "--help",
+		description = "Show the list of configuration options and exit",
+		help = true
+	)
+	private boolean help = false;
+
+	@Parameter (
+		names = "--host",
+		description = "Server host name or IP address"
+	)
+	private String host = InetAddress.getLoopbackAddress().getHostAddress();
+
+	@Parameter (
+		names = "--port",
+		description = "Server port"
+	)
+	private int port = 8080;
+
+	@Parameter (
+		names = "--threads",
+		description = "The number of concurrent conversions"
+	)
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	@Parameter (
+		names = "--queue-capacity",
+		description = "The number of conversion requests that may wait for a free thread"
+	)
+	private int queueCapacity = 16;
+
+	@Parameter (
+		names = "--max-upload-size",
+		description = "The maximum size of an uploaded tar archive, in bytes"
+	)
+	private long maxUploadSize = 1024L * 1024L * 1024L;
+
+	@Parameter (
+		names = "--max-extracted-size",
+		description = "The maximum size of the contents of an uploaded tar archive (after gzip decompression), in bytes"
+	)
+	private long maxExtractedSize = 4L * 1024L * 1024L * 1024L;
+
+	@Parameter (
+		names = "--tf-native",
+		description = "Load SavedModels using the native TensorFlow runtime",
+		arity = 1
+	)
+	private boolean _native = true;
+
+	private HttpServer server = null;
+
+	private ExecutorService executorService = null;
+
+	private Semaphore admissionPermits = null;
+
+	private Semaphore conversionPermits = null;
+
+
+	public ConverterServer(){
+	}
+
+	public ConverterServer(String host, int port, int threads, int queueCapacity, boolean _native){
+		this(host, port, threads, queueCapacity, 1024L * 1024L * 1024L, 4L * 1024L * 1024L * 1024L, _native);
+	}
+
+	public ConverterServer(String host, int port, int threads, int queueCapacity, long maxUploadSize, long maxExtractedSize, boolean _native){
+		this.host = host;
+		this.port = port;
+		this.threads = threads;
+		this.queueCapacity = queueCapacity;
+		this.maxUploadSize = maxUploadSize;
+		this.maxExtractedSize = maxExtractedSize;
+		this._native = _native;
+	}
+
+	static
+	public void main(String[] args) throws Exception {
+		ConverterServer converterServer = new ConverterServer();
+
+		JCommander commander = new JCommander(converterServer);
+		commander.setProgramName(ConverterServer.class.getName());
+
+		try {
+			commander.parse(args);
+		} catch(ParameterException pe){
+			StringBuilder sb = new StringBuilder();
+
+			sb.append(pe.toString());
+			sb.append("\n");
+
+			commander.usage(sb);
+
+			System.err.println(sb.toString());
+
+			System.exit(-1);
+		}
+
+		if(converterServer.help){
+			StringBuilder sb = new StringBuilder();
+
+			commander.usage(sb);
+
+			System.out.println(sb.toString());
+
+			System.exit(0);
+		}
+
+		converterServer.start();
+	}
+
+	public void start() throws IOException {
+
+		if(this.threads < 1 || this.queueCapacity < 0 || this.maxUploadSize < 0 || this.maxExtractedSize < 0){
+			throw new IllegalArgumentException();
+		}
+
+		this.admissionPermits = new Semaphore(this.threads + this.queueCapacity);
+		this.conversionPermits = new Semaphore(this.threads, true);
+
+		// Requests over the admission limit are answered right away, so the number of live handler threads stays bounded
+		this.executorService = Executors.newCachedThreadPool();
+
+		this.server = HttpServer.create(new InetSocketAddress(this.host, this.port), 0);
+		this.server.setExecutor(this.executorService);
+		this.server.createContext("/convert", new ConvertHandler());
+		this.server.start();
+
+		logger.info("Listening on {}", this.server.getAddress());
+	}
+
+	public void stop(){
+
+		if(this.server != null){
+			this.server.stop(0);
+
+			this.server = null;
+		} // End if
+
+		if(this.executorService != null){
+			this.executorService.shutdownNow();
+
+			this.executorService = null;
+		}
+	}
+
+	/**
+	 * @return The actual port. Differs from the configured port if the latter is <code>0</code>.
+	 */
+	public int getPort(){
+		return (this.server.getAddress()).getPort();
+	}
+
+	/**
+	 * @return The number of requests that are being converted or are waiting for their turn.
+	 */
+	public int getAdmittedRequests(){
+		return (this.threads + this.queueCapacity) - this.admissionPermits.availablePermits();
+	}
+
+	private SavedModel loadSavedModel(File dir) throws Exception {
+
+		ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.LOAD_SAVED_MODEL, dir.getPath());
+
+		try {
+
+			if(this._native){
+				SavedModelBundle bundle = SavedModelBundle.load(dir.getAbsolutePath(), "serve");
+
+				return new SavedModel(bundle);
+			}
+
+			return SavedModelUtil.load(dir, "serve");
+		} finally {
+			phase.close();
+		}
+	}
+
+	private class ConvertHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+
+			try {
+				if(!("POST").equals(exchange.getRequestMethod())){
+					sendError(exchange, 405, "Method " + exchange.getRequestMethod() + " is not allowed");
+
+					return;
+				} // End if
+
+				if(!admissionPermits.tryAcquire()){
+					sendError(exchange, 503, "Too many requests");
+
+					return;
+				}
+
+				try {
+					conversionPermits.acquire();
+
+					try {
+						handleConvert(exchange);
+					} finally {
+						conversionPermits.release();
+					}
+				} finally {
+					admissionPermits.release();
+				}
+			} catch(InterruptedException ie){
+				Thread.currentThread().interrupt();
+
+				sendError(exchange, 503, "Interrupted");
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private void handleConvert(HttpExchange exchange) throws IOException {
+			Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+
+			File tempDir = null;
+
+			try {
+				File dir;
+
+				String path = parameters.get("path");
+
+				ConversionMetrics.setModel(path != null ? path : "<upload>");
+
+				if(path != null){
+					dir = new File(path);
+				} else
+
+				{
+					String contentLength = (exchange.getRequestHeaders()).getFirst("Content-Length");
+
+					if(contentLength != null && Long.parseLong(contentLength) > maxUploadSize){
+						throw new UploadTooLargeException(maxUploadSize);
+					}
+
+					tempDir = Files.createTempDirectory("savedmodel").toFile();
+
+					// Chunked uploads do not declare their size in advance
+					try(CountingInputStream is = new CountingInputStream(ByteStreams.limit(exchange.getRequestBody(), maxUploadSize + 1))){
+
+						try {
+							// A small gzip-compressed archive can hold a very large SavedModel directory
+							TarUtil.extract(is, tempDir, maxExtractedSize, ConverterServer.MAX_ENTRIES);
+						} finally {
+
+							if(is.getCount() > maxUploadSize){
+								throw new UploadTooLargeException(maxUploadSize);
+							}
+						}
+					}
+
+					dir = findSavedModelDir(tempDir);
+				}
+
+				long begin = System.currentTimeMillis();
+
+				try(SavedModel savedModel = loadSavedModel(dir)){
+					EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+					Estimator estimator = estimatorFactory.newEstimator(savedModel);
+
+					PMML pmml = estimator.encodePMML();
+
+					// The PMML document is streamed using chunked transfer encoding.
+					// From this point on, failures cannot be reported with an error status code anymore
+					Headers responseHeaders = exchange.getResponseHeaders();
+					responseHeaders.set("Content-Type", "application/xml; charset=UTF-8");
+
+					exchange.sendResponseHeaders(200, 0);
+
+					ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.MARSHAL_PMML, "response");
+
+					try(OutputStream os = exchange.getResponseBody()){
+						MetroJAXBUtil.marshalPMML(pmml, os);
+					} finally {
+						phase.close();
+					}
+				}
+
+				long end = System.currentTimeMillis();
+
+				logger.info("Converted {} in {} ms.", (path != null ? path : "<upload>"), (end - begin));
+			} catch(Exception e){
+				logger.error("Failed to convert", e);
+
+				// The response status code has already been sent
+				if(exchange.getResponseCode() > 0){
+					return;
+				}
+
+				int status;
+
+				if(e instanceof UploadTooLargeException || e instanceof TarUtil.LimitExceededException){
+					status = 413;
+				} else
+
+				if(e instanceof IllegalArgumentException || e instanceof IOException){
+					status = 400;
+				} else
+
+				{
+					status = 500;
+				}
+
+				sendError(exchange, status, String.valueOf(e));
+			} finally {
+				ConversionMetrics.setModel(null);
+
+				if(tempDir != null){
+					delete(tempDir);
+				}
+			}
+		}
+	}
+
+	static
+	private class UploadTooLargeException extends IOException {
+
+		private UploadTooLargeException(long maxUploadSize){
+			super("Upload size exceeds the limit of " + maxUploadSize + " bytes");
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * <p>
+	 * A tar archive may hold the contents of a SavedModel directory either at the top level, or inside a single top-level directory.
+	 * </p>
+	 */
+	static
+	private File findSavedModelDir(File dir) throws IOException {
+
+		if(isSavedModelDir(dir)){
+			return dir;
+		}
+
+		File[] children = dir.listFiles();
+		if(children != null && children.length == 1 && isSavedModelDir(children[0])){
+			return children[0];
+		}
+
+		throw new IllegalArgumentException("Tar archive does not contain a SavedModel directory");
+	}
+
+	static
+	private boolean isSavedModelDir(File dir){
+		return (new File(dir, "saved_model.pb")).isFile() || (new File(dir, "saved_model.pbtxt")).isFile();
+	}
+
+	static
+	private void delete(File file){
+		File[] children = file.listFiles();
+
+		if(children != null){
+
+			for(File child : children){
+				delete(child);
+			}
+		}
+
+		file.delete();
+	}
+
+	static
+	private Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String, String> result = new LinkedHashMap<>();
+
+		if(query == null || query.isEmpty()){
+			return result;
+		}
+
+		String[] pairs = query.split("&");
+		for(String pair : pairs){
+			int equals = pair.indexOf('=');
+
+			if(equals < 0){
+				result.put(URLDecoder.decode(pair, "UTF-8"), "");
+			} else
+
+			{
+				result.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		}
+
+		return result;
+	}
+
+	static
+	private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+
+		Headers responseHeaders = exchange.getResponseHeaders();
+		responseHeaders.set("Content-Type", "text/plain; charset=UTF-8");
+
+		exchange.sendResponseHeaders(status, bytes.length);
+
+		try(OutputStream os = exchange.getResponseBody()){
+			os.write(bytes);
+		}
+	}
+
+	private static final int MAX_ENTRIES = 10000;
+
+	private static final Logger logger = LoggerFactory.getLogger(ConverterServer.class);
+}
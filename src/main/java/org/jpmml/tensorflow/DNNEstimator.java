@@ -19,26 +19,32 @@
 package org.jpmml.tensorflow;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import com.google.common.collect.Lists;
-import com.google.common.primitives.Floats;
 import org.dmg.pmml.DataType;
+import org.dmg.pmml.DerivedField;
 import org.dmg.pmml.Entity;
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.MapValues;
 import org.dmg.pmml.MathContext;
+import org.dmg.pmml.OpType;
+import org.dmg.pmml.neural_network.Connection;
+import org.dmg.pmml.neural_network.NeuralInput;
 import org.dmg.pmml.neural_network.NeuralInputs;
 import org.dmg.pmml.neural_network.NeuralLayer;
 import org.dmg.pmml.neural_network.NeuralNetwork;
 import org.dmg.pmml.neural_network.Neuron;
 import org.jpmml.converter.BinaryFeature;
-import org.jpmml.converter.CMatrixUtil;
 import org.jpmml.converter.Feature;
 import org.jpmml.converter.ValueUtil;
 import org.jpmml.converter.neural_network.NeuralNetworkUtil;
-import org.tensorflow.Operation;
-import org.tensorflow.Output;
-import org.tensorflow.Tensor;
 import org.tensorflow.framework.NodeDef;
 
 abstract
@@ -61,6 +67,8 @@ public class DNNEstimator extends Estimator {
 
 		List<? extends Entity> entities;
 
+		List<Feature> features = new ArrayList<>();
+
 		{
 			NodeDef biasAdd = biasAdds.get(0);
 
@@ -74,8 +82,6 @@ public class DNNEstimator extends Estimator {
 				throw new IllegalArgumentException();
 			}
 
-			List<Feature> features = new ArrayList<>();
-
 			List<String> inputNames = concat.getInputList();
 			for(int i = 0; i < inputNames.size() - 1; i++){
 				String inputName = inputNames.get(i);
@@ -119,61 +125,417 @@ public class DNNEstimator extends Estimator {
 			entities = neuralInputs.getNeuralInputs();
 		}
 
-		for(int i = 0; i < biasAdds.size(); i++){
-			NodeDef biasAdd = biasAdds.get(i);
+		Boolean streaming = getOption(DNNEstimator.OPTION_STREAMING, Boolean.FALSE);
+		Boolean foldCategoricalInputs = getOption(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, Boolean.FALSE);
+		Integer threads = getOption(DNNEstimator.OPTION_THREADS, 1);
 
+		WeightPruner weightPruner = getWeightPruner();
+
+		if(threads < 1){
+			throw new IllegalArgumentException("Option " + DNNEstimator.OPTION_THREADS + " must be positive");
+		}
+
+		List<String> weightNames = new ArrayList<>();
+		List<String> biasNames = new ArrayList<>();
+
+		for(NodeDef biasAdd : biasAdds){
 			NodeDef matMul = savedModel.getNodeDef(biasAdd.getInput(0));
 			if(!("MatMul").equals(matMul.getOp())){
 				throw new IllegalArgumentException();
 			}
 
-			int count;
+			NodeDef weights = savedModel.getOnlyInput(matMul.getInput(1), "VariableV2");
+			NodeDef bias = savedModel.getOnlyInput(biasAdd.getInput(1), "VariableV2");
+
+			weightNames.add(weights.getName());
+			biasNames.add(bias.getName());
+		}
+
+		boolean[] deferred = new boolean[biasAdds.size()];
+
+		List<String> names = new ArrayList<>(biasNames);
+
+		for(int i = 0; i < biasAdds.size(); i++){
+			// The weights of hidden layers are fetched when the layer is marshalled.
+			// The weights of the output layer are needed right away, because the output layer is adjusted by subclasses.
+			// The weights of the first layer are needed right away if they are folded into lookup tables
+			deferred[i] = streaming && (i < biasAdds.size() - 1) && !(foldCategoricalInputs && i == 0);
+
+			if(!deferred[i]){
+				names.add(weightNames.get(i));
+			}
+		}
+
+		ExecutorService executorService = null;
+
+		if(threads > 1){
+			executorService = ExecutorUtil.createExecutorService("dnn-encoder", threads);
+		}
+
+		try {
+			List<?> arrays = savedModel.fetch(names, executorService);
+
+			Map<String, Object> weightArrays = new HashMap<>();
+
+			for(int k = biasNames.size(); k < names.size(); k++){
+				weightArrays.put(names.get(k), arrays.get(k));
+			}
+
+			for(int i = 0; i < biasAdds.size(); i++){
+				float[] biasValues = (float[])arrays.get(i);
+
+				int count = biasValues.length;
+
+				String idPrefix = String.valueOf(i + 1) + "/";
+
+				if(deferred[i]){
+					DeferredNeuralLayer neuralLayer = new DeferredNeuralLayer(savedModel, weightNames.get(i), biasValues, entities, idPrefix)
+						.setWeightPruner(weightPruner);
+
+					neuralNetwork.addNeuralLayers(neuralLayer);
+
+					entities = neuralLayer.createNeuronStubs();
+
+					continue;
+				}
+
+				FloatMatrix weights = TensorUtil.toFloatMatrix(weightArrays.get(weightNames.get(i)), entities.size(), count);
 
-			{
-				Operation operation = savedModel.getOperation(matMul.getName());
+				NeuralLayer neuralLayer = new NeuralLayer();
 
-				Output output = operation.output(0);
+				try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.ENCODE_LAYER, weightNames.get(i))){
+					phase.addBytes(4L * ((weights.getValues()).length + biasValues.length));
 
-				long[] shape = ShapeUtil.toArray(output.shape());
-				if(shape.length != 2 || shape[0] != -1){
-					throw new IllegalArgumentException();
+					// One row per neuron
+					weights = weights.transpose();
+
+					if(weightPruner != null){
+						weightPruner.prune(weights);
+					}
+
+					List<Neuron> neurons;
+
+					if(foldCategoricalInputs && i == 0){
+						neurons = foldCategoricalInputs(neuralNetwork, features, weights, biasValues, idPrefix);
+					} else
+
+					{
+						neurons = createNeurons(entities, weights, biasValues, idPrefix, executorService, threads);
+					}
+
+					ConversionPlan.Recorder planRecorder = getPlanRecorder();
+					if(planRecorder != null){
+						bindNeurons(planRecorder, entities, neurons, weightNames.get(i), biasNames.get(i));
+					}
+
+					neuralLayer.addNeurons(neurons.toArray(new Neuron[neurons.size()]));
 				}
 
-				count = (int)shape[1];
+				neuralNetwork.addNeuralLayers(neuralLayer);
+
+				entities = neuralLayer.getNeurons();
 			}
+		} finally {
 
-			NodeDef weights = savedModel.getOnlyInput(matMul.getInput(1), "VariableV2");
+			if(executorService != null){
+				executorService.shutdownNow();
+			}
+		}
+
+		return neuralNetwork;
+	}
+
+	/**
+	 * <p>
+	 * Creates the neurons of the first layer so that the binary features of every categorical field are folded into lookup tables.
+	 * </p>
+	 *
+	 * Instead of one neural input per category, there is one neural input per categorical field and neuron.
+	 * Its value is the weight of the active category, which is looked up using a <code>MapValues</code> expression,
+	 * and it is connected to its neuron with a unit weight.
+	 * The cost of the first layer then grows with the number of categorical fields, not with the number of categories.
+	 *
+	 * @param features The features of the first layer, in the order of neural inputs.
+	 * @param weights The weight matrix, one row per neuron.
+	 */
+	static
+	private List<Neuron> foldCategoricalInputs(NeuralNetwork neuralNetwork, List<? extends Feature> features, FloatMatrix weights, float[] biasValues, String idPrefix){
+		NeuralInputs neuralInputs = neuralNetwork.getNeuralInputs();
+
+		List<NeuralInput> inputs = neuralInputs.getNeuralInputs();
+		if(inputs.size() != features.size()){
+			throw new IllegalArgumentException();
+		}
+
+		// The first feature of every categorical field stands for all features of that field
+		Map<Integer, List<Integer>> categoricalIndices = new LinkedHashMap<>();
+
+		Map<FieldName, Integer> firstIndices = new HashMap<>();
 
-			float[] weightValues;
+		for(int i = 0; i < features.size(); i++){
+			Feature feature = features.get(i);
 
-			try(Tensor tensor = savedModel.run(weights.getName())){
-				weightValues = TensorUtil.toFloatArray(tensor);
+			if(feature instanceof BinaryFeature){
+				Integer firstIndex = firstIndices.get(feature.getName());
+
+				if(firstIndex == null){
+					firstIndex = i;
+
+					firstIndices.put(feature.getName(), firstIndex);
+					categoricalIndices.put(firstIndex, new ArrayList<Integer>());
+				}
+
+				(categoricalIndices.get(firstIndex)).add(i);
 			}
+		}
 
-			NodeDef bias = savedModel.getOnlyInput(biasAdd.getInput(1), "VariableV2");
+		List<NeuralInput> foldedInputs = new ArrayList<>();
 
-			float[] biasValues;
+		for(int i = 0; i < features.size(); i++){
+			Feature feature = features.get(i);
 
-			try(Tensor tensor = savedModel.run(bias.getName())){
-				biasValues = TensorUtil.toFloatArray(tensor);
+			if(!(feature instanceof BinaryFeature)){
+				foldedInputs.add(inputs.get(i));
 			}
+		}
+
+		List<Neuron> result = new ArrayList<>(biasValues.length);
+
+		for(int j = 0; j < biasValues.length; j++){
+			Neuron neuron = new Neuron()
+				.setId(idPrefix + String.valueOf(j + 1));
+
+			// Connections are kept in the order of features, so that the weighted sum is computed exactly as in the unfolded layer
+			for(int i = 0; i < features.size(); i++){
+				Feature feature = features.get(i);
+
+				if(!(feature instanceof BinaryFeature)){
+					float weight = weights.get(j, i);
+
+					if(FloatMatrix.isMissing(weight)){
+						continue;
+					}
+
+					neuron.addConnections(new Connection((inputs.get(i)).getId(), FloatMatrix.toDouble(weight)));
+
+					continue;
+				}
+
+				List<Integer> indices = categoricalIndices.get(i);
+				if(indices == null){
+					continue;
+				}
 
-			NeuralLayer neuralLayer = new NeuralLayer();
+				List<String> categories = new ArrayList<>();
+				List<String> categoryWeights = new ArrayList<>();
 
-			for(int j = 0; j < count; j++){
-				List<Float> entityWeights = CMatrixUtil.getColumn(Floats.asList(weightValues), entities.size(), count, j);
+				for(Integer index : indices){
+					BinaryFeature binaryFeature = (BinaryFeature)features.get(index);
 
-				Neuron neuron = NeuralNetworkUtil.createNeuron(entities, ValueUtil.floatsToDoubles(entityWeights), ValueUtil.floatToDouble(biasValues[j]))
-					.setId(String.valueOf(i + 1) + "/" + String.valueOf(j + 1));
+					float weight = weights.get(j, index);
 
-				neuralLayer.addNeurons(neuron);
+					// Categories that are not listed are mapped to the default value of zero
+					if(FloatMatrix.isMissing(weight)){
+						continue;
+					}
+
+					categories.add(binaryFeature.getValue());
+					categoryWeights.add(ValueUtil.formatValue(weight));
+				}
+
+				if(categories.isEmpty()){
+					continue;
+				}
+
+				FieldName name = feature.getName();
+
+				MapValues mapValues = InlineTableUtil.createMapValues(name, categories, categoryWeights, DataType.FLOAT, "0");
+
+				DerivedField derivedField = new DerivedField(OpType.CONTINUOUS, DataType.FLOAT)
+					.setExpression(mapValues);
+
+				NeuralInput neuralInput = new NeuralInput("input/" + name.getValue() + "/" + String.valueOf(j + 1), derivedField);
+
+				foldedInputs.add(neuralInput);
+
+				neuron.addConnections(new Connection(neuralInput.getId(), 1d));
 			}
 
-			neuralNetwork.addNeuralLayers(neuralLayer);
+			float bias = biasValues[j];
+
+			if(!FloatMatrix.isMissing(bias)){
+				neuron.setBias(FloatMatrix.toDouble(bias));
+			}
 
-			entities = neuralLayer.getNeurons();
+			result.add(neuron);
 		}
 
-		return neuralNetwork;
+		neuralNetwork.setNeuralInputs(new NeuralInputs(foldedInputs));
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Creates the neurons of a layer.
+	 * Neurons are independent of one another, so they can be created in parallel chunks.
+	 * The order of neurons, and their identifiers, do not depend on the number of threads.
+	 * </p>
+	 *
+	 * @param weights The weight matrix, one row per neuron.
+	 * @param executorService The executor service, or <code>null</code>.
+	 * @param threads The number of threads of the executor service.
+	 */
+	static
+	public List<Neuron> createNeurons(final List<? extends Entity> entities, final FloatMatrix weights, final float[] biasValues, final String idPrefix, ExecutorService executorService, int threads){
+		int count = biasValues.length;
+
+		if(weights.getRows() != count){
+			throw new IllegalArgumentException();
+		}
+
+		final
+		Neuron[] result = new Neuron[count];
+
+		// Several chunks per thread, so that threads that finish early can pick up more work
+		int chunkSize = Math.max(DNNEstimator.MIN_CHUNK_SIZE, (count + (4 * threads) - 1) / (4 * threads));
+
+		if(executorService == null || count <= chunkSize){
+			createNeurons(entities, weights, biasValues, idPrefix, 0, count, result);
+		} else
+
+		{
+			List<Callable<Void>> tasks = new ArrayList<>();
+
+			for(int begin = 0; begin < count; begin += chunkSize){
+				final
+				int chunkBegin = begin;
+
+				final
+				int chunkEnd = Math.min(begin + chunkSize, count);
+
+				Callable<Void> task = new Callable<Void>(){
+
+					@Override
+					public Void call(){
+						createNeurons(entities, weights, biasValues, idPrefix, chunkBegin, chunkEnd, result);
+
+						return null;
+					}
+				};
+
+				tasks.add(task);
+			}
+
+			ExecutorUtil.invokeAll(executorService, tasks);
+		}
+
+		return Arrays.asList(result);
 	}
+
+	static
+	private void createNeurons(List<? extends Entity> entities, FloatMatrix weights, float[] biasValues, String idPrefix, int begin, int end, Neuron[] result){
+
+		for(int j = begin; j < end; j++){
+			Neuron neuron = createNeuron(entities, weights.getRow(j), biasValues[j])
+				.setId(idPrefix + String.valueOf(j + 1));
+
+			result[j] = neuron;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Binds neuron biases and connection weights to the elements of the bias and weights variables.
+	 * The weights variable is laid out one row per entity, so the weight between entity <code>i</code> and neuron <code>j</code> is at index <code>i * count + j</code>.
+	 * </p>
+	 */
+	static
+	private void bindNeurons(ConversionPlan.Recorder planRecorder, List<? extends Entity> entities, List<Neuron> neurons, String weightsName, String biasName){
+		int count = neurons.size();
+
+		int weightsVariable = planRecorder.addVariable(weightsName, entities.size() * count);
+		int biasVariable = planRecorder.addVariable(biasName, count);
+
+		Map<String, Integer> entityIndices = new HashMap<>();
+
+		for(int i = 0; i < entities.size(); i++){
+			Entity entity = entities.get(i);
+
+			entityIndices.put(entity.getId(), i);
+		}
+
+		for(int j = 0; j < count; j++){
+			Neuron neuron = neurons.get(j);
+
+			if(neuron.getBias() != null){
+				planRecorder.bind(neuron, biasVariable, j);
+			}
+
+			List<Connection> connections = neuron.getConnections();
+			for(Connection connection : connections){
+				Integer i = entityIndices.get(connection.getFrom());
+
+				if(i == null){
+					throw new IllegalArgumentException(connection.getFrom());
+				}
+
+				planRecorder.bind(connection, weightsVariable, i * count + j);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Creates a neuron that is connected to the specified entities.
+	 * Connections with missing (ie. not-a-number) or zero weights are omitted.
+	 * </p>
+	 *
+	 * Same as {@link NeuralNetworkUtil#createNeuron(List, List, Double)}, but without boxing.
+	 */
+	static
+	public Neuron createNeuron(List<? extends Entity> entities, FloatVector weights, float bias){
+
+		if(entities.size() != weights.size()){
+			throw new IllegalArgumentException();
+		}
+
+		Neuron neuron = new Neuron();
+
+		for(int i = 0; i < entities.size(); i++){
+			float weight = weights.get(i);
+
+			if(FloatMatrix.isMissing(weight)){
+				continue;
+			}
+
+			Entity entity = entities.get(i);
+
+			neuron.addConnections(new Connection(entity.getId(), FloatMatrix.toDouble(weight)));
+		}
+
+		if(!FloatMatrix.isMissing(bias)){
+			neuron.setBias(FloatMatrix.toDouble(bias));
+		}
+
+		return neuron;
+	}
+
+	/**
+	 * <p>
+	 * If true, the hidden layers of the neural network are encoded as {@link DeferredNeuralLayer} elements,
+	 * which must be marshalled using {@link StreamingPMMLUtil} while the SavedModel is still open.
+	 * </p>
+	 */
+	public static final String OPTION_STREAMING = "streaming";
+
+	/**
+	 * <p>
+	 * The number of threads that fetch layer weights and create neurons.
+	 * If greater than 1, then neurons are created in parallel chunks, which yields the same neural network as serial creation.
+	 * </p>
+	 */
+	public static final String OPTION_THREADS = "threads";
+
+	private static final int MIN_CHUNK_SIZE = 64;
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.dmg.pmml.Entity;
+import org.dmg.pmml.neural_network.NeuralLayer;
+import org.dmg.pmml.neural_network.Neuron;
+import org.jpmml.schema.Version;
+
+/**
+ * <p>
+ * A neural layer whose neurons are not materialized in memory.
+ * The weights are fetched, and the <code>Neuron</code> elements are written, only when the layer is marshalled.
+ * </p>
+ *
+ * The SavedModel and the weight pruner are not serialized.
+ * A deserialized layer cannot be marshalled.
+ *
+ * @see StreamingPMMLUtil
+ */
+public class DeferredNeuralLayer extends NeuralLayer {
+
+	private transient SavedModel savedModel = null;
+
+	private String weightsName = null;
+
+	private float[] biasValues = null;
+
+	private List<String> inputIds = null;
+
+	private String idPrefix = null;
+
+	private transient WeightPruner weightPruner = null;
+
+
+	public DeferredNeuralLayer(SavedModel savedModel, String weightsName, float[] biasValues, List<? extends Entity> inputs, String idPrefix){
+		this.savedModel = savedModel;
+		this.weightsName = weightsName;
+		this.biasValues = biasValues;
+
+		this.inputIds = new ArrayList<>(inputs.size());
+
+		for(Entity input : inputs){
+			this.inputIds.add(input.getId());
+		}
+
+		this.idPrefix = idPrefix;
+	}
+
+	/**
+	 * <p>
+	 * Creates neuron stubs, which carry identifiers but no connections.
+	 * They can be used as inputs to the next layer.
+	 * </p>
+	 */
+	public List<Neuron> createNeuronStubs(){
+		List<Neuron> result = new ArrayList<>(this.biasValues.length);
+
+		for(int j = 0; j < this.biasValues.length; j++){
+			Neuron neuron = new Neuron()
+				.setId(getNeuronId(j));
+
+			result.add(neuron);
+		}
+
+		return result;
+	}
+
+	public void writeNeurons(XMLStreamWriter writer) throws XMLStreamException {
+		String namespaceURI = (Version.PMML_4_3).getNamespaceURI();
+
+		String prefix = writer.getPrefix(namespaceURI);
+		if(prefix == null){
+			prefix = "";
+		} // End if
+
+		if(this.savedModel == null){
+			throw new IllegalStateException("The SavedModel is not available (eg. the layer has been deserialized)");
+		}
+
+		// One row per neuron
+		FloatMatrix weights = this.savedModel.fetchTransposed(this.weightsName, this.inputIds.size(), this.biasValues.length);
+
+		try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.ENCODE_LAYER, this.weightsName)){
+			phase.addBytes(4L * ((weights.getValues()).length + this.biasValues.length));
+
+			if(this.weightPruner != null){
+				this.weightPruner.prune(weights);
+			}
+
+			for(int j = 0; j < weights.getRows(); j++){
+				FloatVector neuronWeights = weights.getRow(j);
+
+				float bias = this.biasValues[j];
+
+				writer.writeStartElement(prefix, "Neuron", namespaceURI);
+				writer.writeAttribute("id", getNeuronId(j));
+
+				if(!FloatMatrix.isMissing(bias)){
+					writer.writeAttribute("bias", formatDouble(FloatMatrix.toDouble(bias)));
+				}
+
+				for(int i = 0; i < neuronWeights.size(); i++){
+					float weight = neuronWeights.get(i);
+
+					if(FloatMatrix.isMissing(weight)){
+						continue;
+					}
+
+					writer.writeStartElement(prefix, "Con", namespaceURI);
+					writer.writeAttribute("from", this.inputIds.get(i));
+					writer.writeAttribute("weight", formatDouble(FloatMatrix.toDouble(weight)));
+					writer.writeEndElement();
+				}
+
+				writer.writeEndElement();
+			}
+		}
+	}
+
+	public WeightPruner getWeightPruner(){
+		return this.weightPruner;
+	}
+
+	/**
+	 * @param weightPruner The weight pruner, or <code>null</code>.
+	 */
+	public DeferredNeuralLayer setWeightPruner(WeightPruner weightPruner){
+		this.weightPruner = weightPruner;
+
+		return this;
+	}
+
+	private String getNeuronId(int index){
+		return this.idPrefix + String.valueOf(index + 1);
+	}
+
+	static
+	private String formatDouble(double value){
+
+		if(Double.isInfinite(value)){
+			return (value > 0d ? "INF" : "-INF");
+		}
+
+		return String.valueOf(value);
+	}
+
+	private static final long serialVersionUID = 1L;
+}
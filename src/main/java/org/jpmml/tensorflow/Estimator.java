@@ -18,6 +18,9 @@
  */
 package org.jpmml.tensorflow;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.dmg.pmml.Model;
 import org.dmg.pmml.PMML;
 
@@ -28,6 +31,12 @@ public class Estimator {
 
 	private String head = null;
 
+	private Map<String, Object> options = new LinkedHashMap<>();
+
+	private WeightPruner weightPruner = null;
+
+	private ConversionPlan.Recorder planRecorder = null;
+
 
 	public Estimator(SavedModel savedModel, String head){
 		setSavedModel(savedModel);
@@ -38,13 +47,127 @@ public class Estimator {
 	public Model encodeModel(TensorFlowEncoder encoder);
 
 	public PMML encodePMML(){
-		TensorFlowEncoder encoder = new TensorFlowEncoder();
+		ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.ENCODE_MODEL, (getClass()).getSimpleName());
+
+		try {
+			TensorFlowEncoder encoder = new TensorFlowEncoder();
+
+			Model model = encodeModel(encoder);
+
+			PMML pmml = encoder.encodePMML(model);
+
+			return pmml;
+		} finally {
+			phase.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Encodes the PMML document, and records the locations of its variable-derived values.
+	 * </p>
+	 *
+	 * Streaming, folding and pruning make the structure of the PMML document depend on variable values, so they cannot be combined with conversion plans.
+	 *
+	 * @see ConversionPlan#getPMML()
+	 */
+	public ConversionPlan encodeConversionPlan(){
+		Boolean streaming = getOption(DNNEstimator.OPTION_STREAMING, Boolean.FALSE);
+		Boolean foldCategoricalInputs = getOption(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, Boolean.FALSE);
 
-		Model model = encodeModel(encoder);
+		if(streaming || foldCategoricalInputs || getWeightPruner() != null){
+			throw new IllegalArgumentException("Conversion plans do not support streaming, folding or pruning");
+		}
 
-		PMML pmml = encoder.encodePMML(model);
+		ConversionPlan.Recorder planRecorder = new ConversionPlan.Recorder();
 
-		return pmml;
+		setPlanRecorder(planRecorder);
+
+		try {
+			PMML pmml = encodePMML();
+
+			return planRecorder.createPlan(getHead(), pmml, getSavedModel());
+		} finally {
+			setPlanRecorder(null);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Encodes the PMML document, and compiles its model into a scorer.
+	 * </p>
+	 *
+	 * Streaming and folding produce PMML elements that cannot be compiled, so they cannot be combined with scorers.
+	 *
+	 * @see ScorerUtil#createScorer(PMML)
+	 */
+	public Scorer encodeScorer(){
+		Boolean streaming = getOption(DNNEstimator.OPTION_STREAMING, Boolean.FALSE);
+		Boolean foldCategoricalInputs = getOption(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, Boolean.FALSE);
+
+		if(streaming || foldCategoricalInputs){
+			throw new IllegalArgumentException("Scorers do not support streaming or folding");
+		}
+
+		PMML pmml = encodePMML();
+
+		return ScorerUtil.createScorer(pmml);
+	}
+
+	@SuppressWarnings (
+		value = {"unchecked"}
+	)
+	public <V> V getOption(String key, V defaultValue){
+		Map<String, Object> options = getOptions();
+
+		if(options.containsKey(key)){
+			return (V)options.get(key);
+		}
+
+		return defaultValue;
+	}
+
+	public void putOption(String key, Object value){
+		Map<String, Object> options = getOptions();
+
+		options.put(key, value);
+	}
+
+	public Map<String, Object> getOptions(){
+		return this.options;
+	}
+
+	/**
+	 * @return The weight pruner, or <code>null</code> if pruning is not enabled.
+	 *
+	 * @see #OPTION_PRUNE_THRESHOLD
+	 * @see #OPTION_PRUNE_RELATIVE_THRESHOLD
+	 */
+	public WeightPruner getWeightPruner(){
+
+		if(this.weightPruner == null){
+			Double threshold = getOption(Estimator.OPTION_PRUNE_THRESHOLD, 0d);
+			Double relativeThreshold = getOption(Estimator.OPTION_PRUNE_RELATIVE_THRESHOLD, 0d);
+
+			if(threshold == 0d && relativeThreshold == 0d){
+				return null;
+			}
+
+			this.weightPruner = new WeightPruner(threshold, relativeThreshold);
+		}
+
+		return this.weightPruner;
+	}
+
+	/**
+	 * @return The plan recorder, or <code>null</code> if no conversion plan is being encoded.
+	 */
+	public ConversionPlan.Recorder getPlanRecorder(){
+		return this.planRecorder;
+	}
+
+	private void setPlanRecorder(ConversionPlan.Recorder planRecorder){
+		this.planRecorder = planRecorder;
 	}
 
 	public SavedModel getSavedModel(){
@@ -62,4 +185,31 @@ public class Estimator {
 	private void setHead(String head){
 		this.head = head;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * <p>
+	 * If true, the weights of categorical fields are folded into lookup tables.
+	 * Neural network models get one lookup table per categorical field and first-layer neuron.
+	 * Regression models get one lookup table per categorical field and regression table, which is shared between regression tables where possible.
+	 * </p>
+	 */
+	public static final String OPTION_FOLD_CATEGORICAL_INPUTS = "fold_categorical_inputs";
+
+	/**
+	 * <p>
+	 * Weights whose absolute value is less than this value are pruned.
+	 * </p>
+	 *
+	 * @see WeightPruner
+	 */
+	public static final String OPTION_PRUNE_THRESHOLD = "prune_threshold";
+
+	/**
+	 * <p>
+	 * Weights whose absolute value is less than this proportion of the greatest absolute value in the same weight matrix are pruned.
+	 * </p>
+	 *
+	 * @see WeightPruner
+	 */
+	public static final String OPTION_PRUNE_RELATIVE_THRESHOLD = "prune_relative_threshold";
+}
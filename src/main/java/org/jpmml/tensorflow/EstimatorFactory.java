@@ -18,6 +18,8 @@
  */
 package org.jpmml.tensorflow;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.tensorflow.framework.NodeDef;
@@ -59,8 +61,21 @@ public class EstimatorFactory {
 		}
 	}
 
+	/**
+	 * @return The names of the head nodes that this factory recognizes, in the order of preference.
+	 */
+	static
+	public List<String> getHeads(){
+		return EstimatorFactory.HEADS;
+	}
+
 	static
 	public EstimatorFactory newInstance(){
 		return new EstimatorFactory();
 	}
-}
\ No newline at end of file
+
+	private static final List<String> HEADS = Arrays.asList(
+		DNNClassifier.BINARY_LOGISTIC_HEAD, DNNClassifier.MULTI_CLASS_HEAD, DNNRegressor.REGRESSION_HEAD,
+		LinearClassifier.BINARY_LOGISTIC_HEAD, LinearClassifier.MULTI_CLASS_HEAD, LinearRegressor.REGRESSION_HEAD
+	);
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorUtil {
+
+	private ExecutorUtil(){
+	}
+
+	/**
+	 * <p>
+	 * Creates a pool of daemon threads, so that an abandoned pool does not prevent the JVM from exiting.
+	 * </p>
+	 */
+	static
+	public ExecutorService createExecutorService(final String name, int threads){
+		ThreadFactory threadFactory = new ThreadFactory(){
+
+			private AtomicInteger count = new AtomicInteger(0);
+
+
+			@Override
+			public Thread newThread(Runnable runnable){
+				Thread thread = new Thread(runnable, name + "-" + this.count.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		};
+
+		return Executors.newFixedThreadPool(threads, threadFactory);
+	}
+
+	/**
+	 * <p>
+	 * Runs tasks and collects their results in the order of tasks.
+	 * Tasks inherit the {@link ConversionMetrics#getModel() model} of the calling thread.
+	 * </p>
+	 *
+	 * If a task fails, then its exception is rethrown on the calling thread, and the remaining tasks are cancelled.
+	 */
+	static
+	public <E> List<E> invokeAll(ExecutorService executorService, List<? extends Callable<E>> tasks){
+		final
+		String model = ConversionMetrics.getModel();
+
+		List<Future<E>> futures = new ArrayList<>(tasks.size());
+
+		try {
+			for(final Callable<E> task : tasks){
+				Callable<E> modelTask = new Callable<E>(){
+
+					@Override
+					public E call() throws Exception {
+						ConversionMetrics.setModel(model);
+
+						try {
+							return task.call();
+						} finally {
+							ConversionMetrics.setModel(null);
+						}
+					}
+				};
+
+				futures.add(executorService.submit(modelTask));
+			}
+
+			List<E> result = new ArrayList<>(futures.size());
+
+			for(Future<E> future : futures){
+				result.add(future.get());
+			}
+
+			return result;
+		} catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+
+			throw new IllegalStateException(ie);
+		} catch(ExecutionException ee){
+			Throwable cause = ee.getCause();
+
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			} else
+
+			if(cause instanceof Error){
+				throw (Error)cause;
+			}
+
+			throw new IllegalStateException(cause);
+		} finally {
+
+			for(Future<E> future : futures){
+				future.cancel(true);
+			}
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.nio.FloatBuffer;
+
+/**
+ * <p>
+ * A two-dimensional matrix of primitive floats, which is backed by a flat array.
+ * </p>
+ *
+ * TensorFlow lays out matrices in row-major order, which is the default here as well.
+ * Row and column vectors are zero-copy views of the backing array.
+ *
+ * @see TensorUtil#toFloatMatrix(Object, int, int)
+ */
+public class FloatMatrix {
+
+	private float[] values = null;
+
+	private int rows = 0;
+
+	private int columns = 0;
+
+	private boolean rowMajor = true;
+
+
+	public FloatMatrix(float[] values, int rows, int columns){
+		this(values, rows, columns, true);
+	}
+
+	public FloatMatrix(float[] values, int rows, int columns, boolean rowMajor){
+
+		if(rows < 0 || columns < 0 || values.length != (rows * columns)){
+			throw new IllegalArgumentException("Expected " + rows + "x" + columns + " elements, got " + values.length + " elements");
+		}
+
+		this.values = values;
+		this.rows = rows;
+		this.columns = columns;
+		this.rowMajor = rowMajor;
+	}
+
+	public float get(int row, int column){
+		return this.values[getIndex(row, column)];
+	}
+
+	public FloatVector getRow(int row){
+		checkIndex(row, this.rows);
+
+		if(this.rowMajor){
+			return new FloatVector(this.values, row * this.columns, 1, this.columns);
+		}
+
+		return new FloatVector(this.values, row, this.rows, this.columns);
+	}
+
+	public FloatVector getColumn(int column){
+		checkIndex(column, this.columns);
+
+		if(this.rowMajor){
+			return new FloatVector(this.values, column, this.columns, this.rows);
+		}
+
+		return new FloatVector(this.values, column * this.rows, 1, this.rows);
+	}
+
+	/**
+	 * <p>
+	 * Transposes this matrix.
+	 * The elements are copied into a new array, so that the rows of the result (ie. the columns of this matrix) are contiguous in memory.
+	 * </p>
+	 */
+	public FloatMatrix transpose(){
+		float[] result = new float[this.values.length];
+
+		int rows = this.rows;
+		int columns = this.columns;
+
+		// Copy in square blocks, so that both the source and the target stay in cache
+		for(int rowBlock = 0; rowBlock < rows; rowBlock += FloatMatrix.BLOCK_SIZE){
+			int rowEnd = Math.min(rowBlock + FloatMatrix.BLOCK_SIZE, rows);
+
+			for(int columnBlock = 0; columnBlock < columns; columnBlock += FloatMatrix.BLOCK_SIZE){
+				int columnEnd = Math.min(columnBlock + FloatMatrix.BLOCK_SIZE, columns);
+
+				for(int row = rowBlock; row < rowEnd; row++){
+
+					for(int column = columnBlock; column < columnEnd; column++){
+						result[column * rows + row] = this.values[getIndex(row, column)];
+					}
+				}
+			}
+		}
+
+		return new FloatMatrix(result, columns, rows, true);
+	}
+
+	/**
+	 * <p>
+	 * Transposes a row-major matrix, whose elements are stored in a buffer.
+	 * This saves copying the elements into an intermediate array, when the buffer is a view of native memory.
+	 * </p>
+	 *
+	 * @see #transpose()
+	 */
+	static
+	public FloatMatrix transpose(FloatBuffer values, int rows, int columns){
+
+		if(rows < 0 || columns < 0 || values.remaining() != (rows * columns)){
+			throw new IllegalArgumentException("Expected " + rows + "x" + columns + " elements, got " + values.remaining() + " elements");
+		}
+
+		float[] result = new float[rows * columns];
+
+		int offset = values.position();
+
+		for(int rowBlock = 0; rowBlock < rows; rowBlock += FloatMatrix.BLOCK_SIZE){
+			int rowEnd = Math.min(rowBlock + FloatMatrix.BLOCK_SIZE, rows);
+
+			for(int columnBlock = 0; columnBlock < columns; columnBlock += FloatMatrix.BLOCK_SIZE){
+				int columnEnd = Math.min(columnBlock + FloatMatrix.BLOCK_SIZE, columns);
+
+				for(int row = rowBlock; row < rowEnd; row++){
+
+					for(int column = columnBlock; column < columnEnd; column++){
+						result[column * rows + row] = values.get(offset + (row * columns) + column);
+					}
+				}
+			}
+		}
+
+		return new FloatMatrix(result, columns, rows, true);
+	}
+
+	public int getRows(){
+		return this.rows;
+	}
+
+	public int getColumns(){
+		return this.columns;
+	}
+
+	public boolean isRowMajor(){
+		return this.rowMajor;
+	}
+
+	/**
+	 * @return The backing array.
+	 */
+	public float[] getValues(){
+		return this.values;
+	}
+
+	/**
+	 * @return The position of the element in the backing array.
+	 */
+	public int getIndex(int row, int column){
+		checkIndex(row, this.rows);
+		checkIndex(column, this.columns);
+
+		if(this.rowMajor){
+			return (row * this.columns) + column;
+		}
+
+		return (column * this.rows) + row;
+	}
+
+	/**
+	 * <p>
+	 * Converts a float value to the shortest double value that has the same decimal string representation.
+	 * </p>
+	 *
+	 * Same as {@link org.jpmml.converter.ValueUtil#floatToDouble(Float)}, but without boxing.
+	 */
+	static
+	public double toDouble(float value){
+		return Double.parseDouble(Float.toString(value));
+	}
+
+	/**
+	 * <p>
+	 * Missing (ie. not-a-number) and zero weights do not contribute to a weighted sum, and are omitted from the PMML document.
+	 * </p>
+	 */
+	static
+	public boolean isMissing(float value){
+		return Float.isNaN(value) || (value == 0f);
+	}
+
+	static
+	private void checkIndex(int index, int size){
+
+		if(index < 0 || index >= size){
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+	}
+
+	private static final int BLOCK_SIZE = 64;
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+/**
+ * <p>
+ * A strided view of a primitive float array.
+ * </p>
+ *
+ * @see FloatMatrix#getRow(int)
+ * @see FloatMatrix#getColumn(int)
+ */
+public class FloatVector {
+
+	private float[] values = null;
+
+	private int offset = 0;
+
+	private int stride = 0;
+
+	private int size = 0;
+
+
+	public FloatVector(float[] values){
+		this(values, 0, 1, values.length);
+	}
+
+	public FloatVector(float[] values, int offset, int stride, int size){
+
+		if(offset < 0 || stride < 1 || size < 0 || (size > 0 && offset + (long)(size - 1) * stride >= values.length)){
+			throw new IllegalArgumentException();
+		}
+
+		this.values = values;
+		this.offset = offset;
+		this.stride = stride;
+		this.size = size;
+	}
+
+	public float get(int index){
+
+		if(index < 0 || index >= this.size){
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+
+		return this.values[this.offset + index * this.stride];
+	}
+
+	public int size(){
+		return this.size;
+	}
+
+	public float[] toArray(){
+		float[] result = new float[this.size];
+
+		for(int i = 0, j = this.offset; i < this.size; i++, j += this.stride){
+			result[i] = this.values[j];
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.primitives.Ints;
+import org.tensorflow.framework.DataType;
+import org.tensorflow.framework.NodeDef;
+
+/**
+ * <p>
+ * A pure-Java evaluator for the small subset of TensorFlow ops that produce variable values and lookup table contents.
+ * </p>
+ */
+class GraphEvaluator {
+
+	private SavedModel savedModel = null;
+
+	private CheckpointReader checkpointReader = null;
+
+	private Map<String, String> checkpointKeys = null;
+
+
+	GraphEvaluator(SavedModel savedModel, CheckpointReader checkpointReader){
+		this.savedModel = savedModel;
+		this.checkpointReader = checkpointReader;
+	}
+
+	/**
+	 * @see TensorUtil#toArray(org.tensorflow.Tensor)
+	 */
+	public Object evaluate(String name){
+		NodeDef nodeDef = this.savedModel.getNodeDef(name);
+
+		String op = nodeDef.getOp();
+		switch(op){
+			case "Variable":
+			case "VariableV2":
+				return this.checkpointReader.getValues(getCheckpointKey(nodeDef));
+			case "Const":
+				return TensorUtil.toArray((nodeDef.getAttrOrThrow("value")).getTensor());
+			case "Identity":
+				return evaluate(nodeDef.getInput(0));
+			case "Cast":
+				return cast(evaluate(nodeDef.getInput(0)), (nodeDef.getAttrOrThrow("DstT")).getType());
+			case "Size":
+				return new int[]{Array.getLength(evaluate(nodeDef.getInput(0)))};
+			case "Range":
+				return range(evaluate(nodeDef.getInput(0)), evaluate(nodeDef.getInput(1)), evaluate(nodeDef.getInput(2)));
+			default:
+				throw new IllegalArgumentException("Op " + op + " (node " + nodeDef.getName() + ") is not supported");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Maps a variable to the name of the tensor that it is saved as.
+	 * </p>
+	 *
+	 * The mapping is recovered from the restore subgraph of the saver, where every variable is the target of an <code>Assign</code> op whose value is an output of a <code>RestoreV2</code> op.
+	 * Partitioned variables are supported only in the degenerate case of a single partition, which spans the full tensor.
+	 */
+	String getCheckpointKey(NodeDef variable){
+		Map<String, String> checkpointKeys = getCheckpointKeys();
+
+		String key = checkpointKeys.get(variable.getName());
+		if(key == null){
+			return variable.getName();
+		}
+
+		return key;
+	}
+
+	synchronized
+	private Map<String, String> getCheckpointKeys(){
+
+		if(this.checkpointKeys == null){
+			this.checkpointKeys = loadCheckpointKeys();
+		}
+
+		return this.checkpointKeys;
+	}
+
+	private Map<String, String> loadCheckpointKeys(){
+		Map<String, String> result = new HashMap<>();
+
+		Map<String, NodeDef> nodeMap = this.savedModel.getNodeMap();
+
+		Collection<NodeDef> nodeDefs = nodeMap.values();
+		for(NodeDef nodeDef : nodeDefs){
+
+			if(!("Assign").equals(nodeDef.getOp())){
+				continue;
+			}
+
+			NodeDef variable = this.savedModel.getNodeDef(nodeDef.getInput(0));
+
+			String restoreName = nodeDef.getInput(1);
+
+			NodeDef restore = this.savedModel.getNodeDef(restoreName);
+			if(!("RestoreV2").equals(restore.getOp()) || result.containsKey(variable.getName())){
+				continue;
+			}
+
+			int index = 0;
+
+			int colon = restoreName.indexOf(':');
+			if(colon > -1){
+				index = Integer.parseInt(restoreName.substring(colon + 1));
+			}
+
+			String[] tensorNames = (String[])evaluate(restore.getInput(1));
+			String[] shapeAndSlices = (String[])evaluate(restore.getInput(2));
+
+			if(!isFullSlice(shapeAndSlices[index])){
+				throw new IllegalArgumentException("Partitioned variable " + variable.getName() + " is not supported");
+			}
+
+			result.put(variable.getName(), tensorNames[index]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param shapeAndSlice Either an empty string, or a space-separated list of the full shape dimensions, followed by the colon-separated list of "start,length" extents.
+	 */
+	static
+	private boolean isFullSlice(String shapeAndSlice){
+
+		if(shapeAndSlice.isEmpty()){
+			return true;
+		}
+
+		String[] parts = shapeAndSlice.split(" ");
+
+		String[] extents = parts[parts.length - 1].split(":");
+
+		if(extents.length != (parts.length - 1)){
+			throw new IllegalArgumentException(shapeAndSlice);
+		}
+
+		for(int i = 0; i < extents.length; i++){
+			String extent = extents[i];
+
+			if(("-").equals(extent)){
+				continue;
+			}
+
+			String[] startAndLength = extent.split(",");
+
+			if(Long.parseLong(startAndLength[0]) != 0 || Long.parseLong(startAndLength[1]) != Long.parseLong(parts[i])){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	static
+	private Object cast(Object values, DataType dataType){
+		List<?> valueList = TensorUtil.asList(values);
+
+		switch(dataType){
+			case DT_FLOAT:
+				{
+					float[] result = new float[valueList.size()];
+
+					for(int i = 0; i < result.length; i++){
+						result[i] = ((Number)valueList.get(i)).floatValue();
+					}
+
+					return result;
+				}
+			case DT_DOUBLE:
+				{
+					double[] result = new double[valueList.size()];
+
+					for(int i = 0; i < result.length; i++){
+						result[i] = ((Number)valueList.get(i)).doubleValue();
+					}
+
+					return result;
+				}
+			case DT_INT32:
+				{
+					int[] result = new int[valueList.size()];
+
+					for(int i = 0; i < result.length; i++){
+						result[i] = ((Number)valueList.get(i)).intValue();
+					}
+
+					return result;
+				}
+			case DT_INT64:
+				{
+					long[] result = new long[valueList.size()];
+
+					for(int i = 0; i < result.length; i++){
+						result[i] = ((Number)valueList.get(i)).longValue();
+					}
+
+					return result;
+				}
+			default:
+				throw new IllegalArgumentException();
+		}
+	}
+
+	static
+	private Object range(Object start, Object limit, Object delta){
+		long startValue = getScalar(start);
+		long limitValue = getScalar(limit);
+		long deltaValue = getScalar(delta);
+
+		if(deltaValue <= 0){
+			throw new IllegalArgumentException();
+		}
+
+		int size = Ints.checkedCast(Math.max(0, (limitValue - startValue + deltaValue - 1) / deltaValue));
+
+		if(start instanceof long[]){
+			long[] result = new long[size];
+
+			for(int i = 0; i < size; i++){
+				result[i] = startValue + i * deltaValue;
+			}
+
+			return result;
+		}
+
+		int[] result = new int[size];
+
+		for(int i = 0; i < size; i++){
+			result[i] = Ints.checkedCast(startValue + i * deltaValue);
+		}
+
+		return result;
+	}
+
+	static
+	private long getScalar(Object values){
+		List<?> valueList = TensorUtil.asList(values);
+
+		if(valueList.size() != 1){
+			throw new IllegalArgumentException();
+		}
+
+		Number value = (Number)valueList.get(0);
+
+		return value.longValue();
+	}
+}
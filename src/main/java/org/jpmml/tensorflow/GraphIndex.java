@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tensorflow.framework.NodeDef;
+
+/**
+ * <p>
+ * An immutable, array-based view of a TensorFlow graph.
+ * </p>
+ *
+ * Nodes are identified by their position in the {@link NodeDef} list.
+ * Input edges are resolved to node positions once, so that traversals do not need to perform any string manipulation or map lookups.
+ */
+class GraphIndex {
+
+	private NodeDef[] nodeDefs = null;
+
+	private Map<String, Integer> nodeIds = null;
+
+	/**
+	 * Node position to input node positions.
+	 * An unresolvable input (eg. a control dependency) is represented by <code>-1</code>.
+	 */
+	private int[][] inputIds = null;
+
+	private int[] opIds = null;
+
+	private Map<String, Integer> opMap = null;
+
+
+	GraphIndex(Collection<NodeDef> nodeDefs){
+		this.nodeDefs = nodeDefs.toArray(new NodeDef[nodeDefs.size()]);
+
+		this.nodeIds = new HashMap<>(2 * this.nodeDefs.length);
+
+		for(int i = 0; i < this.nodeDefs.length; i++){
+			NodeDef nodeDef = this.nodeDefs[i];
+
+			this.nodeIds.put(nodeDef.getName(), i);
+		}
+
+		this.inputIds = new int[this.nodeDefs.length][];
+
+		for(int i = 0; i < this.nodeDefs.length; i++){
+			NodeDef nodeDef = this.nodeDefs[i];
+
+			int[] inputIds = new int[nodeDef.getInputCount()];
+
+			for(int j = 0; j < inputIds.length; j++){
+				Integer inputId = this.nodeIds.get(toNodeName(nodeDef.getInput(j)));
+
+				inputIds[j] = (inputId != null ? inputId : -1);
+			}
+
+			this.inputIds[i] = inputIds;
+		}
+
+		this.opIds = new int[this.nodeDefs.length];
+
+		this.opMap = new HashMap<>();
+
+		for(int i = 0; i < this.nodeDefs.length; i++){
+			NodeDef nodeDef = this.nodeDefs[i];
+
+			Integer opId = this.opMap.get(nodeDef.getOp());
+			if(opId == null){
+				opId = this.opMap.size();
+
+				this.opMap.put(nodeDef.getOp(), opId);
+			}
+
+			this.opIds[i] = opId;
+		}
+	}
+
+	public int size(){
+		return this.nodeDefs.length;
+	}
+
+	public NodeDef getNodeDef(int id){
+		return this.nodeDefs[id];
+	}
+
+	public int getId(String name){
+		Integer id = this.nodeIds.get(toNodeName(name));
+
+		if(id == null){
+			throw new IllegalArgumentException(name);
+		}
+
+		return id;
+	}
+
+	public int[] getInputIds(int id){
+		return this.inputIds[id];
+	}
+
+	/**
+	 * <p>
+	 * Collects nodes that are reachable from the specified node and whose op type is one of the specified op types.
+	 * </p>
+	 *
+	 * <p>
+	 * The graph is traversed depth-first, visiting every node at most once.
+	 * The result is ordered by the first visit, which is the same order that a full (ie. path-enumerating) pre-order traversal would produce.
+	 * </p>
+	 */
+	public List<NodeDef> getInputs(String name, String... ops){
+		int id = getId(name);
+
+		BitSet opIds = new BitSet();
+
+		for(String op : ops){
+			Integer opId = this.opMap.get(op);
+
+			if(opId != null){
+				opIds.set(opId);
+			}
+		}
+
+		List<NodeDef> result = new ArrayList<>();
+
+		BitSet visited = new BitSet(this.nodeDefs.length);
+
+		int[] stack = new int[16];
+		int stackSize = 0;
+
+		stack[stackSize++] = id;
+
+		while(stackSize > 0){
+			int nodeId = stack[--stackSize];
+
+			if(visited.get(nodeId)){
+				continue;
+			}
+
+			visited.set(nodeId);
+
+			if(opIds.get(this.opIds[nodeId])){
+				result.add(this.nodeDefs[nodeId]);
+			}
+
+			int[] inputIds = this.inputIds[nodeId];
+
+			if(stackSize + inputIds.length > stack.length){
+				int[] newStack = new int[Math.max(2 * stack.length, stackSize + inputIds.length)];
+
+				System.arraycopy(stack, 0, newStack, 0, stackSize);
+
+				stack = newStack;
+			}
+
+			// Push in reverse order, so that the first input is visited first
+			for(int i = inputIds.length - 1; i > -1; i--){
+				int inputId = inputIds[i];
+
+				if(inputId < 0){
+					NodeDef nodeDef = this.nodeDefs[nodeId];
+
+					throw new IllegalArgumentException(nodeDef.getInput(i));
+				} // End if
+
+				if(!visited.get(inputId)){
+					stack[stackSize++] = inputId;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	static
+	String toNodeName(String name){
+		int colon = name.indexOf(':');
+
+		return (colon > -1 ? name.substring(0, colon) : name);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.dmg.pmml.DataType;
+import org.dmg.pmml.FieldColumnPair;
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.InlineTable;
+import org.dmg.pmml.MapValues;
+import org.dmg.pmml.Row;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class InlineTableUtil {
+
+	private InlineTableUtil(){
+	}
+
+	/**
+	 * <p>
+	 * Creates a <code>MapValues</code> element that maps the values of a categorical field to output values.
+	 * </p>
+	 *
+	 * @param defaultValue The output value for input values that are not listed in the table.
+	 */
+	static
+	public MapValues createMapValues(FieldName name, List<String> inputValues, List<String> outputValues, DataType dataType, String defaultValue){
+
+		if(inputValues.size() != outputValues.size()){
+			throw new IllegalArgumentException();
+		}
+
+		InlineTable inlineTable = new InlineTable();
+
+		Document document = InlineTableUtil.documentBuilder.get().newDocument();
+
+		for(int i = 0; i < inputValues.size(); i++){
+			Row row = new Row()
+				.addContent(createCell(document, InlineTableUtil.INPUT_COLUMN, inputValues.get(i)), createCell(document, InlineTableUtil.OUTPUT_COLUMN, outputValues.get(i)));
+
+			inlineTable.addRows(row);
+		}
+
+		MapValues mapValues = new MapValues(InlineTableUtil.OUTPUT_COLUMN)
+			.setDataType(dataType)
+			.setDefaultValue(defaultValue)
+			.addFieldColumnPairs(new FieldColumnPair(name, InlineTableUtil.INPUT_COLUMN))
+			.setInlineTable(inlineTable);
+
+		return mapValues;
+	}
+
+	/**
+	 * <p>
+	 * Row cells are DOM elements in a dedicated namespace, so that they cannot be confused with PMML elements.
+	 * The evaluator matches them against table columns by their qualified name.
+	 * </p>
+	 */
+	static
+	private Element createCell(Document document, String column, String value){
+		Element element = document.createElementNS(InlineTableUtil.NAMESPACE_URI, column);
+		element.setTextContent(value);
+
+		return element;
+	}
+
+	private static final String NAMESPACE_URI = "http://jpmml.org/jpmml-model/InlineTable";
+
+	private static final String INPUT_COLUMN = "data:input";
+	private static final String OUTPUT_COLUMN = "data:output";
+
+	private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>(){
+
+		@Override
+		protected DocumentBuilder initialValue(){
+			DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+			documentBuilderFactory.setNamespaceAware(true);
+
+			try {
+				return documentBuilderFactory.newDocumentBuilder();
+			} catch(ParserConfigurationException pce){
+				throw new IllegalStateException(pce);
+			}
+		}
+	};
+}
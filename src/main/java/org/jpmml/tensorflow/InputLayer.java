@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * An affine map from input fields to a vector of sums.
+ * </p>
+ *
+ * Weights are stored in single precision, but they are summed up in double precision, because the values of continuous fields may differ by orders of magnitude.
+ * Continuous fields are multiplied with their rows of the weight matrix.
+ * Categorical fields are not expanded to binary indicators. Instead, the row of the active category is added as is, which costs the same regardless of the number of categories.
+ */
+class InputLayer {
+
+	private int count = 0;
+
+	private float[] bias = null;
+
+	private int[] continuousInputs = null;
+
+	private float[] continuousWeights = null;
+
+	private int[] categoricalInputs = null;
+
+	private int[] categoryOffsets = null;
+
+	private float[] categoryWeights = null;
+
+
+	private InputLayer(){
+	}
+
+	/**
+	 * @param sums An array whose length is at least {@link #getCount()}.
+	 */
+	public void apply(double[] in, double[] sums){
+		int count = this.count;
+
+		float[] bias = this.bias;
+
+		for(int j = 0; j < count; j++){
+			sums[j] = bias[j];
+		}
+
+		int[] continuousInputs = this.continuousInputs;
+		float[] continuousWeights = this.continuousWeights;
+
+		for(int k = 0; k < continuousInputs.length; k++){
+			double value = in[continuousInputs[k]];
+
+			if(value == 0d){
+				continue;
+			}
+
+			int offset = k * count;
+
+			for(int j = 0; j < count; j++){
+				sums[j] += value * continuousWeights[offset + j];
+			}
+		}
+
+		int[] categoricalInputs = this.categoricalInputs;
+		int[] categoryOffsets = this.categoryOffsets;
+		float[] categoryWeights = this.categoryWeights;
+
+		for(int k = 0; k < categoricalInputs.length; k++){
+			double value = in[categoricalInputs[k]];
+
+			int begin = categoryOffsets[k];
+			int end = categoryOffsets[k + 1];
+
+			// Also rejects not-a-number values
+			if(!(value >= 0d && value < (end - begin))){
+				continue;
+			}
+
+			int offset = (begin + (int)value) * count;
+
+			for(int j = 0; j < count; j++){
+				sums[j] += categoryWeights[offset + j];
+			}
+		}
+	}
+
+	/**
+	 * @param columns Input columns.
+	 * @param begin The index of the first record (inclusive).
+	 * @param end The index of the last record (exclusive).
+	 * @param sums An array whose length is at least <code>(end - begin) * getCount()</code>, one row per record.
+	 *
+	 * @see Scorer#scoreBatch(Object[], int, double[][])
+	 */
+	public void applyBatch(Object[] columns, int begin, int end, double[] sums){
+		int count = this.count;
+		int rows = end - begin;
+
+		float[] bias = this.bias;
+
+		for(int r = 0; r < rows; r++){
+			int sumOffset = r * count;
+
+			for(int j = 0; j < count; j++){
+				sums[sumOffset + j] = bias[j];
+			}
+		}
+
+		int[] continuousInputs = this.continuousInputs;
+		float[] continuousWeights = this.continuousWeights;
+
+		for(int k = 0; k < continuousInputs.length; k++){
+			Object column = columns[continuousInputs[k]];
+
+			int offset = k * count;
+
+			for(int r = 0; r < rows; r++){
+				double value;
+
+				if(column instanceof double[]){
+					value = ((double[])column)[begin + r];
+				} else
+
+				{
+					value = ((float[])column)[begin + r];
+				} // End if
+
+				if(value == 0d){
+					continue;
+				}
+
+				int sumOffset = r * count;
+
+				for(int j = 0; j < count; j++){
+					sums[sumOffset + j] += value * continuousWeights[offset + j];
+				}
+			}
+		}
+
+		int[] categoricalInputs = this.categoricalInputs;
+		int[] categoryOffsets = this.categoryOffsets;
+		float[] categoryWeights = this.categoryWeights;
+
+		for(int k = 0; k < categoricalInputs.length; k++){
+			int[] column = (int[])columns[categoricalInputs[k]];
+
+			int categoryBegin = categoryOffsets[k];
+			int categoryEnd = categoryOffsets[k + 1];
+
+			for(int r = 0; r < rows; r++){
+				int category = column[begin + r];
+
+				if(category < 0 || category >= (categoryEnd - categoryBegin)){
+					continue;
+				}
+
+				int offset = (categoryBegin + category) * count;
+				int sumOffset = r * count;
+
+				for(int j = 0; j < count; j++){
+					sums[sumOffset + j] += categoryWeights[offset + j];
+				}
+			}
+		}
+	}
+
+	public int getCount(){
+		return this.count;
+	}
+
+	static
+	class Builder {
+
+		private int count = 0;
+
+		private float[] bias = null;
+
+		private Map<Integer, float[]> continuousRows = new LinkedHashMap<>();
+
+		private Map<Integer, float[][]> categoryRows = new LinkedHashMap<>();
+
+
+		Builder(int count){
+			this.count = count;
+			this.bias = new float[count];
+		}
+
+		public Builder setBias(int j, double value){
+			this.bias[j] = (float)value;
+
+			return this;
+		}
+
+		public Builder addContinuousTerm(int input, int j, double weight){
+			float[] row = this.continuousRows.get(input);
+
+			if(row == null){
+				row = new float[this.count];
+
+				this.continuousRows.put(input, row);
+			}
+
+			row[j] += (float)weight;
+
+			return this;
+		}
+
+		/**
+		 * @param categoryCount The number of categories of the input field.
+		 */
+		public Builder addCategoricalTerm(int input, int categoryCount, int category, int j, double weight){
+			float[][] rows = this.categoryRows.get(input);
+
+			if(rows == null){
+				rows = new float[categoryCount][this.count];
+
+				this.categoryRows.put(input, rows);
+			} // End if
+
+			if(rows.length != categoryCount || category < 0 || category >= categoryCount){
+				throw new IllegalArgumentException();
+			}
+
+			rows[category][j] += (float)weight;
+
+			return this;
+		}
+
+		public InputLayer build(){
+			int count = this.count;
+
+			InputLayer result = new InputLayer();
+			result.count = count;
+			result.bias = Arrays.copyOf(this.bias, count);
+
+			result.continuousInputs = new int[this.continuousRows.size()];
+			result.continuousWeights = new float[this.continuousRows.size() * count];
+
+			int k = 0;
+
+			for(Map.Entry<Integer, float[]> entry : this.continuousRows.entrySet()){
+				result.continuousInputs[k] = entry.getKey();
+
+				System.arraycopy(entry.getValue(), 0, result.continuousWeights, k * count, count);
+
+				k++;
+			}
+
+			result.categoricalInputs = new int[this.categoryRows.size()];
+			result.categoryOffsets = new int[this.categoryRows.size() + 1];
+
+			int rows = 0;
+
+			k = 0;
+
+			for(Map.Entry<Integer, float[][]> entry : this.categoryRows.entrySet()){
+				result.categoricalInputs[k] = entry.getKey();
+				result.categoryOffsets[k] = rows;
+
+				rows += (entry.getValue()).length;
+
+				k++;
+			}
+
+			result.categoryOffsets[k] = rows;
+
+			result.categoryWeights = new float[rows * count];
+
+			k = 0;
+
+			for(float[][] categoryRows : this.categoryRows.values()){
+
+				for(int i = 0; i < categoryRows.length; i++){
+					System.arraycopy(categoryRows[i], 0, result.categoryWeights, (result.categoryOffsets[k] + i) * count, count);
+				}
+
+				k++;
+			}
+
+			return result;
+		}
+	}
+}
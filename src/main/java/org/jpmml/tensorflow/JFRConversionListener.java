@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * <p>
+ * Reports conversion phases as Java Flight Recorder (JFR) events.
+ * </p>
+ *
+ * The events are named <code>org.jpmml.tensorflow.ConversionPhase</code>, and are recorded only when enabled in a JFR recording configuration:
+ * <pre>
+ * java -XX:StartFlightRecording=filename=conversion.jfr,settings=profile -jar converter-executable.jar ...
+ * </pre>
+ *
+ * The JFR event API (package <code>jdk.jfr</code>) is available in Java 8u262 and newer.
+ * On older Java versions, this listener fails to instantiate, and is skipped by {@link ConversionMetrics}.
+ */
+public class JFRConversionListener implements ConversionListener {
+
+	private ThreadLocal<Deque<ConversionEvent>> events = new ThreadLocal<Deque<ConversionEvent>>(){
+
+		@Override
+		protected Deque<ConversionEvent> initialValue(){
+			return new ArrayDeque<>();
+		}
+	};
+
+
+	public JFRConversionListener(){
+		// Fail fast with a LinkageError if the jdk.jfr package is not available
+		new ConversionEvent();
+	}
+
+	@Override
+	public boolean isEnabled(){
+		ConversionEvent event = new ConversionEvent();
+
+		return event.isEnabled();
+	}
+
+	@Override
+	public void phaseStarted(ConversionPhase phase){
+		ConversionEvent event = new ConversionEvent();
+		event.begin();
+
+		Deque<ConversionEvent> events = this.events.get();
+
+		events.push(event);
+	}
+
+	@Override
+	public void phaseEnded(ConversionPhase phase){
+		Deque<ConversionEvent> events = this.events.get();
+
+		ConversionEvent event = events.pop();
+		event.end();
+
+		if(event.shouldCommit()){
+			event.type = String.valueOf(phase.getType());
+			event.name = phase.getName();
+			event.model = phase.getModel();
+			event.allocatedBytes = phase.getAllocatedBytes();
+			event.bytes = phase.getBytes();
+			event.nativeBytes = phase.getNativeBytes();
+
+			event.commit();
+		}
+	}
+
+	@Name("org.jpmml.tensorflow.ConversionPhase")
+	@Label("Conversion Phase")
+	@Category({"JPMML", "TensorFlow"})
+	@StackTrace(false)
+	static
+	class ConversionEvent extends Event {
+
+		@Label("Type")
+		String type;
+
+		@Label("Name")
+		String name;
+
+		@Label("Model")
+		String model;
+
+		@Label("Allocated")
+		@Description("Java heap memory allocated by the thread")
+		@DataAmount
+		long allocatedBytes;
+
+		@Label("Data")
+		@Description("Size of the processed data")
+		@DataAmount
+		long bytes;
+
+		@Label("Native Data")
+		@Description("Native TensorFlow memory")
+		@DataAmount
+		long nativeBytes;
+	}
+}
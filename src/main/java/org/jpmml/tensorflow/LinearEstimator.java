@@ -19,20 +19,28 @@
 package org.jpmml.tensorflow;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.google.common.primitives.Floats;
+import org.dmg.pmml.DataField;
+import org.dmg.pmml.DataType;
+import org.dmg.pmml.DerivedField;
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.MapValues;
 import org.dmg.pmml.MathContext;
+import org.dmg.pmml.OpType;
+import org.dmg.pmml.PMMLObject;
+import org.dmg.pmml.regression.CategoricalPredictor;
+import org.dmg.pmml.regression.NumericPredictor;
 import org.dmg.pmml.regression.RegressionModel;
 import org.dmg.pmml.regression.RegressionTable;
-import org.jpmml.converter.CMatrixUtil;
+import org.jpmml.converter.BinaryFeature;
+import org.jpmml.converter.ContinuousFeature;
 import org.jpmml.converter.Feature;
 import org.jpmml.converter.ValueUtil;
 import org.jpmml.converter.regression.RegressionModelUtil;
-import org.tensorflow.Operation;
-import org.tensorflow.Output;
-import org.tensorflow.Tensor;
 import org.tensorflow.framework.NodeDef;
 
 abstract
@@ -47,50 +55,91 @@ public class LinearEstimator extends Estimator {
 
 		NodeDef biasAdd = savedModel.getOnlyInput(getHead(), "BiasAdd");
 
-		int count;
+		NodeDef addN = savedModel.getOnlyInput(biasAdd.getInput(0), "AddN");
+
+		List<NodeDef> terms = new ArrayList<>();
+
+		List<String> names = new ArrayList<>();
+
+		List<String> inputNames = addN.getInputList();
+		for(String inputName : inputNames){
+			NodeDef term = savedModel.getOnlyInput(inputName, "MatMul", "Select");
 
-		{
-			Operation operation = savedModel.getOperation(biasAdd.getName());
+			NodeDef multiplier;
 
-			Output output = operation.output(0);
+			// "real_valued_column"
+			if(("MatMul").equals(term.getOp())){
+				multiplier = savedModel.getOnlyInput(term.getInput(1), "VariableV2");
+			} else
+
+			// "sparse_column_with_keys"
+			if(("Select").equals(term.getOp())){
+				multiplier = savedModel.getOnlyInput(term.getInput(2), "VariableV2");
+			} else
 
-			long[] shape = ShapeUtil.toArray(output.shape());
-			if((shape.length != 2) || (shape[0] != -1)){
-				throw new IllegalArgumentException();
+			{
+				throw new IllegalArgumentException(term.getName());
 			}
 
-			count = (int)shape[1];
+			terms.add(term);
+
+			names.add(multiplier.getName());
 		}
 
+		NodeDef bias = savedModel.getOnlyInput(biasAdd.getInput(1), "VariableV2");
+
+		names.add(bias.getName());
+
+		List<?> arrays = savedModel.fetch(names);
+
+		WeightPruner weightPruner = getWeightPruner();
+
+		Boolean foldCategoricalInputs = getOption(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, Boolean.FALSE);
+
+		ConversionPlan.Recorder planRecorder = getPlanRecorder();
+
+		float[] biasValues = (float[])arrays.get(terms.size());
+
+		int count = biasValues.length;
+
 		List<Equation> equations = new ArrayList<>();
 
 		for(int i = 0; i < count; i++){
 			Equation equation = new Equation();
 
+			equation.setIntercept(FloatMatrix.toDouble(biasValues[i]));
+
 			equations.add(equation);
 		}
 
-		NodeDef addN = savedModel.getOnlyInput(biasAdd.getInput(0), "AddN");
+		for(int k = 0; k < terms.size(); k++){
+			NodeDef term = terms.get(k);
 
-		List<String> inputNames = addN.getInputList();
-		for(String inputName : inputNames){
-			NodeDef term = savedModel.getOnlyInput(inputName, "MatMul", "Select");
+			float[] values = (float[])arrays.get(k);
+
+			int variable = -1;
+
+			if(planRecorder != null){
+				variable = planRecorder.addVariable(names.get(k), values.length);
+			}
 
 			// "real_valued_column"
 			if(("MatMul").equals(term.getOp())){
 				NodeDef placeholder = savedModel.getNodeDef(term.getInput(0));
-				NodeDef multiplier = savedModel.getOnlyInput(term.getInput(1), "VariableV2");
 
 				Feature feature = encoder.createContinuousFeature(savedModel, placeholder);
 
-				try(Tensor tensor = savedModel.run(multiplier.getName())){
-					float[] values = TensorUtil.toFloatArray(tensor);
+				// One row per equation
+				FloatMatrix weights = (TensorUtil.toFloatMatrix(values, 1, count)).transpose();
 
-					for(int i = 0; i < count; i++){
-						Equation equation = equations.get(i);
+				if(weightPruner != null){
+					weightPruner.prune(weights);
+				}
 
-						equation.addTerm(feature, ValueUtil.floatToDouble(values[i]));
-					}
+				for(int i = 0; i < count; i++){
+					Equation equation = equations.get(i);
+
+					equation.addTerm(feature, FloatMatrix.toDouble(weights.get(i, 0)), variable, i);
 				}
 			} else
 
@@ -98,31 +147,76 @@ public class LinearEstimator extends Estimator {
 			if(("Select").equals(term.getOp())){
 				NodeDef placeholder = savedModel.getOnlyInput(term.getInput(0), "Placeholder");
 				NodeDef findTable = savedModel.getOnlyInput(term.getInput(1), "LookupTableFind");
-				NodeDef multiplier = savedModel.getOnlyInput(term.getInput(2), "VariableV2");
 
 				Map<?, ?> table = savedModel.getTable(findTable.getInput(0));
 
 				List<String> categories = (List)new ArrayList<>(table.keySet());
 
-				List<? extends Feature> features = encoder.createBinaryFeatures(savedModel, placeholder, categories);
-
-				float[] values;
+				// One row per equation
+				FloatMatrix weights = (TensorUtil.toFloatMatrix(values, categories.size(), count)).transpose();
 
-				try(Tensor tensor = savedModel.run(multiplier.getName())){
-					values = TensorUtil.toFloatArray(tensor);
+				if(weightPruner != null){
+					weightPruner.prune(weights);
 				}
 
-				for(int i = 0; i < equations.size(); i++){
-					Equation equation = equations.get(i);
+				if(foldCategoricalInputs){
+					DataField dataField = encoder.ensureCategoricalDataField(savedModel, placeholder, categories);
 
-					List<Float> categoryValues = CMatrixUtil.getColumn(Floats.asList(values), features.size(), equations.size(), i);
+					Map<List<String>, Feature> lookupFeatures = new LinkedHashMap<>();
 
-					for(int j = 0; j < features.size(); j++){
-						Feature feature = features.get(j);
+					for(int i = 0; i < equations.size(); i++){
+						Equation equation = equations.get(i);
+
+						FloatVector categoryValues = weights.getRow(i);
+
+						List<String> lookupValues = new ArrayList<>();
+
+						for(int j = 0; j < categories.size(); j++){
+							int index = ValueUtil.asInt((Number)table.get(categories.get(j)));
+
+							float weight = categoryValues.get(index);
+
+							// Categories that are not listed are mapped to the default value of zero
+							if(FloatMatrix.isMissing(weight)){
+								continue;
+							}
+
+							lookupValues.add(categories.get(j));
+							lookupValues.add(ValueUtil.formatValue(weight));
+						}
 
-						int index = ValueUtil.asInt((Number)table.get(categories.get(j)));
+						if(lookupValues.isEmpty()){
+							continue;
+						}
 
-						equation.addTerm(feature, ValueUtil.floatToDouble(categoryValues.get(index)));
+						// Equations that have the same weights share the lookup table
+						Feature feature = lookupFeatures.get(lookupValues);
+
+						if(feature == null){
+							feature = encodeLookupFeature(encoder, dataField, lookupValues, lookupFeatures.size());
+
+							lookupFeatures.put(lookupValues, feature);
+						}
+
+						equation.addTerm(feature, 1d);
+					}
+				} else
+
+				{
+					List<? extends Feature> features = encoder.createBinaryFeatures(savedModel, placeholder, categories);
+
+					for(int i = 0; i < equations.size(); i++){
+						Equation equation = equations.get(i);
+
+						FloatVector categoryValues = weights.getRow(i);
+
+						for(int j = 0; j < features.size(); j++){
+							Feature feature = features.get(j);
+
+							int index = ValueUtil.asInt((Number)table.get(categories.get(j)));
+
+							equation.addTerm(feature, FloatMatrix.toDouble(categoryValues.get(index)), variable, index * count + i);
+						}
 					}
 				}
 			} else
@@ -132,23 +226,21 @@ public class LinearEstimator extends Estimator {
 			}
 		}
 
-		NodeDef bias = savedModel.getOnlyInput(biasAdd.getInput(1), "VariableV2");
+		RegressionModel regressionModel = new RegressionModel()
+			.setMathContext(MathContext.FLOAT);
 
-		try(Tensor tensor = savedModel.run(bias.getName())){
-			float[] values = TensorUtil.toFloatArray(tensor);
+		for(int i = 0; i < equations.size(); i++){
+			Equation equation = equations.get(i);
 
-			for(int i = 0; i < count; i++){
-				Equation equation = equations.get(i);
+			RegressionTable regressionTable = RegressionModelUtil.createRegressionTable(equation.getFeatures(), equation.getCoefficients(), equation.getIntercept());
 
-				equation.setIntercept(ValueUtil.floatToDouble(values[i]));
-			}
-		}
+			if(planRecorder != null){
+				int biasVariable = planRecorder.addVariable(names.get(terms.size()), count);
 
-		RegressionModel regressionModel = new RegressionModel()
-			.setMathContext(MathContext.FLOAT);
+				planRecorder.bind(regressionTable, biasVariable, i);
 
-		for(Equation equation : equations){
-			RegressionTable regressionTable = RegressionModelUtil.createRegressionTable(equation.getFeatures(), equation.getCoefficients(), equation.getIntercept());
+				bindPredictors(planRecorder, regressionTable, equation);
+			}
 
 			regressionModel.addRegressionTables(regressionTable);
 		}
@@ -156,6 +248,81 @@ public class LinearEstimator extends Estimator {
 		return regressionModel;
 	}
 
+	/**
+	 * <p>
+	 * Encodes a continuous feature whose value is the weight of the active category.
+	 * </p>
+	 *
+	 * @param lookupValues Pairs of category and weight.
+	 */
+	static
+	private Feature encodeLookupFeature(TensorFlowEncoder encoder, DataField dataField, List<String> lookupValues, int index){
+		List<String> categories = new ArrayList<>();
+		List<String> weights = new ArrayList<>();
+
+		for(int i = 0; i < lookupValues.size(); i += 2){
+			categories.add(lookupValues.get(i));
+			weights.add(lookupValues.get(i + 1));
+		}
+
+		MapValues mapValues = InlineTableUtil.createMapValues(dataField.getName(), categories, weights, DataType.FLOAT, "0");
+
+		String name = "lookup(" + (dataField.getName()).getValue() + ")";
+		if(index > 0){
+			name = "lookup(" + (dataField.getName()).getValue() + ", " + String.valueOf(index + 1) + ")";
+		}
+
+		DerivedField derivedField = encoder.createDerivedField(FieldName.create(name), OpType.CONTINUOUS, DataType.FLOAT, mapValues);
+
+		return new ContinuousFeature(encoder, derivedField);
+	}
+
+	/**
+	 * <p>
+	 * Binds regression coefficients to the elements of multiplier variables.
+	 * Regression tables list predictors in the order of equation terms, but without terms whose coefficient is missing or zero.
+	 * </p>
+	 */
+	static
+	private void bindPredictors(ConversionPlan.Recorder planRecorder, RegressionTable regressionTable, Equation equation){
+		Iterator<NumericPredictor> numericPredictors = (regressionTable.getNumericPredictors()).iterator();
+		Iterator<CategoricalPredictor> categoricalPredictors = (regressionTable.getCategoricalPredictors()).iterator();
+
+		List<Feature> features = equation.getFeatures();
+		List<Double> coefficients = equation.getCoefficients();
+
+		for(int i = 0; i < features.size(); i++){
+			Feature feature = features.get(i);
+			Double coefficient = coefficients.get(i);
+
+			if(coefficient.isNaN() || ValueUtil.isZero(coefficient)){
+				continue;
+			}
+
+			PMMLObject predictor;
+
+			if(feature instanceof BinaryFeature){
+				predictor = categoricalPredictors.next();
+			} else
+
+			{
+				predictor = numericPredictors.next();
+			}
+
+			int variable = equation.getVariable(i);
+
+			if(variable < 0){
+				continue;
+			}
+
+			planRecorder.bind(predictor, variable, equation.getIndex(i));
+		}
+
+		if(numericPredictors.hasNext() || categoricalPredictors.hasNext()){
+			throw new IllegalArgumentException();
+		}
+	}
+
 	static
 	private class Equation {
 
@@ -163,6 +330,10 @@ public class LinearEstimator extends Estimator {
 
 		private List<Double> coefficients = new ArrayList<>();
 
+		private List<Integer> variables = new ArrayList<>();
+
+		private List<Integer> indices = new ArrayList<>();
+
 		private Double intercept = null;
 
 
@@ -170,8 +341,18 @@ public class LinearEstimator extends Estimator {
 		}
 
 		public void addTerm(Feature feature, Double coefficient){
+			addTerm(feature, coefficient, -1, -1);
+		}
+
+		/**
+		 * @param variable The identifier of the variable that the coefficient is taken from, or <code>-1</code>.
+		 * @param index The index of the coefficient in the flattened variable.
+		 */
+		public void addTerm(Feature feature, Double coefficient, int variable, int index){
 			this.features.add(feature);
 			this.coefficients.add(coefficient);
+			this.variables.add(variable);
+			this.indices.add(index);
 		}
 
 		public List<Feature> getFeatures(){
@@ -182,6 +363,14 @@ public class LinearEstimator extends Estimator {
 			return this.coefficients;
 		}
 
+		public int getVariable(int i){
+			return this.variables.get(i);
+		}
+
+		public int getIndex(int i){
+			return this.indices.get(i);
+		}
+
 		public Double getIntercept(){
 			return this.intercept;
 		}
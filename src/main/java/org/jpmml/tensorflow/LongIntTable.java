@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>
+ * A read-only map from longs to integers.
+ * </p>
+ *
+ * Values are stored as <code>int</code>s, but are presented as {@link Integer} or {@link Long} objects, depending on the data type of the lookup table.
+ *
+ * Keys are looked up using an open addressing hash table.
+ * Entries are iterated in insertion order.
+ */
+public class LongIntTable extends AbstractMap<Long, Number> {
+
+	private long[] keys = null;
+
+	private int[] values = null;
+
+	private int size = 0;
+
+	private int[] slots = null;
+
+	private boolean longValues = false;
+
+
+	/**
+	 * <p>
+	 * If there are duplicate keys, then the last value wins, but the entry keeps the position of the first key.
+	 * </p>
+	 *
+	 * @param longValues <code>true</code> if values should be presented as {@link Long} objects, <code>false</code> if as {@link Integer} objects.
+	 */
+	public LongIntTable(long[] keys, int[] values, boolean longValues){
+
+		if(keys.length != values.length){
+			throw new IllegalArgumentException();
+		}
+
+		this.keys = new long[keys.length];
+		this.values = new int[keys.length];
+
+		this.slots = new int[capacity(keys.length)];
+
+		for(int i = 0; i < keys.length; i++){
+			put(keys[i], values[i]);
+		}
+
+		if(this.size < keys.length){
+			this.keys = Arrays.copyOf(this.keys, this.size);
+			this.values = Arrays.copyOf(this.values, this.size);
+		}
+
+		this.longValues = longValues;
+	}
+
+	@Override
+	public int size(){
+		return this.size;
+	}
+
+	@Override
+	public boolean containsKey(Object key){
+		return (key instanceof Long) && (find((Long)key) > -1);
+	}
+
+	@Override
+	public Number get(Object key){
+
+		if(!(key instanceof Long)){
+			return null;
+		}
+
+		int index = find((Long)key);
+		if(index < 0){
+			return null;
+		}
+
+		return getValue(index);
+	}
+
+	@Override
+	public Set<Map.Entry<Long, Number>> entrySet(){
+		return new AbstractSet<Map.Entry<Long, Number>>(){
+
+			@Override
+			public int size(){
+				return LongIntTable.this.size;
+			}
+
+			@Override
+			public Iterator<Map.Entry<Long, Number>> iterator(){
+				return new Iterator<Map.Entry<Long, Number>>(){
+
+					private int index = 0;
+
+
+					@Override
+					public boolean hasNext(){
+						return this.index < LongIntTable.this.size;
+					}
+
+					@Override
+					public Map.Entry<Long, Number> next(){
+
+						if(!hasNext()){
+							throw new NoSuchElementException();
+						}
+
+						int index = this.index++;
+
+						return new AbstractMap.SimpleImmutableEntry<>(LongIntTable.this.keys[index], getValue(index));
+					}
+
+					@Override
+					public void remove(){
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	private Number getValue(int index){
+		int value = this.values[index];
+
+		if(this.longValues){
+			return (long)value;
+		}
+
+		return value;
+	}
+
+	private void put(long key, int value){
+		int mask = this.slots.length - 1;
+
+		for(int slot = hash(key) & mask; ; slot = (slot + 1) & mask){
+			int index = this.slots[slot] - 1;
+
+			if(index < 0){
+				index = this.size;
+
+				this.keys[index] = key;
+				this.values[index] = value;
+
+				this.slots[slot] = index + 1;
+
+				this.size++;
+
+				return;
+			} // End if
+
+			if(this.keys[index] == key){
+				this.values[index] = value;
+
+				return;
+			}
+		}
+	}
+
+	private int find(long key){
+		int mask = this.slots.length - 1;
+
+		for(int slot = hash(key) & mask; ; slot = (slot + 1) & mask){
+			int index = this.slots[slot] - 1;
+
+			if(index < 0){
+				return -1;
+			} // End if
+
+			if(this.keys[index] == key){
+				return index;
+			}
+		}
+	}
+
+	static
+	private int hash(long key){
+		return mix((int)(key ^ (key >>> 32)));
+	}
+
+	/**
+	 * @return A power of two that keeps the load factor at or below 0.5.
+	 */
+	static
+	int capacity(int size){
+		long capacity = Long.highestOneBit(Math.max(2L * size, 2L) - 1L) << 1;
+
+		if(capacity > (1 << 30)){
+			throw new IllegalArgumentException("Table is too large");
+		}
+
+		return (int)capacity;
+	}
+
+	/**
+	 * <p>
+	 * Spreads the bits of a hash code, so that consecutive keys do not fall into consecutive slots.
+	 * </p>
+	 */
+	static
+	int mix(int hash){
+		hash *= 0x9E3779B9;
+
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -18,9 +18,29 @@
  */
 package org.jpmml.tensorflow;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
@@ -42,18 +62,134 @@ public class Main {
 
 	@Parameter (
 		names = {"--tf-input", "--tf-savedmodel-input"},
-		description = "TF SavedModel input directory",
-		required = true
+		description = "TF SavedModel input directory"
 	)
 	private File input = null;
 
+	@Parameter (
+		names = "--tf-inputs",
+		description = "TF SavedModel input directories (batch mode)",
+		variableArity = true
+	)
+	private List<File> inputs = new ArrayList<>();
+
+	@Parameter (
+		names = "--tf-input-manifest",
+		description = "Text file listing TF SavedModel input directories, one per line (batch mode)"
+	)
+	private File inputManifest = null;
+
+	@Parameter (
+		names = "--tf-native",
+		description = "Load the SavedModel using the native TensorFlow runtime. If false, the SavedModel is parsed and its variables are read in pure Java",
+		arity = 1
+	)
+	private boolean _native = true;
+
+	@Parameter (
+		names = "--tf-prune-graph",
+		description = "Retain only those graph nodes that are reachable from the model head. Reduces the memory usage of graphs with many training ops or large embedded constants",
+		arity = 1
+	)
+	private boolean pruneGraph = false;
+
+	@Parameter (
+		names = "--tf-write-sidecar",
+		description = "When loading the SavedModel in pure Java, cache a text-format saved_model.pbtxt file as a binary sidecar file in the SavedModel directory. Later conversions read the sidecar file instead",
+		arity = 1
+	)
+	private boolean writeSidecar = false;
+
 	@Parameter (
 		names = "--pmml-output",
-		description = "PMML output file",
-		required = true
+		description = "PMML output file"
 	)
 	private File output = null;
 
+	@Parameter (
+		names = "--pmml-output-dir",
+		description = "PMML output directory (batch mode). The PMML file of a SavedModel directory is named after it"
+	)
+	private File outputDir = null;
+
+	@Parameter (
+		names = "--ser-output",
+		description = "Serialized PMML output file. A serialized PMML file loads much faster than a PMML file. See SerializedPMMLUtil#deserializePMML(File)"
+	)
+	private File serOutput = null;
+
+	@Parameter (
+		names = "--pmml-compress",
+		description = "Write the PMML output file gzip-compressed (using the fastest compression level)",
+		arity = 1
+	)
+	private boolean compress = false;
+
+	@Parameter (
+		names = "--pmml-streaming",
+		description = "Write the hidden layers of neural network models directly to the PMML output file, without keeping their neurons in memory",
+		arity = 1
+	)
+	private boolean streaming = false;
+
+	@Parameter (
+		names = "--fold-categorical-inputs",
+		description = "Fold the weights of categorical fields into lookup tables. Applies to the first layer of neural network models, and to regression models",
+		arity = 1
+	)
+	private boolean foldCategoricalInputs = false;
+
+	@Parameter (
+		names = "--prune-threshold",
+		description = "Prune neural network weights and regression coefficients whose absolute value is less than this value"
+	)
+	private double pruneThreshold = 0d;
+
+	@Parameter (
+		names = "--prune-relative-threshold",
+		description = "Prune neural network weights and regression coefficients whose absolute value is less than this proportion of the greatest absolute value in the same weight matrix"
+	)
+	private double pruneRelativeThreshold = 0d;
+
+	@Parameter (
+		names = "--threads",
+		description = "The number of threads. In batch mode, the number of SavedModel directories to convert concurrently. Otherwise, the number of threads that encode the layers of a neural network model"
+	)
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	@Parameter (
+		names = "--plan-output",
+		description = "Conversion plan output file. A conversion plan can be applied to the variables of another SavedModel directory that has an identical graph"
+	)
+	private File planOutput = null;
+
+	@Parameter (
+		names = "--plan-input",
+		description = "Conversion plan input file. The PMML file is created by applying the conversion plan to the variables of the SavedModel directory, without converting it"
+	)
+	private File planInput = null;
+
+	@Parameter (
+		names = "--cache-dir",
+		description = "Conversion cache directory. A SavedModel directory that has been converted before is not loaded again"
+	)
+	private File cacheDir = null;
+
+	@Parameter (
+		names = "--cache-max-size",
+		description = "The maximum size of the conversion cache directory, in megabytes"
+	)
+	private long cacheMaxSize = 1024;
+
+	@Parameter (
+		names = "--cache-compress",
+		description = "Store PMML files in the conversion cache directory gzip-compressed",
+		arity = 1
+	)
+	private boolean cacheCompress = true;
+
+	private ConversionCache conversionCache = null;
+
 
 	static
 	public void main(String[] args) throws Exception {
@@ -64,6 +200,8 @@ public class Main {
 
 		try {
 			commander.parse(args);
+
+			main.validate();
 		} catch(ParameterException pe){
 			StringBuilder sb = new StringBuilder();
 
@@ -90,14 +228,221 @@ public class Main {
 		main.run();
 	}
 
-	private void run() throws Exception {
-		SavedModelBundle bundle;
+	void validate(){
+
+		if(isBatch()){
+
+			if(this.input != null || this.output != null){
+				throw new ParameterException("Options --tf-input and --pmml-output cannot be combined with batch mode options");
+			} // End if
+
+			if(this.outputDir == null){
+				throw new ParameterException("Batch mode requires option --pmml-output-dir");
+			}
+		} else
+
+		{
+			if(this.input == null || this.output == null){
+				throw new ParameterException("Options --tf-input and --pmml-output are required");
+			}
+		} // End if
+
+		if(this.planInput != null || this.planOutput != null){
+
+			if(isBatch()){
+				throw new ParameterException("Options --plan-input and --plan-output cannot be combined with batch mode options");
+			} // End if
+
+			if(this.planInput != null && this.planOutput != null){
+				throw new ParameterException("Options --plan-input and --plan-output cannot be combined");
+			}
+		} // End if
+
+		if(this.serOutput != null){
+
+			if(isBatch()){
+				throw new ParameterException("Option --ser-output cannot be combined with batch mode options");
+			} // End if
+
+			if(this.streaming){
+				throw new ParameterException("Option --ser-output cannot be combined with option --pmml-streaming");
+			}
+		} // End if
+
+		if(this.threads < 1){
+			throw new ParameterException("Option --threads must be positive");
+		} // End if
+
+		if(this.pruneThreshold < 0d){
+			throw new ParameterException("Option --prune-threshold must not be negative");
+		} // End if
+
+		if(this.pruneRelativeThreshold < 0d || this.pruneRelativeThreshold >= 1d){
+			throw new ParameterException("Option --prune-relative-threshold must be in range [0, 1)");
+		}
+	}
+
+	private boolean isBatch(){
+		return (this.inputs.size() > 0) || (this.inputManifest != null);
+	}
+
+	void run() throws Exception {
+
+		if(this.cacheDir != null){
+			this.conversionCache = new ConversionCache(this.cacheDir, this.cacheMaxSize * 1024 * 1024, this.cacheCompress);
+		} // End if
+
+		if(isBatch()){
+			runBatch();
+		} else
+
+		{
+			convert(this.input, this.output);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Converts many SavedModel directories in one JVM, using a bounded pool of worker threads.
+	 * Every conversion works with its own {@link SavedModel} and {@link Estimator} objects.
+	 * A failed conversion is reported, but does not prevent the remaining conversions from running.
+	 * </p>
+	 */
+	private void runBatch() throws Exception {
+		List<File> inputs = new ArrayList<>(this.inputs);
+
+		if(this.inputManifest != null){
+			inputs.addAll(readManifest(this.inputManifest));
+		}
+
+		Map<File, File> outputs = new LinkedHashMap<>();
+
+		Set<File> outputFiles = new HashSet<>();
+
+		for(File input : inputs){
+			File output = new File(this.outputDir, (input.getAbsoluteFile()).getName() + (this.compress ? ".pmml.gz" : ".pmml"));
+
+			if(!outputFiles.add(output)){
+				throw new IllegalArgumentException("SavedModel directory " + input + " maps to an already used PMML output file " + output);
+			}
+
+			outputs.put(input, output);
+		}
+
+		if(!this.outputDir.isDirectory() && !this.outputDir.mkdirs()){
+			throw new IOException("Failed to create PMML output directory " + this.outputDir);
+		}
+
+		logger.info("Converting {} SavedModel directories using {} thread(s)..", outputs.size(), this.threads);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(this.threads);
+
+		Map<File, Future<Long>> futures = new LinkedHashMap<>();
+
+		long begin = System.currentTimeMillis();
+
+		try {
+			Collection<Map.Entry<File, File>> entries = outputs.entrySet();
+
+			for(Map.Entry<File, File> entry : entries){
+				final
+				File input = entry.getKey();
+
+				final
+				File output = entry.getValue();
+
+				Callable<Long> task = new Callable<Long>(){
+
+					@Override
+					public Long call() throws Exception {
+						long begin = System.currentTimeMillis();
+						convert(input, output);
+						long end = System.currentTimeMillis();
+
+						return (end - begin);
+					}
+				};
+
+				futures.put(input, executorService.submit(task));
+			}
+		} finally {
+			executorService.shutdown();
+		}
+
+		Map<File, Throwable> failures = new LinkedHashMap<>();
+
+		Collection<Map.Entry<File, Future<Long>>> entries = futures.entrySet();
+
+		for(Map.Entry<File, Future<Long>> entry : entries){
+			File input = entry.getKey();
+			Future<Long> future = entry.getValue();
+
+			try {
+				Long time = future.get();
+
+				logger.info("Converted {} in {} ms.", input, time);
+			} catch(ExecutionException ee){
+				Throwable cause = ee.getCause();
+
+				logger.error("Failed to convert " + input, cause);
+
+				failures.put(input, cause);
+			}
+		}
+
+		long end = System.currentTimeMillis();
+
+		logger.info("Converted {} of {} SavedModel directories in {} ms.", (futures.size() - failures.size()), futures.size(), (end - begin));
+
+		if(failures.size() > 0){
+			Collection<Map.Entry<File, Throwable>> failureEntries = failures.entrySet();
+
+			for(Map.Entry<File, Throwable> failureEntry : failureEntries){
+				logger.error("Failed: {} ({})", failureEntry.getKey(), String.valueOf(failureEntry.getValue()));
+			}
+
+			throw new IllegalStateException("Failed to convert " + failures.size() + " of " + futures.size() + " SavedModel directories");
+		}
+	}
+
+	private void convert(File input, File output) throws Exception {
+		ConversionMetrics.setModel(input.getPath());
+
+		try {
+			convertInternal(input, output);
+		} finally {
+			ConversionMetrics.setModel(null);
+		}
+	}
+
+	private void convertInternal(File input, File output) throws Exception {
+
+		if(this.planInput != null){
+			applyPlan(input, output);
+
+			return;
+		}
+
+		String cacheKey = null;
+
+		// The conversion cache holds PMML files only
+		if(this.conversionCache != null && this.planOutput == null && this.serOutput == null){
+			cacheKey = ConversionCache.fingerprint(input, getCacheSalt());
+
+			if(this.conversionCache.get(cacheKey, output)){
+				logger.info("Found {} in the conversion cache", input);
+
+				return;
+			}
+		}
+
+		SavedModel savedModel;
 
 		try {
 			logger.info("Parsing SavedModel..");
 
 			long begin = System.currentTimeMillis();
-			bundle = SavedModelBundle.load(this.input.getAbsolutePath(), "serve");
+			savedModel = loadSavedModel(input);
 			long end = System.currentTimeMillis();
 
 			logger.info("Parsed SavedModel in {} ms.", (end - begin));
@@ -107,31 +452,160 @@ public class Main {
 			throw e;
 		}
 
-		PMML pmml;
+		try {
+			Estimator estimator;
+
+			ConversionPlan conversionPlan = null;
+
+			PMML pmml;
+
+			try {
+				logger.info("Converting..");
+
+				EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
 
-		try(SavedModel savedModel = new SavedModel(bundle)){
-			logger.info("Converting..");
+				estimator = estimatorFactory.newEstimator(savedModel);
+				estimator.putOption(DNNEstimator.OPTION_STREAMING, this.streaming);
+				// In batch mode, the threads are already busy converting other SavedModel directories
+				estimator.putOption(DNNEstimator.OPTION_THREADS, isBatch() ? 1 : this.threads);
+				estimator.putOption(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, this.foldCategoricalInputs);
+				estimator.putOption(Estimator.OPTION_PRUNE_THRESHOLD, this.pruneThreshold);
+				estimator.putOption(Estimator.OPTION_PRUNE_RELATIVE_THRESHOLD, this.pruneRelativeThreshold);
 
-			EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+				long begin = System.currentTimeMillis();
 
-			Estimator estimator = estimatorFactory.newEstimator(savedModel);
+				if(this.planOutput != null){
+					conversionPlan = estimator.encodeConversionPlan();
+
+					pmml = conversionPlan.getPMML();
+				} else
+
+				{
+					pmml = estimator.encodePMML();
+				}
+
+				long end = System.currentTimeMillis();
+
+				logger.info("Converted in {} ms.", (end - begin));
+			} catch(Exception e){
+				logger.error("Failed to convert", e);
+
+				throw e;
+			}
+
+			// Streaming marshalling reads layer weights from the SavedModel, so it must still be open
+			try(OutputStream os = openOutputStream(output)){
+				logger.info("Marshalling PMML..");
+
+				long begin = System.currentTimeMillis();
+
+				ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.MARSHAL_PMML, output.getName());
+
+				try {
+
+					if(this.streaming){
+						StreamingPMMLUtil.marshalPMML(pmml, os);
+					} else
+
+					{
+						MetroJAXBUtil.marshalPMML(pmml, os);
+					}
+				} finally {
+					phase.close();
+				}
+
+				long end = System.currentTimeMillis();
+
+				logger.info("Marshalled PMML in {}", (end - begin));
+			} catch(Exception e){
+				logger.error("Failed to marshal PMML", e);
+
+				throw e;
+			}
+
+			// The hidden layers of streaming neural network models are pruned during marshalling
+			WeightPruner weightPruner = estimator.getWeightPruner();
+			if(weightPruner != null){
+				logger.info("Pruned {} of {} weights. Sparsity {}, maximum dropped weight per neuron or regression term {}", weightPruner.getPrunedWeights(), weightPruner.getWeights(), weightPruner.getSparsity(), weightPruner.getMaxDroppedWeight());
+			}
+
+			if(conversionPlan != null){
+
+				try(OutputStream os = new FileOutputStream(this.planOutput)){
+					logger.info("Writing conversion plan..");
+
+					conversionPlan.write(os);
+				} catch(Exception e){
+					logger.error("Failed to write conversion plan", e);
+
+					throw e;
+				}
+			} // End if
+
+			if(this.serOutput != null){
+				serializePMML(pmml, this.serOutput);
+			} // End if
+
+			if(cacheKey != null){
+				this.conversionCache.put(cacheKey, output);
+			}
+		} finally {
+			savedModel.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Patches the PMML document of the conversion plan with the variables of the SavedModel directory.
+	 * The graph of the SavedModel directory is not loaded.
+	 * </p>
+	 */
+	private void applyPlan(File input, File output) throws Exception {
+		ConversionPlan conversionPlan;
+
+		try(InputStream is = new FileInputStream(this.planInput)){
+			logger.info("Reading conversion plan..");
 
 			long begin = System.currentTimeMillis();
-			pmml = estimator.encodePMML();
+			conversionPlan = ConversionPlan.read(is);
 			long end = System.currentTimeMillis();
 
-			logger.info("Converted in {} ms.", (end - begin));
+			logger.info("Read conversion plan in {} ms.", (end - begin));
 		} catch(Exception e){
-			logger.error("Failed to convert", e);
+			logger.error("Failed to read conversion plan", e);
 
 			throw e;
 		}
 
-		try(OutputStream os = new FileOutputStream(this.output)){
+		PMML pmml;
+
+		try {
+			logger.info("Applying conversion plan..");
+
+			long begin = System.currentTimeMillis();
+			pmml = conversionPlan.apply(new File(input, "variables/variables"));
+			long end = System.currentTimeMillis();
+
+			logger.info("Applied conversion plan in {} ms.", (end - begin));
+		} catch(Exception e){
+			logger.error("Failed to apply conversion plan", e);
+
+			throw e;
+		}
+
+		try(OutputStream os = openOutputStream(output)){
 			logger.info("Marshalling PMML..");
 
 			long begin = System.currentTimeMillis();
-			MetroJAXBUtil.marshalPMML(pmml, os);
+
+			ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.MARSHAL_PMML, output.getName());
+
+			try {
+				MetroJAXBUtil.marshalPMML(pmml, os);
+			} finally {
+				phase.close();
+			}
+
 			long end = System.currentTimeMillis();
 
 			logger.info("Marshalled PMML in {}", (end - begin));
@@ -140,6 +614,101 @@ public class Main {
 
 			throw e;
 		}
+
+		if(this.serOutput != null){
+			serializePMML(pmml, this.serOutput);
+		}
+	}
+
+	private OutputStream openOutputStream(File file) throws IOException {
+		OutputStream os = new FileOutputStream(file);
+
+		if(this.compress){
+			os = new GZIPOutputStream(os, 64 * 1024){
+
+				{
+					this.def.setLevel(Deflater.BEST_SPEED);
+				}
+			};
+		}
+
+		// The only buffering layer. JAXB marshallers and StAX writers write many small chunks
+		return new BufferedOutputStream(os, 64 * 1024);
+	}
+
+	private void serializePMML(PMML pmml, File output) throws Exception {
+
+		try(OutputStream os = new FileOutputStream(output)){
+			logger.info("Serializing PMML..");
+
+			long begin = System.currentTimeMillis();
+			SerializedPMMLUtil.serializePMML(pmml, os);
+			long end = System.currentTimeMillis();
+
+			logger.info("Serialized PMML in {} ms.", (end - begin));
+		} catch(Exception e){
+			logger.error("Failed to serialize PMML", e);
+
+			throw e;
+		}
+	}
+
+	private SavedModel loadSavedModel(File dir) throws Exception {
+
+		ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.LOAD_SAVED_MODEL, dir.getPath());
+
+		try {
+
+			if(this._native){
+				SavedModelBundle bundle = SavedModelBundle.load(dir.getAbsolutePath(), "serve");
+
+				return new SavedModel(bundle, this.pruneGraph);
+			}
+
+			return SavedModelUtil.load(dir, "serve", this.pruneGraph, this.writeSidecar);
+		} finally {
+			phase.close();
+		}
+	}
+
+	/**
+	 * @return A string that captures all options that affect the contents of the PMML file.
+	 */
+	private String getCacheSalt(){
+		Package _package = Main.class.getPackage();
+
+		return "jpmml-tensorflow/" + _package.getImplementationVersion() + "/fold=" + this.foldCategoricalInputs + "/prune=" + this.pruneThreshold + "," + this.pruneRelativeThreshold + "/compress=" + this.compress;
+	}
+
+	/**
+	 * <p>
+	 * Blank lines and lines that start with <code>#</code> are ignored.
+	 * Relative paths are resolved against the directory of the manifest file.
+	 * </p>
+	 */
+	static
+	private List<File> readManifest(File manifest) throws IOException {
+		List<File> result = new ArrayList<>();
+
+		File dir = (manifest.getAbsoluteFile()).getParentFile();
+
+		List<String> lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+		for(String line : lines){
+			line = line.trim();
+
+			if(line.isEmpty() || line.startsWith("#")){
+				continue;
+			}
+
+			File file = new File(line);
+			if(!file.isAbsolute()){
+				file = new File(dir, line);
+			}
+
+			result.add(file);
+		}
+
+		return result;
 	}
 
 	private static final Logger logger = LoggerFactory.getLogger(Main.class);
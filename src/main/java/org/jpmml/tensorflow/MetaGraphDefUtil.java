@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import org.tensorflow.framework.CollectionDef;
+import org.tensorflow.framework.GraphDef;
+import org.tensorflow.framework.MetaGraphDef;
+import org.tensorflow.framework.NodeDef;
+
+/**
+ * <p>
+ * Utilities for pruning a MetaGraph to the subgraph that is relevant for conversion.
+ * </p>
+ *
+ * The subgraph consists of all nodes that are reachable from the root nodes (ie. model heads), the initializers of lookup tables that are reachable,
+ * and the restore subgraphs of variables that are reachable. The latter are needed for reading variable values from the checkpoint in pure Java.
+ */
+public class MetaGraphDefUtil {
+
+	private MetaGraphDefUtil(){
+	}
+
+	/**
+	 * <p>
+	 * Parses a serialized MetaGraphDef, without parsing or retaining nodes that are not part of the pruned subgraph.
+	 * </p>
+	 *
+	 * Nodes are first scanned for their name, op type and inputs only.
+	 * The remaining content of nodes (most notably, the values of embedded constants) is parsed only if the node is retained.
+	 * If the byte string is backed by a large array, then it is no longer referenced after this method returns.
+	 *
+	 * @param roots The names of root nodes. If none of them is present, then the MetaGraph is not pruned.
+	 */
+	static
+	public MetaGraphDef parsePruned(ByteString bytes, Collection<String> roots) throws IOException {
+		// The raw bytes of all fields other than nodes, copied verbatim (including unknown fields)
+		ByteString.Output metaGraphDefOutput = ByteString.newOutput();
+		ByteString.Output graphDefOutput = ByteString.newOutput();
+
+		List<ByteString> nodeBytes = new ArrayList<>();
+
+		NodeList nodes = new NodeList();
+
+		CodedInputStream input = newCodedInput(bytes);
+
+		while(true){
+			int begin = input.getTotalBytesRead();
+
+			int tag = input.readTag();
+
+			if(tag == 0){
+				break;
+			} // End if
+
+			if(tag == MetaGraphDefUtil.META_GRAPH_DEF_GRAPH_DEF){
+				ByteString graphDefBytes = input.readBytes();
+
+				CodedInputStream graphDefInput = newCodedInput(graphDefBytes);
+
+				while(true){
+					int graphDefBegin = graphDefInput.getTotalBytesRead();
+
+					int graphDefTag = graphDefInput.readTag();
+
+					if(graphDefTag == 0){
+						break;
+					} // End if
+
+					if(graphDefTag == MetaGraphDefUtil.GRAPH_DEF_NODE){
+						ByteString node = graphDefInput.readBytes();
+
+						nodeBytes.add(node);
+
+						scanNode(node, nodes);
+					} else
+
+					{
+						graphDefInput.skipField(graphDefTag);
+
+						copyField(graphDefBytes, graphDefBegin, graphDefInput.getTotalBytesRead(), graphDefOutput);
+					}
+				}
+			} else
+
+			{
+				input.skipField(tag);
+
+				copyField(bytes, begin, input.getTotalBytesRead(), metaGraphDefOutput);
+			}
+		}
+
+		MetaGraphDef.Builder metaGraphDefBuilder = MetaGraphDef.newBuilder()
+			.mergeFrom(metaGraphDefOutput.toByteString());
+		GraphDef.Builder graphDefBuilder = GraphDef.newBuilder()
+			.mergeFrom(graphDefOutput.toByteString());
+
+		BitSet retained = retain(nodes, getNodeNames(metaGraphDefBuilder.getCollectionDefMap(), "table_initializer"), roots);
+
+		for(int i = 0; i < nodeBytes.size(); i++){
+
+			if(retained == null || retained.get(i)){
+				// Parsed without aliasing, so that retained nodes do not keep the byte string alive
+				graphDefBuilder.addNode(NodeDef.parseFrom(nodeBytes.get(i)));
+			}
+
+			nodeBytes.set(i, null);
+		}
+
+		metaGraphDefBuilder.setGraphDef(graphDefBuilder);
+
+		if(retained != null){
+			filterCollections(metaGraphDefBuilder, nodes, retained);
+		}
+
+		return metaGraphDefBuilder.build();
+	}
+
+	/**
+	 * <p>
+	 * Prunes an already parsed MetaGraphDef.
+	 * </p>
+	 *
+	 * @param roots The names of root nodes. If none of them is present, then the MetaGraph is returned unchanged.
+	 *
+	 * @see #parsePruned(ByteString, Collection)
+	 */
+	static
+	public MetaGraphDef prune(MetaGraphDef metaGraphDef, Collection<String> roots){
+		GraphDef graphDef = metaGraphDef.getGraphDef();
+
+		List<NodeDef> nodeDefs = graphDef.getNodeList();
+
+		NodeList nodes = new NodeList();
+
+		for(NodeDef nodeDef : nodeDefs){
+			nodes.add(nodeDef.getName(), nodeDef.getOp(), nodeDef.getInputList());
+		}
+
+		BitSet retained = retain(nodes, getNodeNames(metaGraphDef.getCollectionDefMap(), "table_initializer"), roots);
+		if(retained == null){
+			return metaGraphDef;
+		}
+
+		GraphDef.Builder graphDefBuilder = graphDef.toBuilder()
+			.clearNode();
+
+		for(int i = 0; i < nodeDefs.size(); i++){
+
+			if(retained.get(i)){
+				graphDefBuilder.addNode(nodeDefs.get(i));
+			}
+		}
+
+		MetaGraphDef.Builder metaGraphDefBuilder = metaGraphDef.toBuilder()
+			.setGraphDef(graphDefBuilder);
+
+		filterCollections(metaGraphDefBuilder, nodes, retained);
+
+		return metaGraphDefBuilder.build();
+	}
+
+	/**
+	 * @return The tags of a serialized MetaGraphDef.
+	 */
+	static
+	public List<String> parseTags(ByteString bytes) throws IOException {
+		CodedInputStream input = newCodedInput(bytes);
+
+		while(true){
+			int tag = input.readTag();
+
+			if(tag == 0){
+				break;
+			} // End if
+
+			if(tag == MetaGraphDefUtil.META_GRAPH_DEF_META_INFO_DEF){
+				MetaGraphDef.MetaInfoDef metaInfoDef = MetaGraphDef.MetaInfoDef.parseFrom(input.readBytes());
+
+				return metaInfoDef.getTagsList();
+			}
+
+			input.skipField(tag);
+		}
+
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @return The positions of retained nodes, or <code>null</code> if none of the root nodes is present.
+	 */
+	static
+	private BitSet retain(NodeList nodes, List<String> tableInitializerNames, Collection<String> roots){
+		Map<String, Integer> ids = new HashMap<>(2 * nodes.size());
+
+		for(int i = 0; i < nodes.size(); i++){
+			ids.put(nodes.getName(i), i);
+		}
+
+		// Variable name to restore assignment positions
+		Map<String, List<Integer>> assigns = new HashMap<>();
+
+		for(int i = 0; i < nodes.size(); i++){
+
+			if(!("Assign").equals(nodes.getOp(i)) || nodes.getInputs(i).size() < 2){
+				continue;
+			}
+
+			Integer valueId = ids.get(toNodeName(nodes.getInputs(i).get(1)));
+
+			if(valueId != null && ("RestoreV2").equals(nodes.getOp(valueId))){
+				put(assigns, toNodeName(nodes.getInputs(i).get(0)), i);
+			}
+		}
+
+		// Table name to initializer positions
+		Map<String, List<Integer>> tableInitializers = new HashMap<>();
+
+		for(String tableInitializerName : tableInitializerNames){
+			Integer id = ids.get(toNodeName(tableInitializerName));
+
+			if(id != null && nodes.getInputs(id).size() > 0){
+				put(tableInitializers, toNodeName(nodes.getInputs(id).get(0)), id);
+			}
+		}
+
+		List<Integer> stack = new ArrayList<>();
+
+		for(String root : roots){
+			Integer id = ids.get(root);
+
+			if(id != null){
+				stack.add(id);
+			}
+		}
+
+		if(stack.isEmpty()){
+			return null;
+		}
+
+		BitSet result = new BitSet(nodes.size());
+
+		while(!stack.isEmpty()){
+			int id = stack.remove(stack.size() - 1);
+
+			if(result.get(id)){
+				continue;
+			}
+
+			result.set(id);
+
+			List<String> inputs = nodes.getInputs(id);
+			for(String input : inputs){
+				Integer inputId = ids.get(toNodeName(input));
+
+				if(inputId != null){
+					stack.add(inputId);
+				}
+			}
+
+			String name = nodes.getName(id);
+
+			List<Integer> assignIds = assigns.get(name);
+			if(assignIds != null){
+				stack.addAll(assignIds);
+			}
+
+			List<Integer> tableInitializerIds = tableInitializers.get(name);
+			if(tableInitializerIds != null){
+				stack.addAll(tableInitializerIds);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Removes pruned nodes from node list collections, so that collections do not refer to missing nodes.
+	 * </p>
+	 */
+	static
+	private void filterCollections(MetaGraphDef.Builder metaGraphDefBuilder, NodeList nodes, BitSet retained){
+		Map<String, Integer> ids = new HashMap<>(2 * nodes.size());
+
+		for(int i = 0; i < nodes.size(); i++){
+			ids.put(nodes.getName(i), i);
+		}
+
+		Map<String, CollectionDef> collectionDefs = new HashMap<>(metaGraphDefBuilder.getCollectionDefMap());
+
+		for(Map.Entry<String, CollectionDef> entry : collectionDefs.entrySet()){
+			CollectionDef collectionDef = entry.getValue();
+
+			if(collectionDef.getKindCase() != CollectionDef.KindCase.NODE_LIST){
+				continue;
+			}
+
+			CollectionDef.NodeList.Builder nodeListBuilder = CollectionDef.NodeList.newBuilder();
+
+			List<String> names = (collectionDef.getNodeList()).getValueList();
+			for(String name : names){
+				Integer id = ids.get(toNodeName(name));
+
+				if(id != null && retained.get(id)){
+					nodeListBuilder.addValue(name);
+				}
+			}
+
+			metaGraphDefBuilder.putCollectionDef(entry.getKey(), CollectionDef.newBuilder().setNodeList(nodeListBuilder).build());
+		}
+	}
+
+	static
+	private void scanNode(ByteString bytes, NodeList nodes) throws IOException {
+		String name = null;
+		String op = null;
+
+		List<String> inputs = new ArrayList<>();
+
+		CodedInputStream input = bytes.newCodedInput();
+
+		while(true){
+			int tag = input.readTag();
+
+			if(tag == 0){
+				break;
+			}
+
+			switch(tag){
+				case MetaGraphDefUtil.NODE_DEF_NAME:
+					name = input.readStringRequireUtf8();
+					break;
+				case MetaGraphDefUtil.NODE_DEF_OP:
+					op = input.readStringRequireUtf8();
+					break;
+				case MetaGraphDefUtil.NODE_DEF_INPUT:
+					inputs.add(input.readStringRequireUtf8());
+					break;
+				default:
+					input.skipField(tag);
+					break;
+			}
+		}
+
+		nodes.add(name != null ? name : "", op != null ? op : "", inputs);
+	}
+
+	static
+	private void copyField(ByteString bytes, int begin, int end, ByteString.Output output) throws IOException {
+		bytes.substring(begin, end).writeTo(output);
+	}
+
+	static
+	private CodedInputStream newCodedInput(ByteString bytes){
+		CodedInputStream result = bytes.newCodedInput();
+		result.enableAliasing(true);
+		result.setSizeLimit(Integer.MAX_VALUE);
+
+		return result;
+	}
+
+	static
+	private List<String> getNodeNames(Map<String, CollectionDef> collectionDefs, String key){
+		CollectionDef collectionDef = collectionDefs.get(key);
+
+		if(collectionDef == null || collectionDef.getKindCase() != CollectionDef.KindCase.NODE_LIST){
+			return Collections.emptyList();
+		}
+
+		return (collectionDef.getNodeList()).getValueList();
+	}
+
+	static
+	private void put(Map<String, List<Integer>> map, String key, int value){
+		List<Integer> values = map.get(key);
+
+		if(values == null){
+			values = new ArrayList<>(1);
+
+			map.put(key, values);
+		}
+
+		values.add(value);
+	}
+
+	/**
+	 * <p>
+	 * Strips the control dependency prefix and the output index suffix.
+	 * </p>
+	 */
+	static
+	private String toNodeName(String name){
+
+		if(name.startsWith("^")){
+			name = name.substring(1);
+		}
+
+		return GraphIndex.toNodeName(name);
+	}
+
+	static
+	private class NodeList {
+
+		private List<String> names = new ArrayList<>();
+
+		private List<String> ops = new ArrayList<>();
+
+		private List<List<String>> inputs = new ArrayList<>();
+
+
+		public int size(){
+			return this.names.size();
+		}
+
+		public void add(String name, String op, List<String> inputs){
+			this.names.add(name);
+			this.ops.add(op);
+			this.inputs.add(inputs);
+		}
+
+		public String getName(int id){
+			return this.names.get(id);
+		}
+
+		public String getOp(int id){
+			return this.ops.get(id);
+		}
+
+		public List<String> getInputs(int id){
+			return this.inputs.get(id);
+		}
+	}
+
+	private static final int META_GRAPH_DEF_META_INFO_DEF = (MetaGraphDef.META_INFO_DEF_FIELD_NUMBER << 3) | 2;
+	private static final int META_GRAPH_DEF_GRAPH_DEF = (MetaGraphDef.GRAPH_DEF_FIELD_NUMBER << 3) | 2;
+
+	private static final int GRAPH_DEF_NODE = (GraphDef.NODE_FIELD_NUMBER << 3) | 2;
+
+	private static final int NODE_DEF_NAME = (NodeDef.NAME_FIELD_NUMBER << 3) | 2;
+	private static final int NODE_DEF_OP = (NodeDef.OP_FIELD_NUMBER << 3) | 2;
+	private static final int NODE_DEF_INPUT = (NodeDef.INPUT_FIELD_NUMBER << 3) | 2;
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.List;
+
+/**
+ * <p>
+ * A compiled feed-forward neural network.
+ * </p>
+ *
+ * The first layer is an {@link InputLayer}.
+ * Every other layer is a dense single-precision weight matrix, which is laid out one row per neuron of the previous layer,
+ * so that the contribution of an inactive (ie. zero) neuron can be skipped as a whole.
+ *
+ * Batches of records are scored in blocks of {@link Scorer#BLOCK_SIZE} records.
+ * Every layer then becomes a matrix-matrix product, which is tiled so that a tile of the weight matrix is reused for all records of the block while it is in the cache.
+ * Inner loops run over contiguous arrays without branches, so that they can be auto-vectorized by the JIT compiler.
+ */
+class NeuralNetworkScorer extends Scorer {
+
+	private InputLayer inputLayer = null;
+
+	private int[] counts = null;
+
+	private float[][] weights = null;
+
+	private float[][] biases = null;
+
+	private Activation[] activations = null;
+
+	private boolean[] softmax = null;
+
+	private int[] outputNeurons = null;
+
+	private ThreadLocal<double[][]> buffers = null;
+
+	private ThreadLocal<double[][]> batchBuffers = null;
+
+
+	/**
+	 * @param weights The weight matrices of all layers but the first one.
+	 * @param biases The bias vectors of all layers but the first one.
+	 * @param activations The activation functions of all layers.
+	 * @param softmax The normalization methods of all layers.
+	 * @param outputNeurons The indices of output neurons in the last layer, in the order of outputs.
+	 */
+	NeuralNetworkScorer(List<String> inputNames, List<List<String>> categories, List<String> outputNames, InputLayer inputLayer, float[][] weights, float[][] biases, Activation[] activations, boolean[] softmax, int[] outputNeurons){
+		super(inputNames, categories, outputNames);
+
+		final
+		int[] counts = new int[activations.length];
+
+		counts[0] = inputLayer.getCount();
+
+		for(int k = 1; k < counts.length; k++){
+			counts[k] = biases[k - 1].length;
+
+			if(weights[k - 1].length != counts[k - 1] * counts[k]){
+				throw new IllegalArgumentException();
+			}
+		}
+
+		for(int outputNeuron : outputNeurons){
+
+			if(outputNeuron < 0 || outputNeuron >= counts[counts.length - 1]){
+				throw new IllegalArgumentException();
+			}
+		}
+
+		this.inputLayer = inputLayer;
+		this.counts = counts;
+		this.weights = weights;
+		this.biases = biases;
+		this.activations = activations;
+		this.softmax = softmax;
+		this.outputNeurons = outputNeurons;
+
+		this.buffers = new ThreadLocal<double[][]>(){
+
+			@Override
+			protected double[][] initialValue(){
+				double[][] result = new double[counts.length][];
+
+				for(int k = 0; k < counts.length; k++){
+					result[k] = new double[counts[k]];
+				}
+
+				return result;
+			}
+		};
+
+		this.batchBuffers = new ThreadLocal<double[][]>(){
+
+			@Override
+			protected double[][] initialValue(){
+				double[][] result = new double[counts.length][];
+
+				for(int k = 0; k < counts.length; k++){
+					result[k] = new double[Scorer.BLOCK_SIZE * counts[k]];
+				}
+
+				return result;
+			}
+		};
+	}
+
+	@Override
+	public void score(double[] in, double[] out){
+		double[][] buffers = this.buffers.get();
+
+		double[] values = buffers[0];
+
+		this.inputLayer.apply(in, values);
+
+		normalize(0, values);
+
+		for(int k = 1; k < this.counts.length; k++){
+			double[] prevValues = values;
+
+			values = buffers[k];
+
+			int prevCount = this.counts[k - 1];
+			int count = this.counts[k];
+
+			float[] weights = this.weights[k - 1];
+
+			float[] biases = this.biases[k - 1];
+
+			for(int j = 0; j < count; j++){
+				values[j] = biases[j];
+			}
+
+			for(int i = 0; i < prevCount; i++){
+				double value = prevValues[i];
+
+				if(value == 0d){
+					continue;
+				}
+
+				int offset = i * count;
+
+				for(int j = 0; j < count; j++){
+					values[j] += value * weights[offset + j];
+				}
+			}
+
+			normalize(k, values);
+		}
+
+		for(int i = 0; i < this.outputNeurons.length; i++){
+			out[i] = values[this.outputNeurons[i]];
+		}
+	}
+
+	@Override
+	public void scoreBatch(Object[] columns, int count, double[][] out){
+		checkBatch(columns, count, out);
+
+		double[][] buffers = this.batchBuffers.get();
+
+		int lastCount = this.counts[this.counts.length - 1];
+
+		for(int begin = 0; begin < count; begin += Scorer.BLOCK_SIZE){
+			int end = Math.min(begin + Scorer.BLOCK_SIZE, count);
+			int rows = end - begin;
+
+			double[] values = buffers[0];
+
+			this.inputLayer.applyBatch(columns, begin, end, values);
+
+			normalize(0, values, rows);
+
+			for(int k = 1; k < this.counts.length; k++){
+				double[] prevValues = values;
+
+				values = buffers[k];
+
+				multiply(prevValues, rows, this.counts[k - 1], this.weights[k - 1], this.biases[k - 1], this.counts[k], values);
+
+				normalize(k, values, rows);
+			}
+
+			for(int i = 0; i < this.outputNeurons.length; i++){
+				double[] outColumn = out[i];
+
+				int outputNeuron = this.outputNeurons[i];
+
+				for(int r = 0; r < rows; r++){
+					outColumn[begin + r] = values[r * lastCount + outputNeuron];
+				}
+			}
+		}
+	}
+
+	private void normalize(int k, double[] values){
+		normalize(k, values, 1);
+	}
+
+	private void normalize(int k, double[] values, int rows){
+		int count = this.counts[k];
+
+		activate(this.activations[k], values, rows * count);
+
+		if(this.softmax[k]){
+
+			for(int r = 0; r < rows; r++){
+				softmax(values, r * count, count);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Computes <code>out = bias + in * weights</code>.
+	 * </p>
+	 *
+	 * @param in The input matrix, <code>rows</code> by <code>inCount</code>.
+	 * @param weights The weight matrix, <code>inCount</code> by <code>outCount</code>.
+	 * @param out The output matrix, <code>rows</code> by <code>outCount</code>.
+	 */
+	static
+	void multiply(double[] in, int rows, int inCount, float[] weights, float[] bias, int outCount, double[] out){
+
+		for(int r = 0; r < rows; r++){
+			int outOffset = r * outCount;
+
+			for(int j = 0; j < outCount; j++){
+				out[outOffset + j] = bias[j];
+			}
+		}
+
+		for(int jBegin = 0; jBegin < outCount; jBegin += NeuralNetworkScorer.TILE_COLUMNS){
+			int jEnd = Math.min(jBegin + NeuralNetworkScorer.TILE_COLUMNS, outCount);
+
+			for(int iBegin = 0; iBegin < inCount; iBegin += NeuralNetworkScorer.TILE_ROWS){
+				int iEnd = Math.min(iBegin + NeuralNetworkScorer.TILE_ROWS, inCount);
+
+				for(int r = 0; r < rows; r++){
+					int inOffset = r * inCount;
+					int outOffset = r * outCount;
+
+					for(int i = iBegin; i < iEnd; i++){
+						double value = in[inOffset + i];
+
+						if(value == 0d){
+							continue;
+						}
+
+						int weightOffset = i * outCount;
+
+						for(int j = jBegin; j < jEnd; j++){
+							out[outOffset + j] += value * weights[weightOffset + j];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * The dimensions of a weight matrix tile, which takes up 32 kB.
+	 * </p>
+	 */
+	private static final int TILE_ROWS = 64;
+
+	private static final int TILE_COLUMNS = 128;
+}
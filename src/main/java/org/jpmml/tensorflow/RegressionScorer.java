@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.List;
+
+/**
+ * <p>
+ * A compiled regression model, which has one {@link InputLayer} sum per regression table.
+ * </p>
+ */
+class RegressionScorer extends Scorer {
+
+	private InputLayer inputLayer = null;
+
+	private boolean softmax = false;
+
+	private int[] outputTables = null;
+
+	private ThreadLocal<double[]> buffer = null;
+
+	private ThreadLocal<double[]> batchBuffer = null;
+
+
+	/**
+	 * @param outputTables The indices of regression tables, in the order of outputs.
+	 */
+	RegressionScorer(List<String> inputNames, List<List<String>> categories, List<String> outputNames, InputLayer inputLayer, boolean softmax, int[] outputTables){
+		super(inputNames, categories, outputNames);
+
+		final
+		int count = inputLayer.getCount();
+
+		for(int outputTable : outputTables){
+
+			if(outputTable < 0 || outputTable >= count){
+				throw new IllegalArgumentException();
+			}
+		}
+
+		this.inputLayer = inputLayer;
+		this.softmax = softmax;
+		this.outputTables = outputTables;
+
+		this.buffer = new ThreadLocal<double[]>(){
+
+			@Override
+			protected double[] initialValue(){
+				return new double[count];
+			}
+		};
+
+		this.batchBuffer = new ThreadLocal<double[]>(){
+
+			@Override
+			protected double[] initialValue(){
+				return new double[Scorer.BLOCK_SIZE * count];
+			}
+		};
+	}
+
+	@Override
+	public void score(double[] in, double[] out){
+		double[] values = this.buffer.get();
+
+		this.inputLayer.apply(in, values);
+
+		if(this.softmax){
+			softmax(values, 0, this.inputLayer.getCount());
+		}
+
+		for(int i = 0; i < this.outputTables.length; i++){
+			out[i] = values[this.outputTables[i]];
+		}
+	}
+
+	@Override
+	public void scoreBatch(Object[] columns, int count, double[][] out){
+		checkBatch(columns, count, out);
+
+		double[] values = this.batchBuffer.get();
+
+		int tableCount = this.inputLayer.getCount();
+
+		for(int begin = 0; begin < count; begin += Scorer.BLOCK_SIZE){
+			int end = Math.min(begin + Scorer.BLOCK_SIZE, count);
+
+			this.inputLayer.applyBatch(columns, begin, end, values);
+
+			for(int r = 0; r < (end - begin); r++){
+				int offset = r * tableCount;
+
+				if(this.softmax){
+					softmax(values, offset, tableCount);
+				}
+
+				for(int i = 0; i < this.outputTables.length; i++){
+					out[i][begin + r] = values[offset + this.outputTables[i]];
+				}
+			}
+		}
+	}
+}
@@ -18,21 +18,22 @@
  */
 package org.jpmml.tensorflow;
 
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Deque;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
-import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+import org.tensorflow.DataType;
 import org.tensorflow.Graph;
 import org.tensorflow.Operation;
 import org.tensorflow.SavedModelBundle;
@@ -48,32 +49,94 @@ public class SavedModel implements AutoCloseable {
 
 	private SavedModelBundle bundle = null;
 
+	private CheckpointReader checkpointReader = null;
+
+	private GraphEvaluator graphEvaluator = null;
+
 	private MetaGraphDef metaGraphDef = null;
 
 	private Map<String, NodeDef> nodeMap = null;
 
+	private GraphIndex graphIndex = null;
+
+	private Map<String, NodeDef> tableInitializerMap = Collections.emptyMap();
+
 	private Map<String, Map<?, ?>> tableMap = new LinkedHashMap<>();
 
 
 	public SavedModel(SavedModelBundle bundle) throws InvalidProtocolBufferException {
+		this(bundle, false);
+	}
+
+	/**
+	 * @param pruneGraph <code>true</code> if the graph should be pruned to the subgraph that is reachable from the model head, <code>false</code> otherwise.
+	 *
+	 * @see MetaGraphDefUtil#parsePruned(com.google.protobuf.ByteString, java.util.Collection)
+	 */
+	public SavedModel(SavedModelBundle bundle, boolean pruneGraph) throws InvalidProtocolBufferException {
 		setBundle(bundle);
 
 		byte[] metaGraphDefBytes = bundle.metaGraphDef();
 
-		MetaGraphDef metaGraphDef = MetaGraphDef.parseFrom(metaGraphDefBytes);
+		MetaGraphDef metaGraphDef;
+
+		try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.PARSE_GRAPH, "MetaGraphDef")){
+			phase.addBytes(metaGraphDefBytes.length);
+
+			if(pruneGraph){
+				metaGraphDef = MetaGraphDefUtil.parsePruned(UnsafeByteOperations.unsafeWrap(metaGraphDefBytes), EstimatorFactory.getHeads());
+			} else
 
+			{
+				metaGraphDef = MetaGraphDef.parseFrom(metaGraphDefBytes);
+			}
+		} catch(InvalidProtocolBufferException ipbe){
+			throw ipbe;
+		} catch(IOException ioe){
+			throw new InvalidProtocolBufferException(ioe.getMessage());
+		}
+
+		init(metaGraphDef);
+	}
+
+	/**
+	 * <p>
+	 * Creates a SavedModel that does not depend on the native TensorFlow runtime.
+	 * Variable values are read from the checkpoint, and lookup table contents are computed by evaluating their initializer subgraphs in Java.
+	 * </p>
+	 *
+	 * @see SavedModelUtil#load(java.io.File, String)
+	 */
+	public SavedModel(MetaGraphDef metaGraphDef, CheckpointReader checkpointReader){
+		setCheckpointReader(checkpointReader);
+		setGraphEvaluator(new GraphEvaluator(this, checkpointReader));
+
+		init(metaGraphDef);
+	}
+
+	private void init(MetaGraphDef metaGraphDef){
 		setMetaGraphDef(metaGraphDef);
 
 		GraphDef graphDef = metaGraphDef.getGraphDef();
 
-		Map<String, NodeDef> nodeMap = new LinkedHashMap<>();
+		ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.BUILD_INDEX, "GraphDef");
 
-		List<NodeDef> nodeDefs = graphDef.getNodeList();
-		for(NodeDef nodeDef : nodeDefs){
-			nodeMap.put(nodeDef.getName(), nodeDef);
-		}
+		try {
+			Map<String, NodeDef> nodeMap = new LinkedHashMap<>();
+
+			List<NodeDef> nodeDefs = graphDef.getNodeList();
+			for(NodeDef nodeDef : nodeDefs){
+				nodeMap.put(nodeDef.getName(), nodeDef);
+			}
 
-		setNodeMap(nodeMap);
+			setNodeMap(nodeMap);
+
+			GraphIndex graphIndex = new GraphIndex(nodeMap.values());
+
+			setGraphIndex(graphIndex);
+		} finally {
+			phase.close();
+		}
 
 		initializeTables();
 	}
@@ -91,55 +154,236 @@ public class SavedModel implements AutoCloseable {
 			// Ignored
 		}
 
+		Map<String, NodeDef> tableInitializerMap = new LinkedHashMap<>();
+
 		for(String tableInitializerName : tableInitializerNames){
 			NodeDef tableInitializer = getNodeDef(tableInitializerName);
 
-			String name = tableInitializer.getInput(0);
+			tableInitializerMap.put(tableInitializer.getInput(0), tableInitializer);
+		}
+
+		setTableInitializerMap(tableInitializerMap);
+	}
+
+	@Override
+	public void close(){
+		SavedModelBundle bundle = getBundle();
+		if(bundle != null){
+			bundle.close();
+		}
+
+		CheckpointReader checkpointReader = getCheckpointReader();
+		if(checkpointReader != null){
+			checkpointReader.close();
+		}
+	}
 
-			List<?> keys;
-			List<?> values;
+	/**
+	 * <p>
+	 * Fetches the values of the specified nodes.
+	 * </p>
+	 *
+	 * @return Primitive arrays (or {@link String} arrays) in the order of names.
+	 *
+	 * @see TensorUtil#toArray(Tensor)
+	 */
+	public List<?> fetch(List<String> names){
+		return fetch(names, true);
+	}
 
-			try(Tensor tensor = run(tableInitializer.getInput(1))){
-				keys = TensorUtil.getValues(tensor);
-			} // End try
+	/**
+	 * @param decodeStrings <code>true</code> if string tensors should be decoded to {@link String} arrays,
+	 * <code>false</code> if they may be returned as {@link Utf8StringArray} objects.
+	 */
+	private List<?> fetch(List<String> names, boolean decodeStrings){
+		GraphEvaluator graphEvaluator = getGraphEvaluator();
 
-			try(Tensor tensor = run(tableInitializer.getInput(2))){
-				values = TensorUtil.getValues(tensor);
-			}
+		List<Object> result = new ArrayList<>(names.size());
 
-			Map<Object, Object> table = new LinkedHashMap<>();
+		try(ConversionPhase fetchPhase = ConversionMetrics.begin(ConversionPhase.Type.FETCH_VARIABLES, String.valueOf(names.size()))){
 
-			if(keys.size() != values.size()){
-				throw new IllegalArgumentException();
-			}
+			if(graphEvaluator != null){
 
-			for(int i = 0; i < keys.size(); i++){
-				table.put(keys.get(i), values.get(i));
+				for(String name : names){
+
+					try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.FETCH_VARIABLE, name)){
+						Object array = graphEvaluator.evaluate(name);
+
+						if(phase.isEnabled()){
+							long bytes = TensorUtil.getByteSize(array);
+
+							phase.addBytes(bytes);
+							fetchPhase.addBytes(bytes);
+						}
+
+						result.add(array);
+					}
+				}
+			} else
+
+			{
+				try(TensorList tensors = run(names)){
+
+					for(int i = 0; i < tensors.size(); i++){
+						Tensor tensor = tensors.get(i);
+
+						try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.FETCH_VARIABLE, names.get(i))){
+							long bytes = tensor.numBytes();
+
+							phase
+								.addBytes(bytes)
+								.addNativeBytes(bytes);
+
+							fetchPhase
+								.addBytes(bytes)
+								.addNativeBytes(bytes);
+
+							if(!decodeStrings && tensor.dataType() == DataType.STRING){
+								result.add(TensorUtil.toUtf8StringArray(tensor));
+							} else
+
+							{
+								result.add(TensorUtil.toArray(tensor));
+							}
+						}
+					}
+				}
 			}
+		}
 
-			putTable(name, table);
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Fetches the values of the specified nodes concurrently, one node per task.
+	 * </p>
+	 *
+	 * @param executorService The executor service, or <code>null</code>.
+	 *
+	 * @see #fetch(List)
+	 */
+	public List<?> fetch(List<String> names, ExecutorService executorService){
+
+		if(executorService == null || names.size() < 2){
+			return fetch(names);
 		}
+
+		List<Callable<Object>> tasks = new ArrayList<>(names.size());
+
+		for(final String name : names){
+			Callable<Object> task = new Callable<Object>(){
+
+				@Override
+				public Object call(){
+					return Iterables.getOnlyElement(fetch(Collections.singletonList(name)));
+				}
+			};
+
+			tasks.add(task);
+		}
+
+		return ExecutorUtil.invokeAll(executorService, tasks);
 	}
 
-	@Override
-	public void close(){
-		SavedModelBundle bundle = getBundle();
+	/**
+	 * <p>
+	 * Fetches the value of the specified node as a transposed matrix.
+	 * </p>
+	 *
+	 * The native TensorFlow runtime copies the tensor into a pooled direct buffer, which is then transposed into a newly allocated <code>float[rows * columns]</code> array.
+	 * The pooled buffer takes the place of the intermediate array of untransposed values, so that converting a variable allocates one array on the Java heap rather than two.
+	 *
+	 * @param rows The number of rows in the untransposed matrix.
+	 * @param columns The number of columns in the untransposed matrix.
+	 */
+	public FloatMatrix fetchTransposed(String name, int rows, int columns){
+		GraphEvaluator graphEvaluator = getGraphEvaluator();
+
+		if(graphEvaluator != null){
+			float[] values = (float[])Iterables.getOnlyElement(fetch(Collections.singletonList(name)));
+
+			return (TensorUtil.toFloatMatrix(values, rows, columns)).transpose();
+		}
+
+		TensorBufferPool bufferPool = TensorBufferPool.getDefault();
+
+		try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.FETCH_VARIABLE, name); TensorList tensors = run(Collections.singletonList(name))){
+			Tensor tensor = tensors.get(0);
+
+			long bytes = tensor.numBytes();
 
-		bundle.close();
+			phase
+				.addBytes(bytes)
+				.addNativeBytes(bytes);
+
+			ByteBuffer buffer = bufferPool.acquire(tensor.numBytes());
+
+			try {
+				return FloatMatrix.transpose(TensorUtil.toFloatBuffer(tensor, buffer), rows, columns);
+			} finally {
+				bufferPool.release(buffer);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Maps variables to the names of the tensors that they are saved as in the checkpoint.
+	 * </p>
+	 */
+	public List<String> getCheckpointKeys(List<String> names){
+		GraphEvaluator graphEvaluator = getGraphEvaluator();
+
+		// The restore subgraph consists of constants, which can be evaluated without a checkpoint reader
+		if(graphEvaluator == null){
+			graphEvaluator = new GraphEvaluator(this, null);
+		}
+
+		List<String> result = new ArrayList<>(names.size());
+
+		for(String name : names){
+			result.add(graphEvaluator.getCheckpointKey(getNodeDef(name)));
+		}
+
+		return result;
 	}
 
 	public Tensor run(String name){
+		List<Tensor> tensors = run(Collections.singletonList(name));
+
+		return Iterables.getOnlyElement(tensors);
+	}
+
+	/**
+	 * <p>
+	 * Fetches the values of the specified nodes in a single session run.
+	 * </p>
+	 *
+	 * @return Tensors in the order of names.
+	 */
+	public TensorList run(List<String> names){
 		Session session = getSession();
+		if(session == null){
+			throw new IllegalStateException("The native TensorFlow runtime is not available");
+		}
 
-		Runner runner = (session.runner()).fetch(name);
+		Runner runner = session.runner();
+
+		for(String name : names){
+			runner = runner.fetch(name);
+		}
 
 		List<? extends Tensor> tensors = runner.run();
 
-		return Iterables.getOnlyElement(tensors);
+		return new TensorList(tensors);
 	}
 
 	public Operation getOperation(String name){
 		Graph graph = getGraph();
+		if(graph == null){
+			throw new IllegalStateException("The native TensorFlow runtime is not available");
+		}
 
 		return graph.operation(name);
 	}
@@ -147,9 +391,7 @@ public class SavedModel implements AutoCloseable {
 	public NodeDef getNodeDef(String name){
 		Map<String, NodeDef> nodeMap = getNodeMap();
 
-		int colon = name.indexOf(':');
-
-		NodeDef nodeDef = nodeMap.get(colon > -1 ? name.substring(0, colon) : name);
+		NodeDef nodeDef = nodeMap.get(GraphIndex.toNodeName(name));
 		if(nodeDef == null){
 			throw new IllegalArgumentException(name);
 		}
@@ -177,69 +419,59 @@ public class SavedModel implements AutoCloseable {
 	}
 
 	public Iterable<NodeDef> getInputs(String name, String... ops){
-		NodeDef nodeDef = getNodeDef(name);
-
-		Collection<Trail> trails = new LinkedHashSet<>();
-
-		collectInputs(new ArrayDeque<>(), nodeDef, new HashSet<>(Arrays.asList(ops)), trails);
-
-		Function<Trail, NodeDef> function = new Function<Trail, NodeDef>(){
-
-			@Override
-			public NodeDef apply(Trail trail){
-				return trail.getNodeDef();
-			}
-		};
-
-		Collection<NodeDef> inputs = new LinkedHashSet<>();
-
-		Iterables.addAll(inputs, Iterables.transform(trails, function));
+		GraphIndex graphIndex = getGraphIndex();
 
-		return inputs;
+		return graphIndex.getInputs(name, ops);
 	}
 
-	private void collectInputs(Deque<NodeDef> parentNodeDefs, NodeDef nodeDef, Set<String> ops, Collection<Trail> trails){
-
-		if(ops.contains(nodeDef.getOp())){
-			trails.add(new Trail(parentNodeDefs, nodeDef));
-		}
+	/**
+	 * <p>
+	 * Lookup tables are initialized on first access, because a SavedModel may contain large vocabularies that the estimator never uses.
+	 * </p>
+	 *
+	 * The types of keys and values follow the data types of the lookup table (eg. int64 values are returned as {@link Long} objects).
+	 */
+	synchronized
+	public Map<?, ?> getTable(String name){
+		Map<?, ?> table = this.tableMap.get(name);
 
-		List<String> inputNames = nodeDef.getInputList();
-		for(String inputName : inputNames){
-			NodeDef inputNodeDef = getNodeDef(inputName);
+		if(table == null){
+			NodeDef tableInitializer = this.tableInitializerMap.get(name);
 
-			parentNodeDefs.addFirst(inputNodeDef);
+			if(tableInitializer == null){
+				throw new IllegalArgumentException(name);
+			}
 
-			collectInputs(parentNodeDefs, inputNodeDef, ops, trails);
+			List<?> arrays = fetch(Arrays.asList(tableInitializer.getInput(1), tableInitializer.getInput(2)), false);
 
-			parentNodeDefs.removeFirst();
-		}
-	}
+			ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.INITIALIZE_TABLE, name);
 
-	public Map<?, ?> getTable(String name){
-		Map<?, ?> table = this.tableMap.get(name);
+			try {
+				table = createTable(arrays.get(0), arrays.get(1));
+			} finally {
+				phase.close();
+			}
 
-		if(table == null){
-			throw new IllegalArgumentException(name);
+			putTable(name, table);
 		}
 
 		return table;
 	}
 
-	private void putTable(String name, Map<Object, Object> table){
+	private void putTable(String name, Map<?, ?> table){
 		this.tableMap.put(name, table);
 	}
 
 	public Session getSession(){
 		SavedModelBundle bundle = getBundle();
 
-		return bundle.session();
+		return (bundle != null ? bundle.session() : null);
 	}
 
 	public Graph getGraph(){
 		SavedModelBundle bundle = getBundle();
 
-		return bundle.graph();
+		return (bundle != null ? bundle.graph() : null);
 	}
 
 	public SavedModelBundle getBundle(){
@@ -250,6 +482,22 @@ public class SavedModel implements AutoCloseable {
 		this.bundle = bundle;
 	}
 
+	public CheckpointReader getCheckpointReader(){
+		return this.checkpointReader;
+	}
+
+	private void setCheckpointReader(CheckpointReader checkpointReader){
+		this.checkpointReader = checkpointReader;
+	}
+
+	private GraphEvaluator getGraphEvaluator(){
+		return this.graphEvaluator;
+	}
+
+	private void setGraphEvaluator(GraphEvaluator graphEvaluator){
+		this.graphEvaluator = graphEvaluator;
+	}
+
 	public MetaGraphDef getMetaGraphDef(){
 		return this.metaGraphDef;
 	}
@@ -265,4 +513,94 @@ public class SavedModel implements AutoCloseable {
 	private void setNodeMap(Map<String, NodeDef> nodeMap){
 		this.nodeMap = nodeMap;
 	}
-}
\ No newline at end of file
+
+	GraphIndex getGraphIndex(){
+		return this.graphIndex;
+	}
+
+	private void setGraphIndex(GraphIndex graphIndex){
+		this.graphIndex = graphIndex;
+	}
+
+	private void setTableInitializerMap(Map<String, NodeDef> tableInitializerMap){
+		this.tableInitializerMap = tableInitializerMap;
+	}
+
+	/**
+	 * <p>
+	 * String-to-integer and long-to-integer tables are stored in primitive form, if all values fit into the integer range.
+	 * All other tables are stored as boxed keys and values.
+	 * Either way, int64 values are presented as {@link Long} objects.
+	 * </p>
+	 */
+	static
+	Map<?, ?> createTable(Object keys, Object values){
+		int[] intValues = toIntArray(values);
+
+		if(intValues != null){
+			boolean longValues = (values instanceof long[]);
+
+			if(keys instanceof Utf8StringArray){
+				return new StringIntTable((Utf8StringArray)keys, intValues, longValues);
+			} else
+
+			if(keys instanceof String[]){
+				return new StringIntTable((String[])keys, intValues, longValues);
+			} else
+
+			if(keys instanceof long[]){
+				return new LongIntTable((long[])keys, intValues, longValues);
+			}
+		}
+
+		if(keys instanceof Utf8StringArray){
+			keys = ((Utf8StringArray)keys).toStringArray();
+		}
+
+		List<?> keyList = TensorUtil.asList(keys);
+		List<?> valueList = TensorUtil.asList(values);
+
+		if(keyList.size() != valueList.size()){
+			throw new IllegalArgumentException();
+		}
+
+		Map<Object, Object> table = new LinkedHashMap<>();
+
+		for(int i = 0; i < keyList.size(); i++){
+			table.put(keyList.get(i), valueList.get(i));
+		}
+
+		return table;
+	}
+
+	/**
+	 * @return An integer array, or <code>null</code> if the values are not integers, or some value does not fit into the integer range.
+	 */
+	static
+	private int[] toIntArray(Object values){
+
+		if(values instanceof int[]){
+			return (int[])values;
+		} else
+
+		if(values instanceof long[]){
+			long[] longValues = (long[])values;
+
+			int[] result = new int[longValues.length];
+
+			for(int i = 0; i < longValues.length; i++){
+				long value = longValues[i];
+
+				if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE){
+					return null;
+				}
+
+				result[i] = (int)value;
+			}
+
+			return result;
+		}
+
+		return null;
+	}
+}
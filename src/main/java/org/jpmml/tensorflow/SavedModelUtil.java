@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.TextFormat;
+import com.google.protobuf.UnsafeByteOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tensorflow.framework.MetaGraphDef;
+import org.tensorflow.framework.SavedModel;
+
+public class SavedModelUtil {
+
+	private SavedModelUtil(){
+	}
+
+	/**
+	 * <p>
+	 * Loads a SavedModel directory without the native TensorFlow runtime.
+	 * </p>
+	 */
+	static
+	public org.jpmml.tensorflow.SavedModel load(File dir, String tag) throws IOException {
+		return load(dir, tag, false);
+	}
+
+	/**
+	 * @param pruneGraph <code>true</code> if the graph should be pruned to the subgraph that is reachable from the model head, <code>false</code> otherwise.
+	 */
+	static
+	public org.jpmml.tensorflow.SavedModel load(File dir, String tag, boolean pruneGraph) throws IOException {
+		return load(dir, tag, pruneGraph, false);
+	}
+
+	/**
+	 * @param writeSidecar <code>true</code> if a text-format SavedModel file should be cached as a binary sidecar file, <code>false</code> otherwise.
+	 *
+	 * @see #readSavedModel(File, boolean)
+	 */
+	static
+	public org.jpmml.tensorflow.SavedModel load(File dir, String tag, boolean pruneGraph, boolean writeSidecar) throws IOException {
+		MetaGraphDef metaGraphDef = readMetaGraphDef(dir, tag, pruneGraph, writeSidecar);
+
+		CheckpointReader checkpointReader = new CheckpointReader(new File(dir, "variables/variables"));
+
+		return new org.jpmml.tensorflow.SavedModel(metaGraphDef, checkpointReader);
+	}
+
+	static
+	public MetaGraphDef readMetaGraphDef(File dir, String tag) throws IOException {
+		return readMetaGraphDef(dir, tag, false);
+	}
+
+	static
+	public MetaGraphDef readMetaGraphDef(File dir, String tag, boolean pruneGraph) throws IOException {
+		return readMetaGraphDef(dir, tag, pruneGraph, false);
+	}
+
+	/**
+	 * <p>
+	 * When pruning, a binary SavedModel file is scanned without parsing it as a whole,
+	 * so that the nodes of other MetaGraphs and the pruned nodes of the selected MetaGraph are never retained.
+	 * </p>
+	 */
+	static
+	public MetaGraphDef readMetaGraphDef(File dir, String tag, boolean pruneGraph, boolean writeSidecar) throws IOException {
+		File binaryFile = (pruneGraph ? getBinaryFile(dir) : null);
+
+		if(binaryFile != null){
+
+			try {
+				return scanMetaGraphDef(binaryFile, tag);
+			} catch(IOException ioe){
+
+				if(!isSidecarFile(binaryFile)){
+					throw ioe;
+				}
+
+				discardSidecarFile(binaryFile, ioe);
+			}
+		}
+
+		SavedModel savedModel = readSavedModel(dir, writeSidecar);
+
+		List<MetaGraphDef> metaGraphDefs = savedModel.getMetaGraphsList();
+		for(MetaGraphDef metaGraphDef : metaGraphDefs){
+			MetaGraphDef.MetaInfoDef metaInfoDef = metaGraphDef.getMetaInfoDef();
+
+			if((metaInfoDef.getTagsList()).contains(tag)){
+
+				if(pruneGraph){
+					return MetaGraphDefUtil.prune(metaGraphDef, EstimatorFactory.getHeads());
+				}
+
+				return metaGraphDef;
+			}
+		}
+
+		throw new IllegalArgumentException("MetaGraph with tag " + tag + " not found");
+	}
+
+	static
+	private MetaGraphDef scanMetaGraphDef(File binaryFile, String tag) throws IOException {
+
+		try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.PARSE_GRAPH, binaryFile.getName())){
+			byte[] bytes = Files.readAllBytes(binaryFile.toPath());
+
+			phase.addBytes(bytes.length);
+
+			CodedInputStream input = (UnsafeByteOperations.unsafeWrap(bytes)).newCodedInput();
+			input.enableAliasing(true);
+			input.setSizeLimit(Integer.MAX_VALUE);
+
+			while(true){
+				int fieldTag = input.readTag();
+
+				if(fieldTag == 0){
+					break;
+				} // End if
+
+				if(fieldTag == SavedModelUtil.SAVED_MODEL_META_GRAPHS){
+					ByteString metaGraphDefBytes = input.readBytes();
+
+					if((MetaGraphDefUtil.parseTags(metaGraphDefBytes)).contains(tag)){
+						return MetaGraphDefUtil.parsePruned(metaGraphDefBytes, EstimatorFactory.getHeads());
+					}
+				} else
+
+				{
+					input.skipField(fieldTag);
+				}
+			}
+		}
+
+		throw new IllegalArgumentException("MetaGraph with tag " + tag + " not found");
+	}
+
+	static
+	public SavedModel readSavedModel(File dir) throws IOException {
+		return readSavedModel(dir, false);
+	}
+
+	/**
+	 * <p>
+	 * Reads the binary <code>saved_model.pb</code> file, or the text-format <code>saved_model.pbtxt</code> file.
+	 * </p>
+	 *
+	 * Parsing the text format is slow.
+	 * If requested, then after the text-format file has been parsed, its content is written to a binary sidecar file,
+	 * which is named after the hash of the text-format file, and which takes its place on later reads.
+	 * A sidecar file that cannot be read is deleted, and the text-format file is parsed instead.
+	 *
+	 * @param writeSidecar <code>true</code> if the binary sidecar file should be written, <code>false</code> otherwise.
+	 * Sidecar files are written into the SavedModel directory, so this should be enabled only for trusted directories.
+	 */
+	static
+	public SavedModel readSavedModel(File dir, boolean writeSidecar) throws IOException {
+		File binaryFile = getBinaryFile(dir);
+
+		if(binaryFile != null){
+
+			try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.PARSE_GRAPH, binaryFile.getName()); InputStream is = new FileInputStream(binaryFile)){
+				phase.addBytes(binaryFile.length());
+
+				CodedInputStream input = CodedInputStream.newInstance(is);
+				// Older Protocol Buffers versions default to a size limit of 64 MB
+				input.setSizeLimit(Integer.MAX_VALUE);
+
+				return SavedModel.parseFrom(input);
+			} catch(IOException ioe){
+
+				if(!isSidecarFile(binaryFile)){
+					throw ioe;
+				}
+
+				discardSidecarFile(binaryFile, ioe);
+			}
+		}
+
+		File textFile = new File(dir, "saved_model.pbtxt");
+
+		if(textFile.isFile()){
+			SavedModel.Builder builder = SavedModel.newBuilder();
+
+			try(ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.PARSE_GRAPH, textFile.getName()); Reader reader = new InputStreamReader(new FileInputStream(textFile), StandardCharsets.UTF_8)){
+				phase.addBytes(textFile.length());
+
+				TextFormat.merge(reader, builder);
+			}
+
+			SavedModel savedModel = builder.build();
+
+			if(writeSidecar){
+				writeSidecarFile(textFile, savedModel);
+			}
+
+			return savedModel;
+		}
+
+		throw new NoSuchFileException((new File(dir, "saved_model.pb")).getPath());
+	}
+
+	/**
+	 * @return The <code>saved_model.pb</code> file, or the up-to-date binary sidecar file of the <code>saved_model.pbtxt</code> file, or <code>null</code>.
+	 */
+	static
+	private File getBinaryFile(File dir) throws IOException {
+		File binaryFile = new File(dir, "saved_model.pb");
+
+		if(binaryFile.isFile()){
+			return binaryFile;
+		}
+
+		File textFile = new File(dir, "saved_model.pbtxt");
+
+		if(textFile.isFile()){
+			File sidecarFile = getSidecarFile(textFile);
+
+			if(sidecarFile.isFile()){
+				return sidecarFile;
+			}
+		}
+
+		return null;
+	}
+
+	static
+	private boolean isSidecarFile(File binaryFile){
+		return !("saved_model.pb").equals(binaryFile.getName());
+	}
+
+	static
+	private void discardSidecarFile(File sidecarFile, IOException ioe){
+		logger.warn("Failed to read the binary sidecar file " + sidecarFile + ", parsing the text-format file instead", ioe);
+
+		sidecarFile.delete();
+	}
+
+	static
+	private File getSidecarFile(File textFile) throws IOException {
+		String hash;
+
+		try(HashingInputStream is = new HashingInputStream(Hashing.sha256(), new FileInputStream(textFile))){
+			ByteStreams.exhaust(is);
+
+			hash = (is.hash()).toString();
+		}
+
+		return new File(textFile.getParentFile(), "." + textFile.getName() + "-" + hash + ".pb");
+	}
+
+	static
+	private void writeSidecarFile(File textFile, SavedModel savedModel){
+		File dir = textFile.getParentFile();
+
+		try {
+			File sidecarFile = getSidecarFile(textFile);
+
+			File tempFile = File.createTempFile("." + textFile.getName() + "-", ".tmp", dir);
+
+			try {
+				try(OutputStream os = new FileOutputStream(tempFile)){
+					savedModel.writeTo(os);
+				}
+
+				Files.move(tempFile.toPath(), sidecarFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				tempFile.delete();
+			}
+
+			// Delete the sidecar files of earlier versions of the text-format file
+			File[] files = dir.listFiles();
+			if(files != null){
+				String prefix = "." + textFile.getName() + "-";
+
+				for(File file : files){
+					String name = file.getName();
+
+					if(name.startsWith(prefix) && name.endsWith(".pb") && !file.equals(sidecarFile)){
+						file.delete();
+					}
+				}
+			}
+		} catch(IOException ioe){
+			logger.warn("Failed to write the binary sidecar file of " + textFile, ioe);
+		}
+	}
+
+	private static final int SAVED_MODEL_META_GRAPHS = (SavedModel.META_GRAPHS_FIELD_NUMBER << 3) | 2;
+
+	private static final Logger logger = LoggerFactory.getLogger(SavedModelUtil.class);
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A model that has been compiled to primitive arrays, for low-latency scoring in the JVM.
+ * </p>
+ *
+ * The input array holds one element per input field, in the order of {@link #getInputNames()}.
+ * The values of continuous fields are passed as is.
+ * The values of categorical fields are passed as category indices (see {@link #encodeCategory(int, String)}).
+ * A negative or not-a-number category index stands for an unknown category, which activates no category at all, just like an unknown key of a TensorFlow lookup table.
+ *
+ * The output array holds one element per output, in the order of {@link #getOutputNames()}.
+ * Regression models have a single output, which is the predicted value.
+ * Classification models have one output per target category, which is its probability.
+ *
+ * Batches of records are scored column-wise, using {@link #scoreBatch(Object[], int, double[][])}.
+ *
+ * Scorers are thread-safe. A thread does not allocate memory for scoring after it has scored its first input.
+ *
+ * @see Estimator#encodeScorer()
+ * @see ScorerUtil#createScorer(org.dmg.pmml.PMML)
+ */
+abstract
+public class Scorer {
+
+	private List<String> inputNames = null;
+
+	private List<List<String>> categories = null;
+
+	private List<Map<String, Integer>> categoryIndices = null;
+
+	private List<String> outputNames = null;
+
+
+	Scorer(List<String> inputNames, List<List<String>> categories, List<String> outputNames){
+
+		if(inputNames.size() != categories.size()){
+			throw new IllegalArgumentException();
+		}
+
+		this.inputNames = Collections.unmodifiableList(inputNames);
+		this.categories = Collections.unmodifiableList(categories);
+		this.outputNames = Collections.unmodifiableList(outputNames);
+
+		this.categoryIndices = new ArrayList<>(categories.size());
+
+		for(List<String> values : categories){
+			Map<String, Integer> indices = null;
+
+			if(values != null){
+				indices = new HashMap<>(2 * values.size());
+
+				for(int i = 0; i < values.size(); i++){
+					indices.put(values.get(i), i);
+				}
+			}
+
+			this.categoryIndices.add(indices);
+		}
+	}
+
+	/**
+	 * @param in The input values, in the order of {@link #getInputNames()}.
+	 * @param out The output values, in the order of {@link #getOutputNames()}.
+	 */
+	abstract
+	public void score(double[] in, double[] out);
+
+	/**
+	 * <p>
+	 * Scores a batch of records, which is laid out in columns.
+	 * </p>
+	 *
+	 * @param columns One column per input field, in the order of {@link #getInputNames()}.
+	 * The columns of continuous fields are <code>double[]</code> or <code>float[]</code> arrays.
+	 * The columns of categorical fields are <code>int[]</code> arrays of category indices (see {@link #encodeCategories(int, String[])}).
+	 * @param count The number of records.
+	 * @param out One column per output, in the order of {@link #getOutputNames()}.
+	 */
+	abstract
+	public void scoreBatch(Object[] columns, int count, double[][] out);
+
+	/**
+	 * @return The index of the category, or <code>-1</code> if the category is unknown.
+	 *
+	 * @throws IllegalArgumentException If the input field is not categorical.
+	 */
+	public int encodeCategory(int input, String value){
+		Map<String, Integer> indices = this.categoryIndices.get(input);
+
+		if(indices == null){
+			throw new IllegalArgumentException("Input field " + this.inputNames.get(input) + " is not categorical");
+		}
+
+		Integer index = indices.get(value);
+		if(index == null){
+			return -1;
+		}
+
+		return index;
+	}
+
+	/**
+	 * <p>
+	 * Dictionary-encodes a column of categorical values.
+	 * </p>
+	 *
+	 * @see #encodeCategory(int, String)
+	 */
+	public int[] encodeCategories(int input, String[] values){
+		int[] result = new int[values.length];
+
+		for(int i = 0; i < values.length; i++){
+			result[i] = encodeCategory(input, values[i]);
+		}
+
+		return result;
+	}
+
+	public int getInputCount(){
+		return this.inputNames.size();
+	}
+
+	public List<String> getInputNames(){
+		return this.inputNames;
+	}
+
+	/**
+	 * @return The categories of the input field, or <code>null</code> if the input field is continuous.
+	 */
+	public List<String> getCategories(int input){
+		return this.categories.get(input);
+	}
+
+	public int getOutputCount(){
+		return this.outputNames.size();
+	}
+
+	public List<String> getOutputNames(){
+		return this.outputNames;
+	}
+
+	void checkBatch(Object[] columns, int count, double[][] out){
+
+		if(columns.length != getInputCount() || out.length != getOutputCount()){
+			throw new IllegalArgumentException();
+		}
+
+		for(int i = 0; i < columns.length; i++){
+			Object column = columns[i];
+
+			int length;
+
+			if(getCategories(i) != null){
+
+				if(!(column instanceof int[])){
+					throw new IllegalArgumentException("Input field " + this.inputNames.get(i) + " requires an int array");
+				}
+
+				length = ((int[])column).length;
+			} else
+
+			if(column instanceof double[]){
+				length = ((double[])column).length;
+			} else
+
+			if(column instanceof float[]){
+				length = ((float[])column).length;
+			} else
+
+			{
+				throw new IllegalArgumentException("Input field " + this.inputNames.get(i) + " requires a double or float array");
+			} // End if
+
+			if(length < count){
+				throw new IllegalArgumentException("Input field " + this.inputNames.get(i) + " has " + length + " values, expected " + count + " values");
+			}
+		}
+
+		for(double[] column : out){
+
+			if(column.length < count){
+				throw new IllegalArgumentException();
+			}
+		}
+	}
+
+	static
+	void activate(Activation activation, double[] values, int count){
+
+		switch(activation){
+			case IDENTITY:
+				break;
+			case RECTIFIER:
+				for(int i = 0; i < count; i++){
+					values[i] = Math.max(values[i], 0d);
+				}
+				break;
+			case LOGISTIC:
+				for(int i = 0; i < count; i++){
+					values[i] = 1d / (1d + Math.exp(-values[i]));
+				}
+				break;
+			default:
+				throw new IllegalArgumentException();
+		}
+	}
+
+	static
+	void softmax(double[] values, int offset, int count){
+		double max = Double.NEGATIVE_INFINITY;
+
+		for(int i = offset; i < offset + count; i++){
+			max = Math.max(max, values[i]);
+		}
+
+		double sum = 0d;
+
+		for(int i = offset; i < offset + count; i++){
+			double value = Math.exp(values[i] - max);
+
+			values[i] = value;
+
+			sum += value;
+		}
+
+		for(int i = offset; i < offset + count; i++){
+			values[i] = (values[i] / sum);
+		}
+	}
+
+	/**
+	 * <p>
+	 * The number of records that are scored together.
+	 * A block of activations of the widest layer should fit into the L2 cache.
+	 * </p>
+	 */
+	static final int BLOCK_SIZE = 64;
+
+	static
+	enum Activation {
+		IDENTITY,
+		RECTIFIER,
+		LOGISTIC,
+		;
+	}
+}
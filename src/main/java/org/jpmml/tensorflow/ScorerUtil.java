@@ -0,0 +1,585 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Iterables;
+import org.dmg.pmml.DataDictionary;
+import org.dmg.pmml.DataField;
+import org.dmg.pmml.DerivedField;
+import org.dmg.pmml.Expression;
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.FieldRef;
+import org.dmg.pmml.MiningField;
+import org.dmg.pmml.MiningSchema;
+import org.dmg.pmml.Model;
+import org.dmg.pmml.NormDiscrete;
+import org.dmg.pmml.OpType;
+import org.dmg.pmml.PMML;
+import org.dmg.pmml.TransformationDictionary;
+import org.dmg.pmml.Value;
+import org.dmg.pmml.neural_network.Connection;
+import org.dmg.pmml.neural_network.NeuralInput;
+import org.dmg.pmml.neural_network.NeuralLayer;
+import org.dmg.pmml.neural_network.NeuralNetwork;
+import org.dmg.pmml.neural_network.NeuralOutput;
+import org.dmg.pmml.neural_network.NeuralOutputs;
+import org.dmg.pmml.neural_network.Neuron;
+import org.dmg.pmml.regression.CategoricalPredictor;
+import org.dmg.pmml.regression.NumericPredictor;
+import org.dmg.pmml.regression.RegressionModel;
+import org.dmg.pmml.regression.RegressionTable;
+
+public class ScorerUtil {
+
+	private ScorerUtil(){
+	}
+
+	/**
+	 * <p>
+	 * Compiles the model of a PMML document, as encoded by an {@link Estimator}.
+	 * </p>
+	 *
+	 * Supported models are neural networks, whose inputs are continuous fields and binary indicators of categorical fields,
+	 * and regression models, whose predictors are continuous fields and categories of categorical fields.
+	 * Derived fields are supported only to the extent of type casts.
+	 *
+	 * @throws IllegalArgumentException If the model contains an unsupported element.
+	 */
+	static
+	public Scorer createScorer(PMML pmml){
+		Model model = Iterables.getOnlyElement(pmml.getModels());
+
+		Schema schema = new Schema(pmml, model);
+
+		if(model instanceof NeuralNetwork){
+			return createNeuralNetworkScorer(schema, (NeuralNetwork)model);
+		} else
+
+		if(model instanceof RegressionModel){
+			return createRegressionScorer(schema, (RegressionModel)model);
+		}
+
+		throw new IllegalArgumentException("Model type " + (model.getClass()).getName() + " is not supported");
+	}
+
+	static
+	private Scorer createNeuralNetworkScorer(Schema schema, NeuralNetwork neuralNetwork){
+		List<NeuralLayer> neuralLayers = neuralNetwork.getNeuralLayers();
+
+		int layerCount = neuralLayers.size();
+
+		Scorer.Activation[] activations = new Scorer.Activation[layerCount];
+		boolean[] softmax = new boolean[layerCount];
+
+		for(int k = 0; k < layerCount; k++){
+			NeuralLayer neuralLayer = neuralLayers.get(k);
+
+			if(neuralLayer instanceof DeferredNeuralLayer){
+				throw new IllegalArgumentException("Streaming neural layers are not supported");
+			}
+
+			NeuralNetwork.ActivationFunction activationFunction = neuralLayer.getActivationFunction();
+			if(activationFunction == null){
+				activationFunction = neuralNetwork.getActivationFunction();
+			}
+
+			NeuralNetwork.NormalizationMethod normalizationMethod = neuralLayer.getNormalizationMethod();
+			if(normalizationMethod == null){
+				normalizationMethod = neuralNetwork.getNormalizationMethod();
+			}
+
+			activations[k] = parseActivation(activationFunction);
+			softmax[k] = parseSoftmax(normalizationMethod);
+		}
+
+		Map<String, Term> inputTerms = new HashMap<>();
+
+		List<NeuralInput> neuralInputs = (neuralNetwork.getNeuralInputs()).getNeuralInputs();
+		for(NeuralInput neuralInput : neuralInputs){
+			DerivedField derivedField = neuralInput.getDerivedField();
+
+			inputTerms.put(neuralInput.getId(), schema.resolveTerm(derivedField.getExpression()));
+		}
+
+		InputLayer inputLayer;
+
+		{
+			List<Neuron> neurons = (neuralLayers.get(0)).getNeurons();
+
+			InputLayer.Builder builder = new InputLayer.Builder(neurons.size());
+
+			for(int j = 0; j < neurons.size(); j++){
+				Neuron neuron = neurons.get(j);
+
+				Double bias = neuron.getBias();
+				if(bias != null){
+					builder.setBias(j, bias);
+				}
+
+				List<Connection> connections = neuron.getConnections();
+				for(Connection connection : connections){
+					Term term = inputTerms.get(connection.getFrom());
+
+					if(term == null){
+						throw new IllegalArgumentException("Neuron " + neuron.getId() + " is connected to an unknown neural input " + connection.getFrom());
+					}
+
+					term.addTo(builder, j, connection.getWeight());
+				}
+			}
+
+			inputLayer = builder.build();
+		}
+
+		float[][] weights = new float[layerCount - 1][];
+		float[][] biases = new float[layerCount - 1][];
+
+		for(int k = 1; k < layerCount; k++){
+			Map<String, Integer> prevIndices = indexNeurons((neuralLayers.get(k - 1)).getNeurons());
+
+			List<Neuron> neurons = (neuralLayers.get(k)).getNeurons();
+
+			int prevCount = prevIndices.size();
+			int count = neurons.size();
+
+			float[] layerWeights = new float[prevCount * count];
+			float[] layerBiases = new float[count];
+
+			for(int j = 0; j < count; j++){
+				Neuron neuron = neurons.get(j);
+
+				Double bias = neuron.getBias();
+				if(bias != null){
+					layerBiases[j] = bias.floatValue();
+				}
+
+				List<Connection> connections = neuron.getConnections();
+				for(Connection connection : connections){
+					Integer i = prevIndices.get(connection.getFrom());
+
+					if(i == null){
+						throw new IllegalArgumentException("Neuron " + neuron.getId() + " is not connected to the previous layer");
+					}
+
+					layerWeights[i * count + j] += (float)connection.getWeight();
+				}
+			}
+
+			weights[k - 1] = layerWeights;
+			biases[k - 1] = layerBiases;
+		}
+
+		Map<String, Integer> lastIndices = indexNeurons((neuralLayers.get(layerCount - 1)).getNeurons());
+
+		int[] outputNeurons = new int[schema.getOutputNames().size()];
+
+		NeuralOutputs neuralOutputs = neuralNetwork.getNeuralOutputs();
+
+		List<NeuralOutput> outputs = neuralOutputs.getNeuralOutputs();
+		if(outputs.size() != outputNeurons.length){
+			throw new IllegalArgumentException();
+		}
+
+		for(NeuralOutput output : outputs){
+			Integer index = lastIndices.get(output.getOutputNeuron());
+
+			if(index == null){
+				throw new IllegalArgumentException("Neural output " + output.getOutputNeuron() + " is not in the last layer");
+			}
+
+			outputNeurons[schema.resolveOutput((output.getDerivedField()).getExpression())] = index;
+		}
+
+		return new NeuralNetworkScorer(schema.getInputNames(), schema.getCategories(), schema.getOutputNames(), inputLayer, weights, biases, activations, softmax, outputNeurons);
+	}
+
+	static
+	private Scorer createRegressionScorer(Schema schema, RegressionModel regressionModel){
+		List<RegressionTable> regressionTables = regressionModel.getRegressionTables();
+
+		InputLayer.Builder builder = new InputLayer.Builder(regressionTables.size());
+
+		int[] outputTables = new int[schema.getOutputNames().size()];
+
+		for(int j = 0; j < regressionTables.size(); j++){
+			RegressionTable regressionTable = regressionTables.get(j);
+
+			if(regressionTable.hasPredictorTerms()){
+				throw new IllegalArgumentException("Predictor terms are not supported");
+			}
+
+			builder.setBias(j, regressionTable.getIntercept());
+
+			List<NumericPredictor> numericPredictors = regressionTable.getNumericPredictors();
+			for(NumericPredictor numericPredictor : numericPredictors){
+				Integer exponent = numericPredictor.getExponent();
+
+				if(exponent != null && exponent != 1){
+					throw new IllegalArgumentException("Exponent " + exponent + " is not supported");
+				}
+
+				Term term = schema.resolveTerm(new FieldRef(numericPredictor.getName()));
+
+				term.addTo(builder, j, numericPredictor.getCoefficient());
+			}
+
+			List<CategoricalPredictor> categoricalPredictors = regressionTable.getCategoricalPredictors();
+			for(CategoricalPredictor categoricalPredictor : categoricalPredictors){
+				Term term = schema.resolveTerm(new NormDiscrete(categoricalPredictor.getName(), categoricalPredictor.getValue()));
+
+				term.addTo(builder, j, categoricalPredictor.getCoefficient());
+			}
+
+			String targetCategory = regressionTable.getTargetCategory();
+
+			if(targetCategory != null){
+				outputTables[schema.resolveOutput(new NormDiscrete(schema.getTargetName(), targetCategory))] = j;
+			} else
+
+			{
+				outputTables[schema.resolveOutput(new FieldRef(schema.getTargetName()))] = j;
+			}
+		}
+
+		boolean softmax;
+
+		RegressionModel.NormalizationMethod normalizationMethod = regressionModel.getNormalizationMethod();
+		switch(normalizationMethod){
+			case NONE:
+				softmax = false;
+				break;
+			case SOFTMAX:
+				softmax = true;
+				break;
+			default:
+				throw new IllegalArgumentException("Normalization method " + normalizationMethod + " is not supported");
+		}
+
+		if(softmax != schema.isClassification() || (!softmax && regressionTables.size() != 1)){
+			throw new IllegalArgumentException();
+		}
+
+		return new RegressionScorer(schema.getInputNames(), schema.getCategories(), schema.getOutputNames(), builder.build(), softmax, outputTables);
+	}
+
+	static
+	private Map<String, Integer> indexNeurons(List<Neuron> neurons){
+		Map<String, Integer> result = new HashMap<>(2 * neurons.size());
+
+		for(int i = 0; i < neurons.size(); i++){
+			Neuron neuron = neurons.get(i);
+
+			result.put(neuron.getId(), i);
+		}
+
+		return result;
+	}
+
+	static
+	private Scorer.Activation parseActivation(NeuralNetwork.ActivationFunction activationFunction){
+
+		switch(activationFunction){
+			case IDENTITY:
+				return Scorer.Activation.IDENTITY;
+			case RECTIFIER:
+				return Scorer.Activation.RECTIFIER;
+			case LOGISTIC:
+				return Scorer.Activation.LOGISTIC;
+			default:
+				throw new IllegalArgumentException("Activation function " + activationFunction + " is not supported");
+		}
+	}
+
+	static
+	private boolean parseSoftmax(NeuralNetwork.NormalizationMethod normalizationMethod){
+
+		switch(normalizationMethod){
+			case NONE:
+				return false;
+			case SOFTMAX:
+				return true;
+			default:
+				throw new IllegalArgumentException("Normalization method " + normalizationMethod + " is not supported");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Maps the fields of a PMML document to the inputs and outputs of a scorer.
+	 * </p>
+	 */
+	static
+	private class Schema {
+
+		private Map<FieldName, DataField> dataFields = new HashMap<>();
+
+		private Map<FieldName, DerivedField> derivedFields = new HashMap<>();
+
+		private List<String> inputNames = new ArrayList<>();
+
+		private List<List<String>> categories = new ArrayList<>();
+
+		private Map<FieldName, Integer> inputIndices = new HashMap<>();
+
+		private FieldName targetName = null;
+
+		private List<String> outputNames = new ArrayList<>();
+
+		private boolean classification = false;
+
+
+		private Schema(PMML pmml, Model model){
+			DataDictionary dataDictionary = pmml.getDataDictionary();
+
+			for(DataField dataField : dataDictionary.getDataFields()){
+				this.dataFields.put(dataField.getName(), dataField);
+			}
+
+			TransformationDictionary transformationDictionary = pmml.getTransformationDictionary();
+			if(transformationDictionary != null && transformationDictionary.hasDerivedFields()){
+
+				for(DerivedField derivedField : transformationDictionary.getDerivedFields()){
+					this.derivedFields.put(derivedField.getName(), derivedField);
+				}
+			}
+
+			if(model.getLocalTransformations() != null){
+				throw new IllegalArgumentException("Local transformations are not supported");
+			}
+
+			MiningSchema miningSchema = model.getMiningSchema();
+
+			for(MiningField miningField : miningSchema.getMiningFields()){
+				FieldName name = miningField.getName();
+
+				DataField dataField = this.dataFields.get(name);
+				if(dataField == null){
+					throw new IllegalArgumentException("Field " + name + " is not defined");
+				}
+
+				MiningField.UsageType usageType = miningField.getUsageType();
+				switch(usageType){
+					case ACTIVE:
+						{
+							this.inputIndices.put(name, this.inputNames.size());
+
+							this.inputNames.add(name.getValue());
+							this.categories.add(getCategories(dataField));
+						}
+						break;
+					case TARGET:
+					case PREDICTED:
+						{
+							if(this.targetName != null){
+								throw new IllegalArgumentException("Multiple target fields are not supported");
+							}
+
+							this.targetName = name;
+
+							List<String> categories = getCategories(dataField);
+
+							if(categories != null){
+								this.outputNames.addAll(categories);
+
+								this.classification = true;
+							} else
+
+							{
+								this.outputNames.add(name.getValue());
+							}
+						}
+						break;
+					default:
+						throw new IllegalArgumentException("Usage type " + usageType + " is not supported");
+				}
+			}
+
+			if(this.targetName == null){
+				throw new IllegalArgumentException("Target field is not defined");
+			}
+		}
+
+		/**
+		 * @param expression Either a <code>FieldRef</code> element (a continuous input) or a <code>NormDiscrete</code> element (a binary indicator of a categorical input).
+		 */
+		public Term resolveTerm(Expression expression){
+
+			if(expression instanceof FieldRef){
+				FieldRef fieldRef = (FieldRef)expression;
+
+				int input = resolveInput(fieldRef.getField());
+
+				if(this.categories.get(input) != null){
+					throw new IllegalArgumentException("Field " + fieldRef.getField() + " is not continuous");
+				}
+
+				return new Term(input, -1, -1);
+			} else
+
+			if(expression instanceof NormDiscrete){
+				NormDiscrete normDiscrete = (NormDiscrete)expression;
+
+				int input = resolveInput(normDiscrete.getField());
+
+				List<String> categories = this.categories.get(input);
+				if(categories == null){
+					throw new IllegalArgumentException("Field " + normDiscrete.getField() + " is not categorical");
+				}
+
+				int category = categories.indexOf(normDiscrete.getValue());
+				if(category < 0){
+					throw new IllegalArgumentException("Field " + normDiscrete.getField() + " does not have category " + normDiscrete.getValue());
+				}
+
+				return new Term(input, categories.size(), category);
+			}
+
+			throw new IllegalArgumentException("Expression " + (expression.getClass()).getSimpleName() + " is not supported");
+		}
+
+		/**
+		 * @return The index of the output.
+		 */
+		public int resolveOutput(Expression expression){
+
+			if(expression instanceof FieldRef){
+				FieldRef fieldRef = (FieldRef)expression;
+
+				if(this.classification || !(this.targetName).equals(fieldRef.getField())){
+					throw new IllegalArgumentException();
+				}
+
+				return 0;
+			} else
+
+			if(expression instanceof NormDiscrete){
+				NormDiscrete normDiscrete = (NormDiscrete)expression;
+
+				int index = this.outputNames.indexOf(normDiscrete.getValue());
+
+				if(!this.classification || !(this.targetName).equals(normDiscrete.getField()) || index < 0){
+					throw new IllegalArgumentException();
+				}
+
+				return index;
+			}
+
+			throw new IllegalArgumentException("Expression " + (expression.getClass()).getSimpleName() + " is not supported");
+		}
+
+		/**
+		 * <p>
+		 * Follows derived fields that are plain references to other fields, such as type casts.
+		 * </p>
+		 */
+		private int resolveInput(FieldName name){
+
+			for(int depth = 0; depth < 16; depth++){
+				Integer input = this.inputIndices.get(name);
+
+				if(input != null){
+					return input;
+				}
+
+				DerivedField derivedField = this.derivedFields.get(name);
+				if(derivedField == null || !(derivedField.getExpression() instanceof FieldRef)){
+					throw new IllegalArgumentException("Field " + name + " is not supported");
+				}
+
+				name = ((FieldRef)derivedField.getExpression()).getField();
+			}
+
+			throw new IllegalArgumentException("Field " + name + " is not supported");
+		}
+
+		public List<String> getInputNames(){
+			return this.inputNames;
+		}
+
+		public List<List<String>> getCategories(){
+			return this.categories;
+		}
+
+		public FieldName getTargetName(){
+			return this.targetName;
+		}
+
+		public List<String> getOutputNames(){
+			return this.outputNames;
+		}
+
+		public boolean isClassification(){
+			return this.classification;
+		}
+
+		static
+		private List<String> getCategories(DataField dataField){
+
+			if(!(OpType.CATEGORICAL).equals(dataField.getOpType())){
+				return null;
+			}
+
+			List<String> result = new ArrayList<>();
+
+			for(Value value : dataField.getValues()){
+
+				if(!(Value.Property.VALID).equals(value.getProperty())){
+					continue;
+				}
+
+				result.add(value.getValue());
+			}
+
+			return result;
+		}
+	}
+
+	static
+	private class Term {
+
+		private int input = -1;
+
+		private int categoryCount = -1;
+
+		private int category = -1;
+
+
+		private Term(int input, int categoryCount, int category){
+			this.input = input;
+			this.categoryCount = categoryCount;
+			this.category = category;
+		}
+
+		public void addTo(InputLayer.Builder builder, int j, double weight){
+
+			if(this.category < 0){
+				builder.addContinuousTerm(this.input, j, weight);
+			} else
+
+			{
+				builder.addCategoricalTerm(this.input, this.categoryCount, this.category, j, weight);
+			}
+		}
+	}
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.io.ByteStreams;
+import org.dmg.pmml.PMML;
+import org.dmg.pmml.Visitor;
+import org.dmg.pmml.VisitorAction;
+import org.dmg.pmml.neural_network.Connection;
+import org.dmg.pmml.neural_network.NeuralLayer;
+import org.dmg.pmml.neural_network.Neuron;
+import org.jpmml.model.visitors.AbstractVisitor;
+import org.jpmml.model.visitors.ArrayListOptimizer;
+import org.jpmml.model.visitors.DoubleInterner;
+import org.jpmml.model.visitors.LocatorNullifier;
+import org.jpmml.model.visitors.StringInterner;
+
+/**
+ * <p>
+ * A compact binary format for PMML class model objects, which loads several orders of magnitude faster than the PMML XML format.
+ * </p>
+ *
+ * The object graph is interned and written using Java serialization, except for the connections of neural network neurons.
+ * They are written after the object graph as primitive arrays, and are read back in bulk (optionally, from a memory-mapped file).
+ */
+public class SerializedPMMLUtil {
+
+	private SerializedPMMLUtil(){
+	}
+
+	/**
+	 * <p>
+	 * Interns the PMML class model object in place, and serializes it.
+	 * </p>
+	 */
+	static
+	public void serializePMML(PMML pmml, OutputStream os) throws IOException {
+		List<Visitor> visitors = Arrays.<Visitor>asList(new LocatorNullifier(), new StringInterner(), new DoubleInterner(), new ArrayListOptimizer());
+
+		for(Visitor visitor : visitors){
+			visitor.applyTo(pmml);
+		}
+
+		List<Neuron> neurons = collectNeurons(pmml);
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		try(ObjectOutputStream oos = new NeuronStrippingObjectOutputStream(buffer)){
+			oos.writeObject(pmml);
+		}
+
+		Map<String, Integer> entityIndices = new LinkedHashMap<>();
+
+		int size = 0;
+
+		for(Neuron neuron : neurons){
+			List<Connection> connections = neuron.getConnections();
+
+			for(Connection connection : connections){
+				String from = connection.getFrom();
+
+				if(!entityIndices.containsKey(from)){
+					entityIndices.put(from, entityIndices.size());
+				}
+			}
+
+			size += connections.size();
+		}
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024));
+
+		dos.writeInt(SerializedPMMLUtil.MAGIC);
+		dos.writeInt(SerializedPMMLUtil.VERSION);
+
+		dos.writeInt(buffer.size());
+		buffer.writeTo(dos);
+
+		dos.writeInt(entityIndices.size());
+
+		for(String entity : entityIndices.keySet()){
+			byte[] bytes = entity.getBytes(StandardCharsets.UTF_8);
+
+			dos.writeInt(bytes.length);
+			dos.write(bytes);
+		}
+
+		dos.writeInt(neurons.size());
+		dos.writeInt(size);
+
+		for(Neuron neuron : neurons){
+			dos.writeInt((neuron.getConnections()).size());
+		}
+
+		for(Neuron neuron : neurons){
+			List<Connection> connections = neuron.getConnections();
+
+			for(Connection connection : connections){
+				dos.writeInt(entityIndices.get(connection.getFrom()));
+			}
+		}
+
+		for(Neuron neuron : neurons){
+			List<Connection> connections = neuron.getConnections();
+
+			for(Connection connection : connections){
+				dos.writeDouble(connection.getWeight());
+			}
+		}
+
+		dos.flush();
+	}
+
+	/**
+	 * <p>
+	 * Deserializes a PMML class model object from a memory-mapped file.
+	 * </p>
+	 */
+	static
+	public PMML deserializePMML(File file) throws IOException {
+		ByteBuffer buffer;
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+
+			if(channel.size() > Integer.MAX_VALUE){
+				throw new IOException("File " + file + " is too big to be memory-mapped");
+			}
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		return deserializePMML(buffer);
+	}
+
+	static
+	public PMML deserializePMML(InputStream is) throws IOException {
+		byte[] bytes = ByteStreams.toByteArray(is);
+
+		return deserializePMML(ByteBuffer.wrap(bytes));
+	}
+
+	static
+	private PMML deserializePMML(ByteBuffer buffer) throws IOException {
+
+		try {
+			if(buffer.getInt() != SerializedPMMLUtil.MAGIC){
+				throw new IOException("Not a serialized PMML file");
+			} // End if
+
+			if(buffer.getInt() != SerializedPMMLUtil.VERSION){
+				throw new IOException("Unsupported serialized PMML file version");
+			}
+
+			int length = buffer.getInt();
+
+			ByteBuffer objectBuffer = buffer.slice();
+			objectBuffer.limit(length);
+
+			buffer.position(buffer.position() + length);
+
+			PMML pmml;
+
+			try(ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(objectBuffer))){
+				pmml = (PMML)ois.readObject();
+			} catch(ClassNotFoundException cnfe){
+				throw new IOException(cnfe);
+			}
+
+			String[] entities = new String[buffer.getInt()];
+
+			for(int i = 0; i < entities.length; i++){
+				byte[] bytes = new byte[buffer.getInt()];
+
+				buffer.get(bytes);
+
+				entities[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			List<Neuron> neurons = collectNeurons(pmml);
+
+			if(buffer.getInt() != neurons.size()){
+				throw new IOException("Serialized PMML file is corrupt");
+			}
+
+			int size = buffer.getInt();
+
+			int[] counts = new int[neurons.size()];
+			readInts(buffer, counts);
+
+			int[] froms = new int[size];
+			readInts(buffer, froms);
+
+			double[] weights = new double[size];
+			readDoubles(buffer, weights);
+
+			int offset = 0;
+
+			for(int i = 0; i < counts.length; i++){
+				Neuron neuron = neurons.get(i);
+
+				List<Connection> connections = neuron.getConnections();
+
+				if(connections instanceof ArrayList){
+					((ArrayList<Connection>)connections).ensureCapacity(counts[i]);
+				}
+
+				for(int j = 0; j < counts[i]; j++, offset++){
+					connections.add(new Connection(entities[froms[offset]], weights[offset]));
+				}
+			}
+
+			if(offset != size){
+				throw new IOException("Serialized PMML file is corrupt");
+			}
+
+			return pmml;
+		} catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e){
+			throw new IOException("Serialized PMML file is corrupt", e);
+		}
+	}
+
+	static
+	private void readInts(ByteBuffer buffer, int[] values){
+		IntBuffer intBuffer = buffer.asIntBuffer();
+
+		intBuffer.get(values);
+
+		buffer.position(buffer.position() + values.length * 4);
+	}
+
+	static
+	private void readDoubles(ByteBuffer buffer, double[] values){
+		DoubleBuffer doubleBuffer = buffer.asDoubleBuffer();
+
+		doubleBuffer.get(values);
+
+		buffer.position(buffer.position() + values.length * 8);
+	}
+
+	/**
+	 * <p>
+	 * Collects all neurons, in document order.
+	 * </p>
+	 */
+	static
+	private List<Neuron> collectNeurons(PMML pmml){
+		final
+		List<Neuron> result = new ArrayList<>();
+
+		AbstractVisitor visitor = new AbstractVisitor(){
+
+			@Override
+			public VisitorAction visit(NeuralLayer neuralLayer){
+
+				if(neuralLayer instanceof DeferredNeuralLayer){
+					throw new IllegalArgumentException("Streaming neural layers cannot be serialized");
+				}
+
+				return super.visit(neuralLayer);
+			}
+
+			@Override
+			public VisitorAction visit(Neuron neuron){
+				result.add(neuron);
+
+				return VisitorAction.SKIP;
+			}
+		};
+		visitor.applyTo(pmml);
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Writes neurons without their connections.
+	 * </p>
+	 */
+	static
+	private class NeuronStrippingObjectOutputStream extends ObjectOutputStream {
+
+		private NeuronStrippingObjectOutputStream(OutputStream os) throws IOException {
+			super(os);
+
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object object){
+
+			if(object instanceof Neuron){
+				Neuron neuron = (Neuron)object;
+
+				Neuron result = new Neuron()
+					.setId(neuron.getId())
+					.setBias(neuron.getBias())
+					.setWidth(neuron.getWidth())
+					.setAltitude(neuron.getAltitude());
+
+				if(neuron.hasExtensions()){
+					(result.getExtensions()).addAll(neuron.getExtensions());
+				}
+
+				return result;
+			}
+
+			return object;
+		}
+	}
+
+	static
+	private class ByteBufferInputStream extends InputStream {
+
+		private ByteBuffer buffer = null;
+
+
+		private ByteBufferInputStream(ByteBuffer buffer){
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read(){
+
+			if(!this.buffer.hasRemaining()){
+				return -1;
+			}
+
+			return (this.buffer.get() & 0xFF);
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length){
+
+			if(length == 0){
+				return 0;
+			} // End if
+
+			if(!this.buffer.hasRemaining()){
+				return -1;
+			}
+
+			length = Math.min(length, this.buffer.remaining());
+
+			this.buffer.get(bytes, offset, length);
+
+			return length;
+		}
+
+		@Override
+		public int available(){
+			return this.buffer.remaining();
+		}
+	}
+
+	private static final int MAGIC = 0x4A505352;
+
+	private static final int VERSION = 1;
+}
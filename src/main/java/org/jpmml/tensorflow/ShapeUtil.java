@@ -18,7 +18,11 @@
  */
 package org.jpmml.tensorflow;
 
+import java.util.List;
+
+import com.google.common.primitives.Ints;
 import org.tensorflow.Shape;
+import org.tensorflow.framework.TensorShapeProto;
 
 public class ShapeUtil {
 
@@ -41,4 +45,46 @@ public class ShapeUtil {
 
 		return result;
 	}
+
+	static
+	public long[] toArray(TensorShapeProto shapeProto){
+
+		if(shapeProto.getUnknownRank()){
+			return null;
+		}
+
+		List<TensorShapeProto.Dim> dims = shapeProto.getDimList();
+
+		long[] result = new long[dims.size()];
+
+		for(int i = 0; i < result.length; i++){
+			TensorShapeProto.Dim dim = dims.get(i);
+
+			result[i] = dim.getSize();
+		}
+
+		return result;
+	}
+
+	static
+	public int getNumElements(TensorShapeProto shapeProto){
+		long[] shape = toArray(shapeProto);
+
+		if(shape == null){
+			throw new IllegalArgumentException();
+		}
+
+		long result = 1;
+
+		for(long size : shape){
+
+			if(size < 0){
+				throw new IllegalArgumentException();
+			}
+
+			result *= size;
+		}
+
+		return Ints.checkedCast(result);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.OutputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.dmg.pmml.PMML;
+import org.jpmml.model.JAXBUtil;
+
+public class StreamingPMMLUtil {
+
+	private StreamingPMMLUtil(){
+	}
+
+	/**
+	 * <p>
+	 * Marshals a PMML class model object to a StAX stream.
+	 * The contents of {@link DeferredNeuralLayer} elements are generated on the fly,
+	 * so that at most one layer's worth of weights is held in memory at any time.
+	 * </p>
+	 *
+	 * The output stream is not buffered here, so the caller should pass a buffered one.
+	 * The StAX writer of the JDK writes every attribute value (ie. every weight) with separate calls.
+	 */
+	static
+	public void marshalPMML(PMML pmml, OutputStream os) throws JAXBException, XMLStreamException {
+		XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+		final
+		XMLStreamWriter writer = outputFactory.createXMLStreamWriter(os, "UTF-8");
+
+		Marshaller.Listener listener = new Marshaller.Listener(){
+
+			@Override
+			public void afterMarshal(Object source){
+
+				if(source instanceof DeferredNeuralLayer){
+					DeferredNeuralLayer neuralLayer = (DeferredNeuralLayer)source;
+
+					try {
+						neuralLayer.writeNeurons(writer);
+					} catch(XMLStreamException xse){
+						throw new RuntimeException(xse);
+					}
+				}
+			}
+		};
+
+		Marshaller marshaller = JAXBUtil.createMarshaller();
+		marshaller.setListener(listener);
+
+		try {
+			writer.writeStartDocument("UTF-8", "1.0");
+
+			marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+			marshaller.marshal(pmml, writer);
+
+			writer.writeEndDocument();
+			writer.flush();
+		} finally {
+			writer.close();
+		}
+	}
+}
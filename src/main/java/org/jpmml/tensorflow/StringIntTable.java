@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>
+ * A read-only map from strings to integers.
+ * </p>
+ *
+ * Values are stored as <code>int</code>s, but are presented as {@link Integer} or {@link Long} objects, depending on the data type of the lookup table.
+ *
+ * Keys are stored as a {@link Utf8StringArray}, and are looked up using an open addressing hash table.
+ * Entries are iterated in insertion order.
+ */
+public class StringIntTable extends AbstractMap<String, Number> {
+
+	private Utf8StringArray keys = null;
+
+	private int[] values = null;
+
+	private int[] slots = null;
+
+	private boolean longValues = false;
+
+
+	/**
+	 * <p>
+	 * If there are duplicate keys, then the last value wins, but the entry keeps the position of the first key.
+	 * </p>
+	 *
+	 * @param longValues <code>true</code> if values should be presented as {@link Long} objects, <code>false</code> if as {@link Integer} objects.
+	 */
+	public StringIntTable(String[] keys, int[] values, boolean longValues){
+		this(Utf8StringArray.valueOf(keys), values, longValues);
+	}
+
+	/**
+	 * <p>
+	 * If there are duplicate keys, then the last value wins, but the entry keeps the position of the first key.
+	 * </p>
+	 *
+	 * @param longValues <code>true</code> if values should be presented as {@link Long} objects, <code>false</code> if as {@link Integer} objects.
+	 */
+	public StringIntTable(Utf8StringArray keys, int[] values, boolean longValues){
+		int size = keys.size();
+
+		if(size != values.length){
+			throw new IllegalArgumentException();
+		}
+
+		values = values.clone();
+
+		int[] slots = new int[LongIntTable.capacity(size)];
+
+		int mask = slots.length - 1;
+
+		boolean[] duplicates = null;
+
+		for(int i = 0; i < size; i++){
+
+			for(int slot = keys.hash(i) & mask; ; slot = (slot + 1) & mask){
+				int index = slots[slot] - 1;
+
+				if(index < 0){
+					slots[slot] = i + 1;
+
+					break;
+				} // End if
+
+				if(keys.equals(index, i)){
+					values[index] = values[i];
+
+					if(duplicates == null){
+						duplicates = new boolean[size];
+					}
+
+					duplicates[i] = true;
+
+					break;
+				}
+			}
+		}
+
+		if(duplicates != null){
+			int[] uniqueIndices = new int[size];
+			int[] remappedIndices = new int[size];
+
+			int count = 0;
+
+			for(int i = 0; i < size; i++){
+
+				if(!duplicates[i]){
+					uniqueIndices[count] = i;
+					remappedIndices[i] = count;
+
+					count++;
+				}
+			}
+
+			uniqueIndices = Arrays.copyOf(uniqueIndices, count);
+
+			int[] uniqueValues = new int[count];
+
+			for(int i = 0; i < count; i++){
+				uniqueValues[i] = values[uniqueIndices[i]];
+			}
+
+			for(int slot = 0; slot < slots.length; slot++){
+
+				if(slots[slot] > 0){
+					slots[slot] = remappedIndices[slots[slot] - 1] + 1;
+				}
+			}
+
+			keys = keys.select(uniqueIndices);
+			values = uniqueValues;
+		}
+
+		this.keys = keys;
+		this.values = values;
+		this.slots = slots;
+		this.longValues = longValues;
+	}
+
+	@Override
+	public int size(){
+		return this.values.length;
+	}
+
+	@Override
+	public boolean containsKey(Object key){
+		return (key instanceof String) && (find(((String)key).getBytes(StandardCharsets.UTF_8)) > -1);
+	}
+
+	@Override
+	public Number get(Object key){
+
+		if(!(key instanceof String)){
+			return null;
+		}
+
+		int index = find(((String)key).getBytes(StandardCharsets.UTF_8));
+		if(index < 0){
+			return null;
+		}
+
+		return getValue(index);
+	}
+
+	@Override
+	public Set<Map.Entry<String, Number>> entrySet(){
+		return new AbstractSet<Map.Entry<String, Number>>(){
+
+			@Override
+			public int size(){
+				return StringIntTable.this.size();
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, Number>> iterator(){
+				return new Iterator<Map.Entry<String, Number>>(){
+
+					private int index = 0;
+
+
+					@Override
+					public boolean hasNext(){
+						return this.index < StringIntTable.this.size();
+					}
+
+					@Override
+					public Map.Entry<String, Number> next(){
+
+						if(!hasNext()){
+							throw new NoSuchElementException();
+						}
+
+						int index = this.index++;
+
+						return new AbstractMap.SimpleImmutableEntry<>(StringIntTable.this.keys.get(index), getValue(index));
+					}
+
+					@Override
+					public void remove(){
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	private Number getValue(int index){
+		int value = this.values[index];
+
+		if(this.longValues){
+			return (long)value;
+		}
+
+		return value;
+	}
+
+	private int find(byte[] key){
+		Utf8StringArray keys = this.keys;
+
+		int mask = this.slots.length - 1;
+
+		for(int slot = Utf8StringArray.hash(key, 0, key.length) & mask; ; slot = (slot + 1) & mask){
+			int index = this.slots[slot] - 1;
+
+			if(index < 0){
+				return -1;
+			} // End if
+
+			if(keys.equals(index, key)){
+				return index;
+			}
+		}
+	}
+}
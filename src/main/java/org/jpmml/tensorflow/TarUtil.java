@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * <p>
+ * A minimal reader for POSIX (ustar) tar archives, optionally gzip-compressed.
+ * Only regular files and directories are extracted. All other entry types are skipped.
+ * </p>
+ */
+public class TarUtil {
+
+	private TarUtil(){
+	}
+
+	static
+	public void extract(InputStream is, File dir) throws IOException {
+		extract(is, dir, Long.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxSize The maximum cumulative size of entries, in bytes. For gzip-compressed archives, this is the uncompressed size.
+	 * @param maxEntries The maximum number of entries.
+	 *
+	 * @throws LimitExceededException If either limit is exceeded. Entries that were extracted up to that point are not deleted.
+	 */
+	static
+	public void extract(InputStream is, File dir, long maxSize, int maxEntries) throws IOException {
+		is = new BufferedInputStream(is);
+
+		is.mark(2);
+
+		int magic = (is.read() & 0xFF) | ((is.read() & 0xFF) << 8);
+
+		is.reset();
+
+		if(magic == GZIPInputStream.GZIP_MAGIC){
+			is = new GZIPInputStream(is);
+		}
+
+		Path root = (dir.getCanonicalFile()).toPath();
+
+		byte[] header = new byte[BLOCK_SIZE];
+
+		String longName = null;
+
+		long size = 0;
+		int entries = 0;
+
+		while(true){
+
+			if(!readBlock(is, header)){
+				throw new EOFException();
+			} // End if
+
+			if(isZero(header)){
+				break;
+			}
+
+			String name = readString(header, 0, 100);
+			long entrySize = readOctal(header, 124, 12);
+			byte type = header[156];
+
+			// Checked before reading the content of the entry
+			size += entrySize;
+			entries++;
+
+			if(size > maxSize){
+				throw new LimitExceededException("Tar archive exceeds the size limit of " + maxSize + " bytes");
+			} // End if
+
+			if(entries > maxEntries){
+				throw new LimitExceededException("Tar archive exceeds the limit of " + maxEntries + " entries");
+			}
+
+			String prefix = readString(header, 345, 155);
+			if(!prefix.isEmpty()){
+				name = prefix + "/" + name;
+			} // End if
+
+			if(longName != null){
+				name = longName;
+
+				longName = null;
+			}
+
+			switch(type){
+				// GNU long name
+				case 'L':
+					{
+						byte[] bytes = readContent(is, entrySize);
+
+						longName = trimNul(new String(bytes, StandardCharsets.UTF_8));
+					}
+					break;
+				// PAX extended header
+				case 'x':
+					{
+						byte[] bytes = readContent(is, entrySize);
+
+						longName = parsePaxPath(new String(bytes, StandardCharsets.UTF_8));
+					}
+					break;
+				case 0:
+				case '0':
+				case '5':
+					{
+						Path path = root.resolve(name).normalize();
+
+						if(!path.startsWith(root)){
+							throw new IOException("Tar entry " + name + " is outside of the target directory");
+						}
+
+						File file = path.toFile();
+
+						if(type == '5' || name.endsWith("/")){
+							file.mkdirs();
+
+							skipContent(is, entrySize);
+						} else
+
+						{
+							(file.getParentFile()).mkdirs();
+
+							try(OutputStream os = new FileOutputStream(file)){
+								ByteStreams.copy(ByteStreams.limit(is, entrySize), os);
+							}
+
+							ByteStreams.skipFully(is, padding(entrySize));
+						}
+					}
+					break;
+				default:
+					skipContent(is, entrySize);
+					break;
+			}
+		}
+	}
+
+	static
+	private byte[] readContent(InputStream is, long size) throws IOException {
+
+		if(size > Integer.MAX_VALUE){
+			throw new IOException();
+		}
+
+		byte[] result = new byte[(int)size];
+
+		ByteStreams.readFully(is, result);
+
+		ByteStreams.skipFully(is, padding(size));
+
+		return result;
+	}
+
+	static
+	private void skipContent(InputStream is, long size) throws IOException {
+		ByteStreams.skipFully(is, size + padding(size));
+	}
+
+	static
+	private long padding(long size){
+		long remainder = (size % BLOCK_SIZE);
+
+		return (remainder != 0 ? BLOCK_SIZE - remainder : 0);
+	}
+
+	static
+	private boolean readBlock(InputStream is, byte[] block) throws IOException {
+		int count = ByteStreams.read(is, block, 0, block.length);
+
+		return (count == block.length);
+	}
+
+	static
+	private boolean isZero(byte[] block){
+
+		for(byte b : block){
+
+			if(b != 0){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	static
+	private String readString(byte[] block, int offset, int length){
+		int end = offset;
+
+		while(end < offset + length && block[end] != 0){
+			end++;
+		}
+
+		return new String(block, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	static
+	private long readOctal(byte[] block, int offset, int length){
+		String value = readString(block, offset, length).trim();
+
+		if(value.isEmpty()){
+			return 0;
+		}
+
+		return Long.parseLong(value, 8);
+	}
+
+	static
+	private String trimNul(String string){
+		int index = string.indexOf('\0');
+
+		if(index > -1){
+			return string.substring(0, index);
+		}
+
+		return string;
+	}
+
+	/**
+	 * <p>
+	 * PAX records are formatted as "&lt;length&gt; &lt;key&gt;=&lt;value&gt;\n".
+	 * </p>
+	 *
+	 * @return The value of the "path" record, or <code>null</code>.
+	 */
+	static
+	private String parsePaxPath(String records){
+		String[] lines = records.split("\n");
+
+		for(String line : lines){
+			int space = line.indexOf(' ');
+			int equals = line.indexOf('=');
+
+			if(space < 0 || equals < space){
+				continue;
+			}
+
+			String key = line.substring(space + 1, equals);
+			if(("path").equals(key)){
+				return line.substring(equals + 1);
+			}
+		}
+
+		return null;
+	}
+
+	static
+	public class LimitExceededException extends IOException {
+
+		public LimitExceededException(String message){
+			super(message);
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static final int BLOCK_SIZE = 512;
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A pool of direct byte buffers, which are used as scratch space when copying tensor contents out of the native TensorFlow runtime.
+ * </p>
+ *
+ * The total capacity of idle buffers is bounded.
+ * Buffers that would exceed the bound are not returned to the pool, and are left to the garbage collector.
+ */
+public class TensorBufferPool {
+
+	private long maxIdleBytes = 0L;
+
+	private List<ByteBuffer> idleBuffers = new ArrayList<>();
+
+	private long idleBytes = 0L;
+
+
+	public TensorBufferPool(long maxIdleBytes){
+
+		if(maxIdleBytes < 0L){
+			throw new IllegalArgumentException();
+		}
+
+		this.maxIdleBytes = maxIdleBytes;
+	}
+
+	/**
+	 * @return A cleared direct buffer in the native byte order, whose capacity is at least the requested capacity.
+	 */
+	synchronized
+	public ByteBuffer acquire(int capacity){
+		ByteBuffer result = null;
+
+		for(ByteBuffer idleBuffer : this.idleBuffers){
+
+			if(idleBuffer.capacity() >= capacity && (result == null || idleBuffer.capacity() < result.capacity())){
+				result = idleBuffer;
+			}
+		}
+
+		if(result != null){
+			this.idleBuffers.remove(result);
+
+			this.idleBytes -= result.capacity();
+
+			result.clear();
+
+			return result;
+		}
+
+		return ByteBuffer.allocateDirect(roundUp(capacity))
+			.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * <p>
+	 * Returns a buffer to the pool.
+	 * The buffer, and any views of it, must not be used afterwards.
+	 * </p>
+	 */
+	synchronized
+	public void release(ByteBuffer buffer){
+
+		if(!buffer.isDirect()){
+			throw new IllegalArgumentException();
+		} // End if
+
+		if(buffer.capacity() > this.maxIdleBytes){
+			return;
+		}
+
+		// Make room by dropping the smallest idle buffers, which are the least likely to be reused for large tensors
+		while(this.idleBytes + buffer.capacity() > this.maxIdleBytes){
+			ByteBuffer smallestBuffer = null;
+
+			for(ByteBuffer idleBuffer : this.idleBuffers){
+
+				if(smallestBuffer == null || idleBuffer.capacity() < smallestBuffer.capacity()){
+					smallestBuffer = idleBuffer;
+				}
+			}
+
+			if(smallestBuffer.capacity() > buffer.capacity()){
+				return;
+			}
+
+			this.idleBuffers.remove(smallestBuffer);
+
+			this.idleBytes -= smallestBuffer.capacity();
+		}
+
+		this.idleBuffers.add(buffer);
+
+		this.idleBytes += buffer.capacity();
+	}
+
+	synchronized
+	public void clear(){
+		this.idleBuffers.clear();
+
+		this.idleBytes = 0L;
+	}
+
+	public long getMaxIdleBytes(){
+		return this.maxIdleBytes;
+	}
+
+	synchronized
+	public long getIdleBytes(){
+		return this.idleBytes;
+	}
+
+	/**
+	 * <p>
+	 * Rounds the capacity up to a multiple of 1 MB, so that tensors of slightly different sizes can share buffers.
+	 * </p>
+	 */
+	static
+	private int roundUp(int capacity){
+		long result = ((capacity + (long)(ROUNDING - 1)) / ROUNDING) * ROUNDING;
+
+		return (int)Math.min(result, Integer.MAX_VALUE);
+	}
+
+	static
+	public TensorBufferPool getDefault(){
+		return TensorBufferPool.DEFAULT;
+	}
+
+	private static final int ROUNDING = 1024 * 1024;
+
+	private static final TensorBufferPool DEFAULT = new TensorBufferPool(256L * 1024L * 1024L);
+}
@@ -26,8 +26,6 @@ import org.dmg.pmml.FieldName;
 import org.jpmml.converter.BinaryFeature;
 import org.jpmml.converter.ContinuousFeature;
 import org.jpmml.converter.ModelEncoder;
-import org.tensorflow.Operation;
-import org.tensorflow.Output;
 import org.tensorflow.framework.NodeDef;
 
 public class TensorFlowEncoder extends ModelEncoder {
@@ -42,11 +40,9 @@ public class TensorFlowEncoder extends ModelEncoder {
 
 		DataField dataField = getDataField(name);
 		if(dataField == null){
-			Operation operation = savedModel.getOperation(placeholder.getName());
+			org.tensorflow.framework.DataType dataType = TypeUtil.getOutputType(placeholder);
 
-			Output output = operation.output(0);
-
-			dataField = createDataField(name, TypeUtil.getOpType(output), TypeUtil.getDataType(output));
+			dataField = createDataField(name, TypeUtil.getOpType(dataType), TypeUtil.getDataType(dataType));
 		}
 
 		return dataField;
@@ -77,11 +73,9 @@ public class TensorFlowEncoder extends ModelEncoder {
 		ContinuousFeature result = new ContinuousFeature(this, dataField);
 
 		if(cast != null){
-			Operation operation = savedModel.getOperation(cast.getName());
-
-			Output output = operation.output(0);
+			org.tensorflow.framework.DataType dataType = TypeUtil.getOutputType(cast);
 
-			result = result.toContinuousFeature(TypeUtil.getDataType(output));
+			result = result.toContinuousFeature(TypeUtil.getDataType(dataType));
 		}
 
 		return result;
@@ -19,19 +19,30 @@
 package org.jpmml.tensorflow;
 
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Collection;
 
-import org.tensorflow.framework.NodeDef;
+import org.tensorflow.Tensor;
 
-class Trail extends ArrayList<NodeDef> {
-
-	Trail(Deque<NodeDef> parentNodeDefs, NodeDef nodeDef){
-		super(parentNodeDefs);
+/**
+ * <p>
+ * A list of tensors that are released together.
+ * </p>
+ *
+ * Tensors are native resources, so a tensor list must not be serialized.
+ */
+public class TensorList extends ArrayList<Tensor> implements AutoCloseable {
 
-		add(nodeDef);
+	public TensorList(Collection<? extends Tensor> tensors){
+		super(tensors);
 	}
 
-	public NodeDef getNodeDef(){
-		return get(size() - 1);
+	@Override
+	public void close(){
+
+		for(Tensor tensor : this){
+			tensor.close();
+		}
 	}
-}
\ No newline at end of file
+
+	private static final long serialVersionUID = 1L;
+}
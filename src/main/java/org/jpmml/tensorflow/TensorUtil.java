@@ -18,11 +18,14 @@
  */
 package org.jpmml.tensorflow;
 
+import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
@@ -31,8 +34,10 @@ import com.google.common.primitives.Doubles;
 import com.google.common.primitives.Floats;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
+import com.google.protobuf.ByteString;
 import org.tensorflow.DataType;
 import org.tensorflow.Tensor;
+import org.tensorflow.framework.TensorProto;
 
 public class TensorUtil {
 
@@ -41,26 +46,327 @@ public class TensorUtil {
 
 	static
 	public List<?> getValues(Tensor tensor){
+		return asList(toArray(tensor));
+	}
+
+	/**
+	 * @return A primitive array (for numeric and boolean tensors) or a {@link String} array (for string tensors).
+	 */
+	static
+	public Object toArray(Tensor tensor){
 		DataType dataType = tensor.dataType();
 
 		switch(dataType){
 			case FLOAT:
-				return Floats.asList(TensorUtil.toFloatArray(tensor));
+				return TensorUtil.toFloatArray(tensor);
 			case DOUBLE:
-				return Doubles.asList(TensorUtil.toDoubleArray(tensor));
+				return TensorUtil.toDoubleArray(tensor);
 			case INT32:
-				return Ints.asList(TensorUtil.toIntArray(tensor));
+				return TensorUtil.toIntArray(tensor);
 			case INT64:
-				return Longs.asList(TensorUtil.toLongArray(tensor));
+				return TensorUtil.toLongArray(tensor);
 			case STRING:
-				return Arrays.asList(TensorUtil.toStringArray(tensor));
+				return TensorUtil.toStringArray(tensor);
 			case BOOL:
-				return Booleans.asList(TensorUtil.toBooleanArray(tensor));
+				return TensorUtil.toBooleanArray(tensor);
 			default:
 				throw new IllegalArgumentException();
 		}
 	}
 
+	static
+	public Object toArray(TensorProto tensorProto){
+		org.tensorflow.framework.DataType dataType = tensorProto.getDtype();
+
+		int numElements = ShapeUtil.getNumElements(tensorProto.getTensorShape());
+
+		ByteString content = tensorProto.getTensorContent();
+		if(!content.isEmpty()){
+			ByteBuffer byteBuffer = content.asReadOnlyByteBuffer()
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+			return toArray(dataType, numElements, byteBuffer);
+		}
+
+		Object result;
+
+		int count;
+
+		switch(dataType){
+			case DT_FLOAT:
+				result = Floats.toArray(tensorProto.getFloatValList());
+				count = tensorProto.getFloatValCount();
+				break;
+			case DT_DOUBLE:
+				result = Doubles.toArray(tensorProto.getDoubleValList());
+				count = tensorProto.getDoubleValCount();
+				break;
+			case DT_INT32:
+				result = Ints.toArray(tensorProto.getIntValList());
+				count = tensorProto.getIntValCount();
+				break;
+			case DT_INT64:
+				result = Longs.toArray(tensorProto.getInt64ValList());
+				count = tensorProto.getInt64ValCount();
+				break;
+			case DT_STRING:
+				{
+					List<ByteString> values = tensorProto.getStringValList();
+
+					String[] stringValues = new String[values.size()];
+
+					for(int i = 0; i < stringValues.length; i++){
+						ByteString value = values.get(i);
+
+						stringValues[i] = value.toStringUtf8();
+					}
+
+					result = stringValues;
+				}
+				count = tensorProto.getStringValCount();
+				break;
+			case DT_BOOL:
+				result = Booleans.toArray(tensorProto.getBoolValList());
+				count = tensorProto.getBoolValCount();
+				break;
+			default:
+				throw new IllegalArgumentException();
+		}
+
+		// The last value is repeated to fill the shape
+		if(count > 0 && count < numElements){
+			Object expandedResult = Array.newInstance((result.getClass()).getComponentType(), numElements);
+
+			System.arraycopy(result, 0, expandedResult, 0, count);
+
+			for(int i = count; i < numElements; i++){
+				Array.set(expandedResult, i, Array.get(result, count - 1));
+			}
+
+			result = expandedResult;
+		}
+
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Decodes the raw (ie. native layout) content of a numeric or boolean tensor.
+	 * </p>
+	 */
+	static
+	public Object toArray(org.tensorflow.framework.DataType dataType, int numElements, ByteBuffer byteBuffer){
+
+		switch(dataType){
+			case DT_FLOAT:
+				{
+					float[] result = new float[numElements];
+
+					(byteBuffer.asFloatBuffer()).get(result);
+
+					return result;
+				}
+			case DT_DOUBLE:
+				{
+					double[] result = new double[numElements];
+
+					(byteBuffer.asDoubleBuffer()).get(result);
+
+					return result;
+				}
+			case DT_INT32:
+				{
+					int[] result = new int[numElements];
+
+					(byteBuffer.asIntBuffer()).get(result);
+
+					return result;
+				}
+			case DT_INT64:
+				{
+					long[] result = new long[numElements];
+
+					(byteBuffer.asLongBuffer()).get(result);
+
+					return result;
+				}
+			case DT_BOOL:
+				{
+					boolean[] result = new boolean[numElements];
+
+					for(int i = 0; i < result.length; i++){
+						result[i] = (byteBuffer.get(byteBuffer.position() + i) != 0);
+					}
+
+					return result;
+				}
+			default:
+				throw new IllegalArgumentException();
+		}
+	}
+
+	static
+	public List<?> asList(Object array){
+
+		if(array instanceof float[]){
+			return Floats.asList((float[])array);
+		} else
+
+		if(array instanceof double[]){
+			return Doubles.asList((double[])array);
+		} else
+
+		if(array instanceof int[]){
+			return Ints.asList((int[])array);
+		} else
+
+		if(array instanceof long[]){
+			return Longs.asList((long[])array);
+		} else
+
+		if(array instanceof String[]){
+			return Arrays.asList((String[])array);
+		} else
+
+		if(array instanceof boolean[]){
+			return Booleans.asList((boolean[])array);
+		}
+
+		throw new IllegalArgumentException();
+	}
+
+	/**
+	 * @return A row-major matrix that shares the backing array with the tensor values.
+	 */
+	static
+	public FloatMatrix toFloatMatrix(Tensor tensor){
+		long[] shape = tensor.shape();
+
+		if(shape.length != 2){
+			throw new IllegalArgumentException("Expected a rank-2 tensor, got a rank-" + shape.length + " tensor");
+		}
+
+		return toFloatMatrix(toFloatArray(tensor), Ints.checkedCast(shape[0]), Ints.checkedCast(shape[1]));
+	}
+
+	/**
+	 * @param array A <code>float[]</code> array in row-major order, as returned by {@link #toArray(Tensor)}.
+	 */
+	static
+	public FloatMatrix toFloatMatrix(Object array, int rows, int columns){
+		return new FloatMatrix((float[])array, rows, columns);
+	}
+
+	/**
+	 * @return The size of the array contents in bytes. String elements are measured as UTF-8 bytes.
+	 */
+	static
+	public long getByteSize(Object array){
+
+		if(array instanceof float[]){
+			return 4L * ((float[])array).length;
+		} else
+
+		if(array instanceof double[]){
+			return 8L * ((double[])array).length;
+		} else
+
+		if(array instanceof int[]){
+			return 4L * ((int[])array).length;
+		} else
+
+		if(array instanceof long[]){
+			return 8L * ((long[])array).length;
+		} else
+
+		if(array instanceof String[]){
+			long result = 0L;
+
+			for(String value : (String[])array){
+				result += (value.getBytes(StandardCharsets.UTF_8)).length;
+			}
+
+			return result;
+		} else
+
+		if(array instanceof boolean[]){
+			return ((boolean[])array).length;
+		}
+
+		throw new IllegalArgumentException();
+	}
+
+	/**
+	 * <p>
+	 * Copies the raw content of a tensor into a caller-supplied buffer, starting from its current position.
+	 * </p>
+	 *
+	 * @param buffer A buffer in the native byte order, such as one acquired from a {@link TensorBufferPool}.
+	 *
+	 * @return A read-only view of the copied content. It is valid for as long as the buffer is not reused.
+	 */
+	static
+	public ByteBuffer writeTo(Tensor tensor, ByteBuffer buffer){
+
+		if(!(ByteOrder.nativeOrder()).equals(buffer.order())){
+			throw new IllegalArgumentException();
+		}
+
+		int numBytes = tensor.numBytes();
+
+		if(buffer.remaining() < numBytes){
+			throw new IllegalArgumentException("Expected at least " + numBytes + " bytes of space, got " + buffer.remaining() + " bytes");
+		}
+
+		ByteBuffer result = buffer.slice()
+			.order(ByteOrder.nativeOrder());
+
+		result.limit(numBytes);
+
+		tensor.writeTo(result);
+
+		result.flip();
+
+		return result.asReadOnlyBuffer()
+			.order(ByteOrder.nativeOrder());
+	}
+
+	static
+	public FloatBuffer toFloatBuffer(Tensor tensor, ByteBuffer buffer){
+		checkDataType(tensor, DataType.FLOAT);
+
+		return (writeTo(tensor, buffer)).asFloatBuffer();
+	}
+
+	static
+	public DoubleBuffer toDoubleBuffer(Tensor tensor, ByteBuffer buffer){
+		checkDataType(tensor, DataType.DOUBLE);
+
+		return (writeTo(tensor, buffer)).asDoubleBuffer();
+	}
+
+	static
+	public IntBuffer toIntBuffer(Tensor tensor, ByteBuffer buffer){
+		checkDataType(tensor, DataType.INT32);
+
+		return (writeTo(tensor, buffer)).asIntBuffer();
+	}
+
+	static
+	public LongBuffer toLongBuffer(Tensor tensor, ByteBuffer buffer){
+		checkDataType(tensor, DataType.INT64);
+
+		return (writeTo(tensor, buffer)).asLongBuffer();
+	}
+
+	static
+	private void checkDataType(Tensor tensor, DataType dataType){
+
+		if(tensor.dataType() != dataType){
+			throw new IllegalArgumentException("Expected " + dataType + " tensor, got " + tensor.dataType() + " tensor");
+		}
+	}
+
 	static
 	public float toFloatScalar(Tensor tensor){
 
@@ -115,25 +421,27 @@ public class TensorUtil {
 
 	static
 	public String[] toStringArray(Tensor tensor){
-		ByteBuffer byteBuffer = ByteBuffer.allocate(tensor.numBytes());
-
-		tensor.writeTo(byteBuffer);
-
-		byteBuffer.position(tensor.numElements() * 8);
+		Utf8StringArray array = toUtf8StringArray(tensor);
 
-		String[] result = new String[tensor.numElements()];
-
-		for(int i = 0; i < result.length; i++){
-			int length = byteBuffer.get();
+		return array.toStringArray();
+	}
 
-			byte[] buffer = new byte[length];
+	/**
+	 * <p>
+	 * Decodes a string tensor without creating {@link String} objects.
+	 * </p>
+	 */
+	static
+	public Utf8StringArray toUtf8StringArray(Tensor tensor){
+		TensorBufferPool bufferPool = TensorBufferPool.getDefault();
 
-			byteBuffer.get(buffer);
+		ByteBuffer buffer = bufferPool.acquire(tensor.numBytes());
 
-			result[i] = new String(buffer);
+		try {
+			return Utf8StringArray.decodeTensor(writeTo(tensor, buffer), tensor.numElements());
+		} finally {
+			bufferPool.release(buffer);
 		}
-
-		return result;
 	}
 
 	static
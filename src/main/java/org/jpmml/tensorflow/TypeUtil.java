@@ -20,7 +20,7 @@ package org.jpmml.tensorflow;
 
 import org.dmg.pmml.DataType;
 import org.dmg.pmml.OpType;
-import org.tensorflow.Output;
+import org.tensorflow.framework.NodeDef;
 
 public class TypeUtil {
 
@@ -28,17 +28,16 @@ public class TypeUtil {
 	}
 
 	static
-	public OpType getOpType(Output output){
-		org.tensorflow.DataType dataType = output.dataType();
+	public OpType getOpType(org.tensorflow.framework.DataType dataType){
 
 		switch(dataType){
-			case FLOAT:
-			case DOUBLE:
-			case INT32:
-			case INT64:
+			case DT_FLOAT:
+			case DT_DOUBLE:
+			case DT_INT32:
+			case DT_INT64:
 				return OpType.CONTINUOUS;
-			case STRING:
-			case BOOL:
+			case DT_STRING:
+			case DT_BOOL:
 				return OpType.CATEGORICAL;
 			default:
 				throw new IllegalArgumentException();
@@ -46,23 +45,37 @@ public class TypeUtil {
 	}
 
 	static
-	public DataType getDataType(Output output){
-		org.tensorflow.DataType dataType = output.dataType();
+	public DataType getDataType(org.tensorflow.framework.DataType dataType){
 
 		switch(dataType){
-			case FLOAT:
+			case DT_FLOAT:
 				return DataType.FLOAT;
-			case DOUBLE:
+			case DT_DOUBLE:
 				return DataType.DOUBLE;
-			case INT32:
-			case INT64:
+			case DT_INT32:
+			case DT_INT64:
 				return DataType.INTEGER;
-			case STRING:
+			case DT_STRING:
 				return DataType.STRING;
-			case BOOL:
+			case DT_BOOL:
 				return DataType.BOOLEAN;
 			default:
 				throw new IllegalArgumentException();
 		}
 	}
+
+	static
+	public org.tensorflow.framework.DataType getOutputType(NodeDef nodeDef){
+		String op = nodeDef.getOp();
+
+		switch(op){
+			case "Placeholder":
+			case "Const":
+				return (nodeDef.getAttrOrThrow("dtype")).getType();
+			case "Cast":
+				return (nodeDef.getAttrOrThrow("DstT")).getType();
+			default:
+				throw new IllegalArgumentException(nodeDef.getName());
+		}
+	}
 }
\ No newline at end of file
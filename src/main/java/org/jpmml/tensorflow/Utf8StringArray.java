@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.google.common.math.IntMath;
+import com.google.common.primitives.Ints;
+
+/**
+ * <p>
+ * An array of strings, which are stored as UTF-8 encoded bytes in a single byte array.
+ * </p>
+ *
+ * Elements are decoded to {@link String} objects only on request.
+ */
+public class Utf8StringArray {
+
+	private byte[] bytes = null;
+
+	private int[] offsets = null;
+
+
+	/**
+	 * @param offsets The start offsets of elements, followed by the end offset of the last element.
+	 */
+	public Utf8StringArray(byte[] bytes, int[] offsets){
+
+		if(offsets.length < 1 || offsets[0] != 0 || offsets[offsets.length - 1] > bytes.length){
+			throw new IllegalArgumentException();
+		}
+
+		this.bytes = bytes;
+		this.offsets = offsets;
+	}
+
+	public int size(){
+		return this.offsets.length - 1;
+	}
+
+	public int getLength(int index){
+		return this.offsets[index + 1] - this.offsets[index];
+	}
+
+	public String get(int index){
+		int begin = this.offsets[index];
+		int end = this.offsets[index + 1];
+
+		return new String(this.bytes, begin, end - begin, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * <p>
+	 * Decodes all elements.
+	 * Repeated elements are decoded once, and share the same {@link String} object.
+	 * </p>
+	 */
+	public String[] toStringArray(){
+		int size = size();
+
+		String[] result = new String[size];
+
+		int[] slots = new int[LongIntTable.capacity(size)];
+
+		int mask = slots.length - 1;
+
+		for(int i = 0; i < size; i++){
+
+			for(int slot = hash(i) & mask; ; slot = (slot + 1) & mask){
+				int index = slots[slot] - 1;
+
+				if(index < 0){
+					slots[slot] = i + 1;
+
+					result[i] = get(i);
+
+					break;
+				} // End if
+
+				if(equals(index, i)){
+					result[i] = result[index];
+
+					break;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	public boolean equals(int index, byte[] bytes){
+		int begin = this.offsets[index];
+		int end = this.offsets[index + 1];
+
+		if((end - begin) != bytes.length){
+			return false;
+		}
+
+		for(int i = 0; i < bytes.length; i++){
+
+			if(this.bytes[begin + i] != bytes[i]){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public boolean equals(int index, int otherIndex){
+		int begin = this.offsets[index];
+		int end = this.offsets[index + 1];
+
+		int otherBegin = this.offsets[otherIndex];
+		int otherEnd = this.offsets[otherIndex + 1];
+
+		if((end - begin) != (otherEnd - otherBegin)){
+			return false;
+		}
+
+		for(int i = 0; i < (end - begin); i++){
+
+			if(this.bytes[begin + i] != this.bytes[otherBegin + i]){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public int hash(int index){
+		return hash(this.bytes, this.offsets[index], this.offsets[index + 1]);
+	}
+
+	/**
+	 * @return A new array that contains the specified elements in the specified order.
+	 */
+	public Utf8StringArray select(int[] indices){
+		int length = 0;
+
+		for(int index : indices){
+			length += getLength(index);
+		}
+
+		byte[] bytes = new byte[length];
+		int[] offsets = new int[indices.length + 1];
+
+		for(int i = 0; i < indices.length; i++){
+			int begin = this.offsets[indices[i]];
+			int end = this.offsets[indices[i] + 1];
+
+			System.arraycopy(this.bytes, begin, bytes, offsets[i], end - begin);
+
+			offsets[i + 1] = offsets[i] + (end - begin);
+		}
+
+		return new Utf8StringArray(bytes, offsets);
+	}
+
+	byte[] getBytes(){
+		return this.bytes;
+	}
+
+	int[] getOffsets(){
+		return this.offsets;
+	}
+
+	static
+	public Utf8StringArray valueOf(String[] values){
+		byte[][] encodedValues = new byte[values.length][];
+
+		long length = 0;
+
+		for(int i = 0; i < values.length; i++){
+			encodedValues[i] = values[i].getBytes(StandardCharsets.UTF_8);
+
+			length += encodedValues[i].length;
+		}
+
+		byte[] bytes = new byte[Ints.checkedCast(length)];
+		int[] offsets = new int[values.length + 1];
+
+		for(int i = 0; i < values.length; i++){
+			System.arraycopy(encodedValues[i], 0, bytes, offsets[i], encodedValues[i].length);
+
+			offsets[i + 1] = offsets[i] + encodedValues[i].length;
+
+			// Release the encoded value
+			encodedValues[i] = null;
+		}
+
+		return new Utf8StringArray(bytes, offsets);
+	}
+
+	/**
+	 * <p>
+	 * Decodes the native layout of a string tensor: the offsets of all elements as uint64s (relative to the end of the offsets section),
+	 * followed by all elements as varint64 length-prefixed byte sequences.
+	 * </p>
+	 *
+	 * The byte buffer must be in the native byte order.
+	 */
+	static
+	public Utf8StringArray decodeTensor(ByteBuffer byteBuffer, int numElements){
+		int base = byteBuffer.position();
+
+		int dataBase = base + numElements * 8;
+
+		byte[] bytes = new byte[Math.max(byteBuffer.limit() - dataBase, 0)];
+		int[] offsets = new int[numElements + 1];
+
+		ByteBuffer dataBuffer = byteBuffer.duplicate();
+
+		for(int i = 0; i < numElements; i++){
+			long offset = byteBuffer.getLong(base + i * 8);
+
+			dataBuffer.position(Ints.checkedCast(dataBase + offset));
+
+			int length = Ints.checkedCast(readVarint(dataBuffer));
+
+			dataBuffer.get(bytes, offsets[i], length);
+
+			offsets[i + 1] = offsets[i] + length;
+		}
+
+		return new Utf8StringArray(trim(bytes, offsets[numElements]), offsets);
+	}
+
+	/**
+	 * <p>
+	 * Decodes the checkpoint layout of a string tensor: the lengths of all elements as varint64s, followed by a 4-byte checksum of the lengths,
+	 * followed by the bytes of all elements.
+	 * </p>
+	 */
+	static
+	public Utf8StringArray decodeCheckpoint(ByteBuffer byteBuffer, int numElements){
+		int[] offsets = new int[numElements + 1];
+
+		for(int i = 0; i < numElements; i++){
+			offsets[i + 1] = IntMath.checkedAdd(offsets[i], Ints.checkedCast(readVarint(byteBuffer)));
+		}
+
+		// Skip the checksum
+		byteBuffer.position(byteBuffer.position() + 4);
+
+		byte[] bytes = new byte[offsets[numElements]];
+
+		byteBuffer.get(bytes);
+
+		return new Utf8StringArray(bytes, offsets);
+	}
+
+	static
+	long readVarint(ByteBuffer byteBuffer){
+		long result = 0;
+
+		for(int shift = 0; shift < 64; shift += 7){
+			byte b = byteBuffer.get();
+
+			result |= (long)(b & 0x7F) << shift;
+
+			if((b & 0x80) == 0){
+				return result;
+			}
+		}
+
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	static
+	private byte[] trim(byte[] bytes, int length){
+
+		if(bytes.length == length){
+			return bytes;
+		}
+
+		return Arrays.copyOf(bytes, length);
+	}
+
+	static
+	int hash(byte[] bytes, int begin, int end){
+		int result = 1;
+
+		for(int i = begin; i < end; i++){
+			result = 31 * result + bytes[i];
+		}
+
+		return LongIntTable.mix(result);
+	}
+}
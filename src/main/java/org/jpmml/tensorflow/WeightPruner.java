@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+/**
+ * <p>
+ * Sets negligible weights to zero, so that the corresponding connections and coefficients are omitted from the PMML document.
+ * </p>
+ *
+ * A weight is negligible if its absolute value is less than the absolute threshold,
+ * or less than the relative threshold times the greatest absolute value in the same weight matrix.
+ *
+ * <p>
+ * The deviation that pruning causes in the weighted sum of a neuron is bounded by the sum of its dropped absolute weights,
+ * multiplied by the greatest absolute value of its inputs.
+ * The greatest such sum is reported as the {@link #getMaxDroppedWeight() maximum dropped weight}.
+ * Linear estimators prune every feature column separately, so the deviation of a regression table is bounded by the sum over its feature columns.
+ * </p>
+ */
+public class WeightPruner {
+
+	private double threshold = 0d;
+
+	private double relativeThreshold = 0d;
+
+	private long weights = 0L;
+
+	private long zeroWeights = 0L;
+
+	private long prunedWeights = 0L;
+
+	private double maxDroppedWeight = 0d;
+
+
+	public WeightPruner(double threshold, double relativeThreshold){
+
+		if(threshold < 0d || relativeThreshold < 0d || relativeThreshold >= 1d){
+			throw new IllegalArgumentException("Invalid pruning threshold");
+		}
+
+		this.threshold = threshold;
+		this.relativeThreshold = relativeThreshold;
+	}
+
+	/**
+	 * <p>
+	 * Prunes a weight matrix in place.
+	 * </p>
+	 *
+	 * @param weights The weight matrix, one row per neuron (or per regression table).
+	 */
+	public void prune(FloatMatrix weights){
+		float[] values = weights.getValues();
+
+		float maxValue = 0f;
+
+		for(int i = 0; i < values.length; i++){
+			float value = Math.abs(values[i]);
+
+			if(value > maxValue){
+				maxValue = value;
+			}
+		}
+
+		double threshold = Math.max(this.threshold, this.relativeThreshold * maxValue);
+
+		long zeroWeights = 0L;
+		long prunedWeights = 0L;
+
+		double maxDroppedWeight = 0d;
+
+		for(int row = 0; row < weights.getRows(); row++){
+			double droppedWeight = 0d;
+
+			for(int column = 0; column < weights.getColumns(); column++){
+				int index = weights.getIndex(row, column);
+
+				float value = values[index];
+
+				if(value == 0f){
+					zeroWeights++;
+
+					continue;
+				} // End if
+
+				// NaN compares false
+				if(Math.abs(value) < threshold){
+					values[index] = 0f;
+
+					droppedWeight += Math.abs(value);
+
+					zeroWeights++;
+					prunedWeights++;
+				}
+			}
+
+			maxDroppedWeight = Math.max(maxDroppedWeight, droppedWeight);
+		}
+
+		update(values.length, zeroWeights, prunedWeights, maxDroppedWeight);
+	}
+
+	synchronized
+	private void update(long weights, long zeroWeights, long prunedWeights, double maxDroppedWeight){
+		this.weights += weights;
+		this.zeroWeights += zeroWeights;
+		this.prunedWeights += prunedWeights;
+		this.maxDroppedWeight = Math.max(this.maxDroppedWeight, maxDroppedWeight);
+	}
+
+	public double getThreshold(){
+		return this.threshold;
+	}
+
+	public double getRelativeThreshold(){
+		return this.relativeThreshold;
+	}
+
+	synchronized
+	public long getWeights(){
+		return this.weights;
+	}
+
+	/**
+	 * @return The number of zero weights after pruning, including the weights that were zero to begin with.
+	 */
+	synchronized
+	public long getZeroWeights(){
+		return this.zeroWeights;
+	}
+
+	synchronized
+	public long getPrunedWeights(){
+		return this.prunedWeights;
+	}
+
+	/**
+	 * @return The proportion of zero weights after pruning.
+	 */
+	synchronized
+	public double getSparsity(){
+
+		if(this.weights == 0L){
+			return 0d;
+		}
+
+		return (double)this.zeroWeights / (double)this.weights;
+	}
+
+	synchronized
+	public double getMaxDroppedWeight(){
+		return this.maxDroppedWeight;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.ByteStreams;
+import org.dmg.pmml.PMML;
+import org.jpmml.model.MetroJAXBUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tensorflow.SavedModelBundle;
+import org.tensorflow.framework.MetaGraphDef;
+
+/**
+ * <p>
+ * Benchmarks the phases of converting the SavedModel fixtures of integration tests.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+
+	@Param({"DNNClassificationAudit", "DNNClassificationIris", "DNNRegressionAuto", "LinearClassificationAudit", "LinearClassificationIris", "LinearRegressionAuto"})
+	public String name;
+
+	private File savedModelDir = null;
+
+	private MetaGraphDef metaGraphDef = null;
+
+	private CheckpointReader checkpointReader = null;
+
+	private SavedModel savedModel = null;
+
+	private Estimator estimator = null;
+
+	private PMML pmml = null;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		URL resource = (ConversionBenchmark.class).getResource("/savedmodel/" + this.name);
+
+		this.savedModelDir = (Paths.get(resource.toURI())).toFile();
+
+		this.metaGraphDef = SavedModelUtil.readMetaGraphDef(this.savedModelDir, "serve");
+
+		this.checkpointReader = new CheckpointReader(new File(this.savedModelDir, "variables/variables"));
+
+		this.savedModel = new SavedModel(this.metaGraphDef, this.checkpointReader);
+
+		EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+		this.estimator = estimatorFactory.newEstimator(this.savedModel);
+
+		this.pmml = this.estimator.encodePMML();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		this.savedModel.close();
+	}
+
+	@Benchmark
+	public void loadNative(Blackhole blackhole) throws Exception {
+		SavedModelBundle bundle = SavedModelBundle.load(this.savedModelDir.getAbsolutePath(), "serve");
+
+		try(SavedModel savedModel = new SavedModel(bundle)){
+			blackhole.consume(savedModel);
+		}
+	}
+
+	@Benchmark
+	public SavedModel loadJava() throws IOException {
+
+		try(SavedModel savedModel = SavedModelUtil.load(this.savedModelDir, "serve")){
+			return savedModel;
+		}
+	}
+
+	@Benchmark
+	public MetaGraphDef readMetaGraphDef() throws IOException {
+		return SavedModelUtil.readMetaGraphDef(this.savedModelDir, "serve");
+	}
+
+	/**
+	 * <p>
+	 * Builds the node map and the graph index, and indexes lookup table initializers.
+	 * </p>
+	 */
+	@Benchmark
+	public SavedModel construct(){
+		return new SavedModel(this.metaGraphDef, this.checkpointReader);
+	}
+
+	@Benchmark
+	public void getInputs(Blackhole blackhole){
+		Iterable<?> inputs = this.savedModel.getInputs(this.estimator.getHead(), "Placeholder", "VariableV2");
+
+		blackhole.consume(inputs);
+	}
+
+	@Benchmark
+	public PMML encodePMML(){
+		return this.estimator.encodePMML();
+	}
+
+	@Benchmark
+	public void marshalPMML() throws Exception {
+		OutputStream os = ByteStreams.nullOutputStream();
+
+		MetroJAXBUtil.marshalPMML(this.pmml, os);
+	}
+
+	@Benchmark
+	public void marshalPMMLStreaming() throws Exception {
+		OutputStream os = ByteStreams.nullOutputStream();
+
+		StreamingPMMLUtil.marshalPMML(this.pmml, os);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDir;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConversionCacheTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void fingerprint() throws Exception {
+		File irisDir = getSavedModelDir("DNNClassificationIris");
+		File autoDir = getSavedModelDir("DNNRegressionAuto");
+
+		String irisKey = ConversionCache.fingerprint(irisDir, "");
+
+		assertEquals(64, irisKey.length());
+		assertEquals(irisKey, ConversionCache.fingerprint(irisDir, ""));
+
+		assertNotEquals(irisKey, ConversionCache.fingerprint(irisDir, "salt"));
+		assertNotEquals(irisKey, ConversionCache.fingerprint(autoDir, ""));
+	}
+
+	@Test
+	public void getAndPut() throws Exception {
+		ConversionCache conversionCache = new ConversionCache(this.temporaryFolder.newFolder(), 1024, true);
+
+		File output = this.temporaryFolder.newFile();
+
+		assertFalse(conversionCache.get("a", output));
+
+		File input = this.temporaryFolder.newFile();
+
+		byte[] content = new byte[600];
+
+		Files.write(input.toPath(), content);
+
+		conversionCache.put("a", input);
+
+		assertTrue(conversionCache.get("a", output));
+
+		assertArrayEquals(content, Files.readAllBytes(output.toPath()));
+	}
+
+	@Test
+	public void evict() throws Exception {
+		File dir = this.temporaryFolder.newFolder();
+
+		ConversionCache conversionCache = new ConversionCache(dir, 1024, false);
+
+		File input = this.temporaryFolder.newFile();
+
+		Files.write(input.toPath(), new byte[400]);
+
+		conversionCache.put("a", input);
+		conversionCache.put("b", input);
+
+		(new File(dir, "a.pmml")).setLastModified(System.currentTimeMillis() - 60 * 1000);
+		(new File(dir, "b.pmml")).setLastModified(System.currentTimeMillis() - 30 * 1000);
+
+		File output = this.temporaryFolder.newFile();
+
+		// Mark "a" as more recently used than "b"
+		assertTrue(conversionCache.get("a", output));
+
+		conversionCache.put("c", input);
+
+		assertTrue(conversionCache.get("a", output));
+		assertFalse(conversionCache.get("b", output));
+		assertTrue(conversionCache.get("c", output));
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConversionMetricsTest {
+
+	@Test
+	public void listen() throws Exception {
+		URL resource = (ConversionMetricsTest.class).getResource("/savedmodel/DNNClassificationAudit");
+
+		File savedModelDir = (Paths.get(resource.toURI())).toFile();
+
+		final
+		List<ConversionPhase> phases = new ArrayList<>();
+
+		ConversionListener listener = new ConversionListener(){
+
+			private int depth = 0;
+
+
+			@Override
+			public boolean isEnabled(){
+				return true;
+			}
+
+			@Override
+			public void phaseStarted(ConversionPhase phase){
+				this.depth++;
+			}
+
+			@Override
+			public void phaseEnded(ConversionPhase phase){
+				this.depth--;
+
+				assertTrue(this.depth >= 0);
+
+				phases.add(phase);
+			}
+		};
+
+		ConversionMetrics.addListener(listener);
+
+		try {
+			ConversionMetrics.setModel(savedModelDir.getName());
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+				Estimator estimator = estimatorFactory.newEstimator(savedModel);
+
+				estimator.encodePMML();
+			}
+		} finally {
+			ConversionMetrics.setModel(null);
+
+			ConversionMetrics.removeListener(listener);
+		}
+
+		assertFalse(phases.isEmpty());
+
+		Set<ConversionPhase.Type> types = EnumSet.noneOf(ConversionPhase.Type.class);
+
+		for(ConversionPhase phase : phases){
+			assertEquals(savedModelDir.getName(), phase.getModel());
+			assertTrue(phase.getDuration() >= 0);
+
+			if((ConversionPhase.Type.FETCH_VARIABLE).equals(phase.getType())){
+				assertTrue(phase.getBytes() > 0);
+			}
+
+			types.add(phase.getType());
+		}
+
+		assertEquals(EnumSet.of(ConversionPhase.Type.PARSE_GRAPH, ConversionPhase.Type.BUILD_INDEX, ConversionPhase.Type.INITIALIZE_TABLE, ConversionPhase.Type.FETCH_VARIABLES, ConversionPhase.Type.FETCH_VARIABLE, ConversionPhase.Type.ENCODE_MODEL, ConversionPhase.Type.ENCODE_LAYER), types);
+	}
+
+	@Test
+	public void listenMidPhase(){
+		CountingListener enabledListener = new CountingListener(true);
+		CountingListener disabledListener = new CountingListener(false);
+		CountingListener lateListener = new CountingListener(true);
+
+		ConversionMetrics.addListener(enabledListener);
+		ConversionMetrics.addListener(disabledListener);
+
+		try {
+			ConversionPhase phase = ConversionMetrics.begin(ConversionPhase.Type.ENCODE_MODEL, "model");
+
+			ConversionMetrics.addListener(lateListener);
+
+			disabledListener.enabled = true;
+
+			phase.close();
+		} finally {
+			ConversionMetrics.removeListener(enabledListener);
+			ConversionMetrics.removeListener(disabledListener);
+			ConversionMetrics.removeListener(lateListener);
+		}
+
+		assertEquals(1, enabledListener.started);
+		assertEquals(1, enabledListener.ended);
+
+		assertEquals(0, disabledListener.started);
+		assertEquals(0, disabledListener.ended);
+
+		assertEquals(0, lateListener.started);
+		assertEquals(0, lateListener.ended);
+	}
+
+	static
+	private class CountingListener implements ConversionListener {
+
+		private boolean enabled = false;
+
+		private int started = 0;
+
+		private int ended = 0;
+
+
+		private CountingListener(boolean enabled){
+			this.enabled = enabled;
+		}
+
+		@Override
+		public boolean isEnabled(){
+			return this.enabled;
+		}
+
+		@Override
+		public void phaseStarted(ConversionPhase phase){
+			this.started++;
+		}
+
+		@Override
+		public void phaseEnded(ConversionPhase phase){
+			this.ended++;
+		}
+	}
+}
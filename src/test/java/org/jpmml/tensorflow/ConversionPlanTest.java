@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dmg.pmml.PMML;
+import org.junit.Test;
+
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDirs;
+import static org.jpmml.tensorflow.TestUtil.toXMLString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public class ConversionPlanTest {
+
+	@Test
+	public void apply() throws Exception {
+		File[] savedModelDirs = getSavedModelDirs();
+
+		for(File savedModelDir : savedModelDirs){
+			ConversionPlan conversionPlan;
+
+			String expectedPMML;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				conversionPlan = encodeConversionPlan(savedModel);
+
+				expectedPMML = toXMLString(conversionPlan.getPMML());
+			}
+
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+			conversionPlan.write(os);
+
+			conversionPlan = ConversionPlan.read(new ByteArrayInputStream(os.toByteArray()));
+
+			PMML pmml = conversionPlan.apply(new File(savedModelDir, "variables/variables"));
+
+			assertEquals(savedModelDir.getName(), expectedPMML, toXMLString(pmml));
+		}
+	}
+
+	@Test
+	public void applyChanged() throws Exception {
+		File[] savedModelDirs = getSavedModelDirs();
+
+		for(File savedModelDir : savedModelDirs){
+			ConversionPlan conversionPlan;
+
+			String expectedPMML;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				conversionPlan = encodeConversionPlan(savedModel);
+
+				expectedPMML = toXMLString(conversionPlan.getPMML());
+			}
+
+			Map<String, float[]> values = readValues(savedModelDir, conversionPlan.getVariableNames(), conversionPlan.getCheckpointKeys());
+
+			Map<String, float[]> scaledValues = new HashMap<>();
+
+			for(Map.Entry<String, float[]> entry : values.entrySet()){
+				float[] array = (entry.getValue()).clone();
+
+				for(int i = 0; i < array.length; i++){
+					array[i] *= 2f;
+				}
+
+				scaledValues.put(entry.getKey(), array);
+			}
+
+			assertNotEquals(savedModelDir.getName(), expectedPMML, toXMLString(conversionPlan.apply(scaledValues)));
+
+			// Patching is repeatable
+			assertEquals(savedModelDir.getName(), expectedPMML, toXMLString(conversionPlan.apply(values)));
+
+			String variableName = (conversionPlan.getVariableNames()).get(0);
+
+			Map<String, float[]> invalidValues = new HashMap<>(values);
+			invalidValues.put(variableName, new float[(values.get(variableName)).length + 1]);
+
+			try {
+				conversionPlan.apply(invalidValues);
+
+				fail();
+			} catch(IllegalArgumentException iae){
+				// Ignored
+			}
+
+			float[] array = (values.get(variableName)).clone();
+			array[0] = Float.NaN;
+
+			invalidValues.put(variableName, array);
+
+			try {
+				conversionPlan.apply(invalidValues);
+
+				fail();
+			} catch(IllegalArgumentException iae){
+				// Ignored
+			}
+
+			// A failed application does not patch anything
+			assertEquals(savedModelDir.getName(), expectedPMML, toXMLString(conversionPlan.getPMML()));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void encodeFolded() throws Exception {
+		File savedModelDir = getSavedModelDirs()[0];
+
+		try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+			EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+			Estimator estimator = estimatorFactory.newEstimator(savedModel);
+			estimator.putOption(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, Boolean.TRUE);
+
+			estimator.encodeConversionPlan();
+		}
+	}
+
+	static
+	private ConversionPlan encodeConversionPlan(SavedModel savedModel){
+		EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+		Estimator estimator = estimatorFactory.newEstimator(savedModel);
+
+		return estimator.encodeConversionPlan();
+	}
+
+	static
+	private Map<String, float[]> readValues(File savedModelDir, List<String> variableNames, List<String> checkpointKeys) throws Exception {
+		Map<String, float[]> result = new HashMap<>();
+
+		try(CheckpointReader checkpointReader = new CheckpointReader(new File(savedModelDir, "variables/variables"))){
+
+			for(int i = 0; i < variableNames.size(); i++){
+				result.put(variableNames.get(i), (float[])checkpointReader.getValues(checkpointKeys.get(i)));
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.ByteStreams;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.jpmml.tensorflow.TestUtil.encodePMML;
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDir;
+import static org.jpmml.tensorflow.TestUtil.toXMLString;
+import static org.jpmml.tensorflow.TestUtil.unmarshalPMML;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConverterServerTest {
+
+	@Test
+	public void convertPath() throws Exception {
+		File savedModelDir = getSavedModelDir("LinearRegressionAuto");
+
+		HttpURLConnection connection = openConnection("/convert?path=" + URLEncoder.encode(savedModelDir.getAbsolutePath(), "UTF-8"));
+
+		connection.getOutputStream().close();
+
+		assertEquals(200, connection.getResponseCode());
+
+		try(InputStream is = connection.getInputStream()){
+			assertEquals(convert(savedModelDir), toXMLString(unmarshalPMML(is)));
+		}
+	}
+
+	@Test
+	public void convertUpload() throws Exception {
+		File savedModelDir = getSavedModelDir("DNNClassificationIris");
+
+		HttpURLConnection connection = openConnection("/convert");
+
+		try(OutputStream os = connection.getOutputStream()){
+			writeTar(savedModelDir, savedModelDir.getName() + "/", os);
+
+			os.write(new byte[1024]);
+		}
+
+		assertEquals(200, connection.getResponseCode());
+
+		try(InputStream is = connection.getInputStream()){
+			assertEquals(convert(savedModelDir), toXMLString(unmarshalPMML(is)));
+		}
+	}
+
+	@Test
+	public void convertInvalid() throws Exception {
+		HttpURLConnection connection = openConnection("/convert?path=" + URLEncoder.encode("/nonexistent", "UTF-8"));
+
+		connection.getOutputStream().close();
+
+		assertEquals(400, connection.getResponseCode());
+
+		connection = (HttpURLConnection)(new URL("http://127.0.0.1:" + ConverterServerTest.server.getPort() + "/convert")).openConnection();
+
+		assertEquals(405, connection.getResponseCode());
+	}
+
+	@Test
+	public void rejectLargeUpload() throws Exception {
+		ConverterServer server = new ConverterServer("127.0.0.1", 0, 1, 1, 128 * 1024, 512 * 1024, false);
+		server.start();
+
+		try {
+			// Declared size
+			try(Socket socket = beginUpload(server)){
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+
+				assertEquals("HTTP/1.1 413", (reader.readLine()).substring(0, 12));
+			}
+
+			// Undeclared size
+			File savedModelDir = getSavedModelDir("DNNClassificationIris");
+
+			HttpURLConnection connection = openConnection(server, "/convert");
+
+			try(OutputStream os = connection.getOutputStream()){
+				writeTar(savedModelDir, savedModelDir.getName() + "/", os);
+			}
+
+			assertEquals(413, connection.getResponseCode());
+
+			// Small upload, large contents
+			File bombDir = Files.createTempDirectory("bomb").toFile();
+
+			File bombFile = new File(bombDir, "saved_model.pb");
+
+			try {
+				Files.write(bombFile.toPath(), new byte[1024 * 1024]);
+
+				connection = openConnection(server, "/convert");
+
+				try(OutputStream os = new GZIPOutputStream(connection.getOutputStream())){
+					writeTar(bombDir, "", os);
+				}
+
+				assertEquals(413, connection.getResponseCode());
+
+				try(InputStream is = connection.getErrorStream()){
+					String message = new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8);
+
+					assertTrue(message.contains("size limit of " + (512 * 1024) + " bytes"));
+				}
+			} finally {
+				bombFile.delete();
+
+				bombDir.delete();
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void rejectOverCapacity() throws Exception {
+		ConverterServer server = new ConverterServer("127.0.0.1", 0, 1, 0, false);
+		server.start();
+
+		try {
+			Socket socket = beginUpload(server);
+
+			try {
+				awaitAdmittedRequests(server, 1);
+
+				HttpURLConnection connection = openConnection(server, "/convert?path=" + URLEncoder.encode(getSavedModelDir("LinearRegressionAuto").getAbsolutePath(), "UTF-8"));
+
+				connection.getOutputStream().close();
+
+				assertEquals(503, connection.getResponseCode());
+			} finally {
+				socket.close();
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void convertQueued() throws Exception {
+		ConverterServer server = new ConverterServer("127.0.0.1", 0, 1, 1, false);
+		server.start();
+
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+		try {
+			Future<Integer> future;
+
+			Socket socket = beginUpload(server);
+
+			try {
+				awaitAdmittedRequests(server, 1);
+
+				final
+				HttpURLConnection connection = openConnection(server, "/convert?path=" + URLEncoder.encode(getSavedModelDir("LinearRegressionAuto").getAbsolutePath(), "UTF-8"));
+
+				Callable<Integer> task = new Callable<Integer>(){
+
+					@Override
+					public Integer call() throws Exception {
+
+						connection.getOutputStream().close();
+
+						return connection.getResponseCode();
+					}
+				};
+
+				future = executorService.submit(task);
+
+				awaitAdmittedRequests(server, 2);
+
+				Thread.sleep(250L);
+
+				assertFalse(future.isDone());
+			} finally {
+				socket.close();
+			}
+
+			// Closing the socket fails the in-flight upload, which releases its permit
+			assertEquals((Integer)200, future.get(60, TimeUnit.SECONDS));
+		} finally {
+			executorService.shutdownNow();
+
+			server.stop();
+		}
+	}
+
+	@BeforeClass
+	static
+	public void startServer() throws IOException {
+		ConverterServerTest.server = new ConverterServer("127.0.0.1", 0, 2, 2, false);
+		ConverterServerTest.server.start();
+	}
+
+	@AfterClass
+	static
+	public void stopServer(){
+		ConverterServerTest.server.stop();
+	}
+
+	static
+	private HttpURLConnection openConnection(String path) throws IOException {
+		return openConnection(ConverterServerTest.server, path);
+	}
+
+	static
+	private HttpURLConnection openConnection(ConverterServer server, String path) throws IOException {
+		URL url = new URL("http://127.0.0.1:" + server.getPort() + path);
+
+		HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setChunkedStreamingMode(0);
+
+		return connection;
+	}
+
+	/**
+	 * <p>
+	 * Sends the request line and headers of an upload, but not its body.
+	 * The conversion stays in flight until the returned socket is closed.
+	 * </p>
+	 */
+	static
+	private Socket beginUpload(ConverterServer server) throws IOException {
+		Socket socket = new Socket("127.0.0.1", server.getPort());
+
+		OutputStream os = socket.getOutputStream();
+		os.write(("POST /convert HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Length: 1048576\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		os.flush();
+
+		return socket;
+	}
+
+	static
+	private void awaitAdmittedRequests(ConverterServer server, int count) throws InterruptedException {
+
+		for(int i = 0; i < 600 && server.getAdmittedRequests() < count; i++){
+			Thread.sleep(50L);
+		}
+
+		assertEquals(count, server.getAdmittedRequests());
+	}
+
+	static
+	private String convert(File savedModelDir) throws Exception {
+
+		try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+			return toXMLString(encodePMML(savedModel));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes the files of a directory tree as ustar entries.
+	 * </p>
+	 */
+	static
+	private void writeTar(File dir, String prefix, OutputStream os) throws IOException {
+		File[] files = dir.listFiles();
+
+		Arrays.sort(files);
+
+		for(File file : files){
+			String name = prefix + file.getName();
+
+			if(file.isDirectory()){
+				writeTar(file, name + "/", os);
+
+				continue;
+			}
+
+			byte[] content = Files.readAllBytes(file.toPath());
+
+			byte[] header = new byte[512];
+
+			put(header, 0, name);
+			put(header, 100, "0000644");
+			put(header, 108, "0000000");
+			put(header, 116, "0000000");
+			put(header, 124, String.format("%011o", content.length));
+			put(header, 136, String.format("%011o", 0));
+			put(header, 148, "        ");
+			header[156] = '0';
+			put(header, 257, "ustar");
+			put(header, 263, "00");
+
+			int checksum = 0;
+
+			for(byte b : header){
+				checksum += (b & 0xFF);
+			}
+
+			put(header, 148, String.format("%06o", checksum));
+			header[154] = 0;
+
+			os.write(header);
+			os.write(content);
+			os.write(new byte[(512 - (content.length % 512)) % 512]);
+		}
+	}
+
+	static
+	private void put(byte[] block, int offset, String value){
+		byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+
+		System.arraycopy(bytes, 0, block, offset, bytes.length);
+	}
+
+	private static ConverterServer server = null;
+}
@@ -18,6 +18,8 @@
  */
 package org.jpmml.tensorflow;
 
+import java.util.Collections;
+
 import org.jpmml.evaluator.PMMLEquivalence;
 import org.junit.Test;
 
@@ -36,4 +38,9 @@ public class DNNClassifierTest extends EstimatorTest {
 	public void evaluateIris() throws Exception {
 		evaluate("DNNClassification", "Iris");
 	}
+
+	@Test
+	public void evaluateAuditFolded() throws Exception {
+		evaluate("DNNClassification", "Audit", Collections.singletonMap(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, Boolean.TRUE));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.dmg.pmml.Entity;
+import org.dmg.pmml.neural_network.NeuralInput;
+import org.dmg.pmml.neural_network.Neuron;
+import org.junit.Test;
+
+import static org.jpmml.tensorflow.TestUtil.encodePMML;
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDirs;
+import static org.jpmml.tensorflow.TestUtil.toXMLString;
+import static org.junit.Assert.assertEquals;
+
+public class DNNEstimatorTest {
+
+	@Test
+	public void createNeurons(){
+		int inputs = 7;
+		int count = 1000;
+
+		List<Entity> entities = new ArrayList<>();
+
+		for(int i = 0; i < inputs; i++){
+			entities.add(new NeuralInput().setId("0/" + String.valueOf(i + 1)));
+		}
+
+		float[] weightValues = new float[inputs * count];
+
+		for(int i = 0; i < weightValues.length; i++){
+			weightValues[i] = ((i % 5) == 0 ? 0f : (i * 0.001f));
+		}
+
+		float[] biasValues = new float[count];
+
+		for(int j = 0; j < count; j++){
+			biasValues[j] = j * 0.5f;
+		}
+
+		FloatMatrix weights = new FloatMatrix(weightValues, count, inputs);
+
+		List<Neuron> expectedNeurons = DNNEstimator.createNeurons(entities, weights, biasValues, "1/", null, 1);
+
+		ExecutorService executorService = ExecutorUtil.createExecutorService("test", 3);
+
+		try {
+			List<Neuron> actualNeurons = DNNEstimator.createNeurons(entities, weights, biasValues, "1/", executorService, 3);
+
+			assertEquals(count, actualNeurons.size());
+
+			for(int j = 0; j < count; j++){
+				Neuron expectedNeuron = expectedNeurons.get(j);
+				Neuron actualNeuron = actualNeurons.get(j);
+
+				assertEquals("1/" + String.valueOf(j + 1), actualNeuron.getId());
+				assertEquals(expectedNeuron.getBias(), actualNeuron.getBias());
+				assertEquals((expectedNeuron.getConnections()).size(), (actualNeuron.getConnections()).size());
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test
+	public void encodeParallel() throws Exception {
+		File[] savedModelDirs = getSavedModelDirs();
+
+		for(File savedModelDir : savedModelDirs){
+
+			if(!(savedModelDir.getName()).startsWith("DNN")){
+				continue;
+			}
+
+			String expectedPMML;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				expectedPMML = toXMLString(encodePMML(savedModel, Collections.singletonMap(DNNEstimator.OPTION_THREADS, 1)));
+			}
+
+			String actualPMML;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				actualPMML = toXMLString(encodePMML(savedModel, Collections.singletonMap(DNNEstimator.OPTION_THREADS, 4)));
+			}
+
+			assertEquals(savedModelDir.getName(), expectedPMML, actualPMML);
+		}
+	}
+}
@@ -24,6 +24,8 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
 
 import com.google.common.base.Equivalence;
 import com.google.common.base.Predicate;
@@ -37,10 +39,23 @@ import org.tensorflow.SavedModelBundle;
 abstract
 public class EstimatorTest extends IntegrationTest {
 
+	private Map<String, ?> options = Collections.emptyMap();
+
+
 	public EstimatorTest(Equivalence<Object> equivalence){
 		super(equivalence);
 	}
 
+	public void evaluate(String name, String dataset, Map<String, ?> options) throws Exception {
+		this.options = options;
+
+		try {
+			evaluate(name, dataset);
+		} finally {
+			this.options = Collections.emptyMap();
+		}
+	}
+
 	@Override
 	protected ArchiveBatch createBatch(String name, String dataset, Predicate<FieldName> predicate){
 		ArchiveBatch result = new IntegrationTestBatch(name, dataset, predicate){
@@ -60,6 +75,7 @@ public class EstimatorTest extends IntegrationTest {
 					EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
 
 					Estimator estimator = estimatorFactory.newEstimator(savedModel);
+					(estimator.getOptions()).putAll(EstimatorTest.this.options);
 
 					PMML pmml = estimator.encodePMML();
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FloatMatrixTest {
+
+	@Test
+	public void views(){
+		FloatMatrix matrix = new FloatMatrix(new float[]{1f, 2f, 3f, 4f, 5f, 6f}, 2, 3);
+
+		assertEquals(6f, matrix.get(1, 2), 0f);
+
+		assertArrayEquals(new float[]{4f, 5f, 6f}, (matrix.getRow(1)).toArray(), 0f);
+		assertArrayEquals(new float[]{2f, 5f}, (matrix.getColumn(1)).toArray(), 0f);
+
+		FloatMatrix columnMajorMatrix = new FloatMatrix(new float[]{1f, 4f, 2f, 5f, 3f, 6f}, 2, 3, false);
+
+		for(int row = 0; row < 2; row++){
+			assertArrayEquals((matrix.getRow(row)).toArray(), (columnMajorMatrix.getRow(row)).toArray(), 0f);
+		}
+
+		for(int column = 0; column < 3; column++){
+			assertArrayEquals((matrix.getColumn(column)).toArray(), (columnMajorMatrix.getColumn(column)).toArray(), 0f);
+		}
+	}
+
+	@Test
+	public void transpose(){
+		int rows = 100;
+		int columns = 130;
+
+		float[] values = new float[rows * columns];
+
+		for(int i = 0; i < values.length; i++){
+			values[i] = i;
+		}
+
+		FloatMatrix matrix = new FloatMatrix(values, rows, columns);
+
+		FloatMatrix transposedMatrix = matrix.transpose();
+
+		assertEquals(columns, transposedMatrix.getRows());
+		assertEquals(rows, transposedMatrix.getColumns());
+
+		for(int column = 0; column < columns; column++){
+			assertArrayEquals((matrix.getColumn(column)).toArray(), (transposedMatrix.getRow(column)).toArray(), 0f);
+		}
+	}
+
+	@Test
+	public void toDouble(){
+		float[] values = {0.1f, -0.041367203f, 1e-8f, Float.MAX_VALUE};
+
+		for(float value : values){
+			assertEquals((org.jpmml.converter.ValueUtil.floatToDouble(value)).doubleValue(), FloatMatrix.toDouble(value), 0d);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.framework.NodeDef;
+
+/**
+ * <p>
+ * Benchmarks graph indexing and traversal on synthetic graphs.
+ * </p>
+ *
+ * The graph is a stack of layers, where every node consumes two nodes of the previous layer.
+ * The number of distinct paths from the head to the bottom layer grows exponentially with depth,
+ * so any traversal that does not remember visited nodes shows up right away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphBenchmark {
+
+	@Param({"1000", "100000"})
+	public int nodes;
+
+	@Param({"16"})
+	public int width;
+
+	private List<NodeDef> nodeDefs = null;
+
+	private GraphIndex graphIndex = null;
+
+	private String head = null;
+
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		this.nodeDefs = createGraph(this.nodes, this.width);
+
+		this.graphIndex = new GraphIndex(this.nodeDefs);
+
+		this.head = (this.nodeDefs.get(this.nodeDefs.size() - 1)).getName();
+	}
+
+	@Benchmark
+	public GraphIndex index(){
+		return new GraphIndex(this.nodeDefs);
+	}
+
+	@Benchmark
+	public List<NodeDef> getInputs(){
+		return this.graphIndex.getInputs(this.head, "Placeholder");
+	}
+
+	static
+	private List<NodeDef> createGraph(int nodes, int width){
+		List<NodeDef> result = new ArrayList<>(nodes + 1);
+
+		int layers = Math.max(nodes / width, 1);
+
+		for(int layer = 0; layer < layers; layer++){
+
+			for(int i = 0; i < width; i++){
+				NodeDef.Builder builder = NodeDef.newBuilder()
+					.setName("layer_" + layer + "/node_" + i);
+
+				if(layer == 0){
+					builder.setOp("Placeholder");
+				} else
+
+				{
+					builder
+						.setOp("Add")
+						.addInput("layer_" + (layer - 1) + "/node_" + i)
+						.addInput("layer_" + (layer - 1) + "/node_" + ((i + 1) % width) + ":0");
+				}
+
+				result.add(builder.build());
+			}
+		}
+
+		NodeDef.Builder builder = NodeDef.newBuilder()
+			.setName("head")
+			.setOp("AddN");
+
+		for(int i = 0; i < width; i++){
+			builder.addInput("layer_" + (layers - 1) + "/node_" + i);
+		}
+
+		result.add(builder.build());
+
+		return result;
+	}
+}
@@ -18,6 +18,8 @@
  */
 package org.jpmml.tensorflow;
 
+import java.util.Collections;
+
 import org.jpmml.evaluator.PMMLEquivalence;
 import org.junit.Test;
 
@@ -32,6 +34,11 @@ public class LinearClassifierTest extends EstimatorTest {
 		evaluate("LinearClassification", "Audit");
 	}
 
+	@Test
+	public void evaluateAuditFolded() throws Exception {
+		evaluate("LinearClassification", "Audit", Collections.singletonMap(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, Boolean.TRUE));
+	}
+
 	@Test
 	public void evaluateIris() throws Exception {
 		evaluate("LinearClassification", "Iris");
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LookupTableTest {
+
+	@Test
+	public void stringIntTable(){
+		Map<?, ?> table = SavedModel.createTable(new String[]{"b", "a", "", "\u00e4", "a"}, new long[]{0, 1, 2, 3, 4});
+
+		assertTrue(table instanceof StringIntTable);
+
+		assertEquals(Arrays.asList("b", "a", "", "\u00e4"), new ArrayList<>(table.keySet()));
+		assertEquals(Arrays.asList(0L, 4L, 2L, 3L), new ArrayList<>(table.values()));
+
+		assertEquals(4L, table.get("a"));
+		assertEquals(2L, table.get(""));
+		assertEquals(3L, table.get("\u00e4"));
+
+		assertTrue(table.containsKey("b"));
+		assertFalse(table.containsKey("c"));
+		assertFalse(table.containsKey(1L));
+
+		assertNull(table.get("c"));
+		assertNull(table.get(null));
+	}
+
+	@Test
+	public void longIntTable(){
+		Map<?, ?> table = SavedModel.createTable(new long[]{Long.MAX_VALUE, -1L, 0L, 1L << 32}, new int[]{0, 1, 2, 3});
+
+		assertTrue(table instanceof LongIntTable);
+
+		assertEquals(Arrays.asList(Long.MAX_VALUE, -1L, 0L, 1L << 32), new ArrayList<>(table.keySet()));
+
+		assertEquals(1, table.get(-1L));
+		assertEquals(3, table.get(1L << 32));
+
+		assertNull(table.get(1L));
+		assertNull(table.get(0));
+	}
+
+	@Test
+	public void equivalence(){
+		int size = 100000;
+
+		String[] stringKeys = new String[size];
+		long[] longKeys = new long[size];
+		long[] values = new long[size];
+
+		for(int i = 0; i < size; i++){
+			stringKeys[i] = "value_" + (size - i);
+			longKeys[i] = (long)(size - i) * 31L;
+			values[i] = i;
+		}
+
+		Map<Object, Object> expectedStringTable = new LinkedHashMap<>();
+		Map<Object, Object> expectedLongTable = new LinkedHashMap<>();
+
+		for(int i = 0; i < size; i++){
+			expectedStringTable.put(stringKeys[i], values[i]);
+			expectedLongTable.put(longKeys[i], values[i]);
+		}
+
+		Map<?, ?> stringTable = SavedModel.createTable(stringKeys, values);
+		Map<?, ?> longTable = SavedModel.createTable(longKeys, values);
+
+		assertEquals(expectedStringTable, stringTable);
+		assertEquals(new ArrayList<>(expectedStringTable.keySet()), new ArrayList<>(stringTable.keySet()));
+
+		assertEquals(expectedLongTable, longTable);
+		assertEquals(new ArrayList<>(expectedLongTable.keySet()), new ArrayList<>(longTable.keySet()));
+	}
+
+	@Test
+	public void boxedTable(){
+		Map<?, ?> table = SavedModel.createTable(new String[]{"a", "b"}, new long[]{0, 1L << 32});
+
+		assertTrue(table instanceof LinkedHashMap);
+
+		assertEquals(1L << 32, table.get("b"));
+	}
+}
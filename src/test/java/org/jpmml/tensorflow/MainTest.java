@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.beust.jcommander.JCommander;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDir;
+import static org.jpmml.tensorflow.TestUtil.toXMLString;
+import static org.jpmml.tensorflow.TestUtil.unmarshalPMML;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MainTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void runBatch() throws Exception {
+		File invalidDir = this.temporaryFolder.newFolder("Invalid");
+		File outputDir = this.temporaryFolder.newFolder("pmml");
+
+		Main main = parse("--tf-inputs", getSavedModelDir("LinearClassificationIris").getPath(), invalidDir.getPath(), getSavedModelDir("DNNRegressionAuto").getPath(), "--pmml-output-dir", outputDir.getPath(), "--threads", "2");
+
+		try {
+			main.run();
+
+			fail();
+		} catch(IllegalStateException ise){
+			assertEquals("Failed to convert 1 of 3 SavedModel directories", ise.getMessage());
+		}
+
+		assertTrue((new File(outputDir, "LinearClassificationIris.pmml")).length() > 0);
+		assertTrue((new File(outputDir, "DNNRegressionAuto.pmml")).length() > 0);
+
+		assertFalse((new File(outputDir, "Invalid.pmml")).exists());
+	}
+
+	@Test
+	public void runCompressed() throws Exception {
+		File savedModelDir = getSavedModelDir("DNNClassificationIris");
+
+		File output = this.temporaryFolder.newFile("DNNClassificationIris.pmml");
+		File compressedOutput = this.temporaryFolder.newFile("DNNClassificationIris.pmml.gz");
+		File streamingCompressedOutput = this.temporaryFolder.newFile("DNNClassificationIris-streaming.pmml.gz");
+
+		(parse("--tf-input", savedModelDir.getPath(), "--pmml-output", output.getPath())).run();
+		(parse("--tf-input", savedModelDir.getPath(), "--pmml-output", compressedOutput.getPath(), "--pmml-compress", "true")).run();
+		(parse("--tf-input", savedModelDir.getPath(), "--pmml-output", streamingCompressedOutput.getPath(), "--pmml-compress", "true", "--pmml-streaming", "true")).run();
+
+		String expectedPMML;
+
+		try(InputStream is = new FileInputStream(output)){
+			expectedPMML = toXMLString(unmarshalPMML(is));
+		}
+
+		assertTrue(compressedOutput.length() < output.length());
+
+		try(InputStream is = new GZIPInputStream(new FileInputStream(compressedOutput))){
+			assertEquals(expectedPMML, toXMLString(unmarshalPMML(is)));
+		}
+
+		try(InputStream is = new GZIPInputStream(new FileInputStream(streamingCompressedOutput))){
+			assertEquals(expectedPMML, toXMLString(unmarshalPMML(is)));
+		}
+	}
+
+	static
+	private Main parse(String... args){
+		Main main = new Main();
+
+		JCommander commander = new JCommander(main);
+		commander.parse(args);
+
+		main.validate();
+
+		return main;
+	}
+}
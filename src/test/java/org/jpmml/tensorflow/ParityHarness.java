@@ -0,0 +1,809 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+import javax.xml.transform.stream.StreamSource;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import org.dmg.pmml.DataField;
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.OpType;
+import org.dmg.pmml.PMML;
+import org.jpmml.evaluator.Evaluator;
+import org.jpmml.evaluator.EvaluatorUtil;
+import org.jpmml.evaluator.FieldValue;
+import org.jpmml.evaluator.FieldValueUtil;
+import org.jpmml.evaluator.HasProbability;
+import org.jpmml.evaluator.InputField;
+import org.jpmml.evaluator.ModelEvaluatorFactory;
+import org.jpmml.evaluator.TargetField;
+import org.jpmml.model.JAXBUtil;
+import org.tensorflow.DataType;
+import org.tensorflow.SavedModelBundle;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+import org.tensorflow.framework.SignatureDef;
+import org.tensorflow.framework.TensorInfo;
+
+/**
+ * <p>
+ * Scores a CSV file with the native TensorFlow runtime and with the PMML document, and compares the results.
+ * </p>
+ *
+ * Every batch of records is fed through the serving signature of the SavedModel and through the PMML evaluator at the same time.
+ * The report lists the greatest and the mean absolute deviation per output field, and the throughput and latency percentiles of either side.
+ * The exit status is non-zero if any deviation exceeds the tolerance.
+ *
+ * <pre>
+ * $ mvn -Pparity test -Dparity.args="--tf-input savedmodel/ --csv-input records.csv"
+ * </pre>
+ */
+public class ParityHarness {
+
+	@Parameter (
+		names = "--help",
+		description = "Show the list of configuration options and exit",
+		help = true
+	)
+	private boolean help = false;
+
+	@Parameter (
+		names = {"--tf-input", "--tf-savedmodel-input"},
+		description = "TF SavedModel input directory",
+		required = true
+	)
+	private File input = null;
+
+	@Parameter (
+		names = "--pmml-input",
+		description = "PMML input file. If not specified, the SavedModel directory is converted in-process"
+	)
+	private File pmmlInput = null;
+
+	@Parameter (
+		names = "--csv-input",
+		description = "CSV input file. The header row names the inputs of the serving signature",
+		required = true
+	)
+	private File csvInput = null;
+
+	@Parameter (
+		names = "--separator",
+		description = "CSV separator character"
+	)
+	private String separator = ",";
+
+	@Parameter (
+		names = "--signature",
+		description = "The key of the serving signature"
+	)
+	private String signature = "serving_default";
+
+	@Parameter (
+		names = "--batch-size",
+		description = "The number of records per TF session run"
+	)
+	private int batchSize = 1000;
+
+	@Parameter (
+		names = "--precision",
+		description = "The tolerance of a PMML result, relative to the TF result"
+	)
+	private double precision = 1e-5;
+
+	@Parameter (
+		names = "--zero-threshold",
+		description = "The tolerance of a PMML result, absolute"
+	)
+	private double zeroThreshold = 1e-6;
+
+	@Parameter (
+		names = "--parallel",
+		description = "Score every batch with TF and PMML at the same time. If false, the two sides take turns, so that they do not compete for CPU",
+		arity = 1
+	)
+	private boolean parallel = true;
+
+
+	static
+	public void main(String[] args) throws Exception {
+		ParityHarness parityHarness = new ParityHarness();
+
+		JCommander commander = new JCommander(parityHarness);
+		commander.setProgramName(ParityHarness.class.getName());
+
+		try {
+			commander.parse(args);
+
+			parityHarness.validate();
+		} catch(ParameterException pe){
+			StringBuilder sb = new StringBuilder();
+
+			sb.append(pe.toString());
+			sb.append("\n");
+
+			commander.usage(sb);
+
+			System.err.println(sb.toString());
+
+			System.exit(-1);
+		}
+
+		if(parityHarness.help){
+			StringBuilder sb = new StringBuilder();
+
+			commander.usage(sb);
+
+			System.out.println(sb.toString());
+
+			System.exit(0);
+		}
+
+		boolean passed = parityHarness.run();
+
+		System.exit(passed ? 0 : 1);
+	}
+
+	private void validate(){
+
+		if(this.separator.length() != 1){
+			throw new ParameterException("Option --separator must be a single character");
+		} // End if
+
+		if(this.batchSize < 1){
+			throw new ParameterException("Option --batch-size must be positive");
+		} // End if
+
+		if(this.precision < 0d || this.zeroThreshold < 0d){
+			throw new ParameterException("Options --precision and --zero-threshold must not be negative");
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if all deviations are within the tolerance, <code>false</code> otherwise.
+	 */
+	public boolean run() throws Exception {
+		SavedModelBundle bundle = SavedModelBundle.load(this.input.getAbsolutePath(), "serve");
+
+		try(SavedModel savedModel = new SavedModel(bundle)){
+			PMML pmml;
+
+			if(this.pmmlInput != null){
+
+				try(InputStream is = new FileInputStream(this.pmmlInput)){
+					pmml = JAXBUtil.unmarshalPMML(new StreamSource(is));
+				}
+			} else
+
+			{
+				EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+				Estimator estimator = estimatorFactory.newEstimator(savedModel);
+
+				pmml = estimator.encodePMML();
+			}
+
+			ModelEvaluatorFactory modelEvaluatorFactory = ModelEvaluatorFactory.newInstance();
+
+			Evaluator evaluator = modelEvaluatorFactory.newModelEvaluator(pmml);
+
+			SignatureDef signatureDef = (savedModel.getMetaGraphDef()).getSignatureDefMap().get(this.signature);
+			if(signatureDef == null){
+				throw new IllegalArgumentException("SavedModel does not contain signature " + this.signature);
+			}
+
+			return run(savedModel.getSession(), signatureDef, evaluator);
+		}
+	}
+
+	private boolean run(Session session, SignatureDef signatureDef, Evaluator evaluator) throws Exception {
+		ExecutorService executorService = ExecutorUtil.createExecutorService("parity", this.parallel ? 2 : 1);
+
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.csvInput), StandardCharsets.UTF_8), 1024 * 1024)){
+			Pattern pattern = Pattern.compile(Pattern.quote(this.separator));
+
+			String line = reader.readLine();
+			if(line == null){
+				throw new IllegalArgumentException("CSV file " + this.csvInput + " is empty");
+			}
+
+			List<String> header = Arrays.asList(pattern.split(line, -1));
+
+			TensorFlowSide tensorFlowSide = new TensorFlowSide(session, signatureDef, header, evaluator);
+			PMMLSide pmmlSide = new PMMLSide(evaluator, header);
+
+			List<String> names = pmmlSide.getNames();
+
+			Deviation[] deviations = new Deviation[names.size()];
+			for(int i = 0; i < deviations.length; i++){
+				deviations[i] = new Deviation();
+			}
+
+			long count = 0;
+
+			while(true){
+				List<String[]> records = new ArrayList<>(this.batchSize);
+
+				while(records.size() < this.batchSize && (line = reader.readLine()) != null){
+
+					if(line.isEmpty()){
+						continue;
+					}
+
+					String[] record = pattern.split(line, -1);
+					if(record.length != header.size()){
+						throw new IllegalArgumentException("Expected " + header.size() + " values, got " + record.length + " values: " + line);
+					}
+
+					records.add(record);
+				}
+
+				if(records.isEmpty()){
+					break;
+				}
+
+				List<double[][]> results;
+
+				if(this.parallel){
+					results = ExecutorUtil.invokeAll(executorService, Arrays.asList(tensorFlowSide.createTask(records), pmmlSide.createTask(records)));
+				} else
+
+				{
+					results = new ArrayList<>();
+					results.addAll(ExecutorUtil.invokeAll(executorService, Collections.singletonList(tensorFlowSide.createTask(records))));
+					results.addAll(ExecutorUtil.invokeAll(executorService, Collections.singletonList(pmmlSide.createTask(records))));
+				}
+
+				double[][] expected = results.get(0);
+				double[][] actual = results.get(1);
+
+				for(int i = 0; i < deviations.length; i++){
+					Deviation deviation = deviations[i];
+
+					for(int r = 0; r < records.size(); r++){
+						deviation.update(expected[i][r], actual[i][r], this.precision, this.zeroThreshold);
+					}
+				}
+
+				count += records.size();
+			}
+
+			return report(count, names, deviations, tensorFlowSide, pmmlSide);
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private boolean report(long count, List<String> names, Deviation[] deviations, TensorFlowSide tensorFlowSide, PMMLSide pmmlSide){
+		boolean passed = true;
+
+		System.out.println("Records: " + count);
+		System.out.println();
+		System.out.println(String.format("%-24s %14s %14s %10s", "Field", "Max deviation", "Mean deviation", "Failures"));
+
+		for(int i = 0; i < names.size(); i++){
+			Deviation deviation = deviations[i];
+
+			System.out.println(String.format("%-24s %14.6e %14.6e %10d", names.get(i), deviation.max, (deviation.count > 0 ? deviation.sum / deviation.count : 0d), deviation.failures));
+
+			passed &= (deviation.failures == 0);
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-24s %14s %12s %12s %12s %12s", "Side", "Records/s", "p50", "p90", "p99", "Max"));
+
+		report("TF (per batch)", count, tensorFlowSide.getLatencies());
+		report("PMML (per record)", count, pmmlSide.getLatencies());
+
+		System.out.println();
+		System.out.println(passed ? "PASSED" : "FAILED");
+
+		return passed;
+	}
+
+	static
+	private void report(String name, long count, Latencies latencies){
+		double seconds = latencies.getTotal() / 1e9;
+
+		System.out.println(String.format("%-24s %14.1f %12s %12s %12s %12s", name, (seconds > 0d ? count / seconds : 0d),
+			formatNanos(latencies.getPercentile(0.50)), formatNanos(latencies.getPercentile(0.90)), formatNanos(latencies.getPercentile(0.99)), formatNanos(latencies.getPercentile(1d))));
+	}
+
+	static
+	private String formatNanos(long nanos){
+
+		if(nanos >= 1000L * 1000L){
+			return String.format("%.2f ms", nanos / 1e6);
+		}
+
+		return String.format("%.2f us", nanos / 1e3);
+	}
+
+	/**
+	 * <p>
+	 * Feeds records to the serving signature.
+	 * </p>
+	 *
+	 * The outputs of a classifier are compared by the <code>probabilities</code> output, whose columns are in the order of target categories.
+	 * The output of a regressor is compared by the <code>outputs</code> output.
+	 */
+	static
+	private class TensorFlowSide {
+
+		private Session session = null;
+
+		private List<String> inputNames = new ArrayList<>();
+
+		private List<TensorInfo> inputInfos = new ArrayList<>();
+
+		private int[] columns = null;
+
+		private TensorInfo outputInfo = null;
+
+		private int outputCount = 0;
+
+		private Latencies latencies = new Latencies();
+
+
+		private TensorFlowSide(Session session, SignatureDef signatureDef, List<String> header, Evaluator evaluator){
+			this.session = session;
+
+			Map<String, TensorInfo> inputs = signatureDef.getInputsMap();
+
+			this.columns = new int[inputs.size()];
+
+			for(Map.Entry<String, TensorInfo> entry : inputs.entrySet()){
+				String name = entry.getKey();
+
+				int column = header.indexOf(name);
+				if(column < 0){
+					throw new IllegalArgumentException("CSV file does not contain column " + name);
+				}
+
+				this.columns[this.inputNames.size()] = column;
+
+				this.inputNames.add(name);
+				this.inputInfos.add(entry.getValue());
+			}
+
+			TargetField targetField = evaluator.getTargetFields().get(0);
+
+			Map<String, TensorInfo> outputs = signatureDef.getOutputsMap();
+
+			String outputName;
+
+			if((OpType.CATEGORICAL).equals(targetField.getOpType())){
+				outputName = "probabilities";
+
+				this.outputCount = (FieldValueUtil.getTargetCategories(targetField.getDataField())).size();
+			} else
+
+			{
+				outputName = "outputs";
+
+				this.outputCount = 1;
+			}
+
+			this.outputInfo = outputs.get(outputName);
+			if(this.outputInfo == null){
+				throw new IllegalArgumentException("Signature does not contain output " + outputName);
+			}
+		}
+
+		public Callable<double[][]> createTask(final List<String[]> records){
+			return new Callable<double[][]>(){
+
+				@Override
+				public double[][] call(){
+					return TensorFlowSide.this.score(records);
+				}
+			};
+		}
+
+		private double[][] score(List<String[]> records){
+			int count = records.size();
+
+			long begin = System.nanoTime();
+
+			List<Tensor<?>> inputTensors = new ArrayList<>();
+
+			try {
+				Session.Runner runner = this.session.runner();
+
+				for(int i = 0; i < this.inputInfos.size(); i++){
+					TensorInfo inputInfo = this.inputInfos.get(i);
+
+					Tensor<?> tensor = createTensor(this.inputNames.get(i), inputInfo, records, this.columns[i]);
+
+					inputTensors.add(tensor);
+
+					runner.feed(inputInfo.getName(), tensor);
+				}
+
+				runner.fetch(this.outputInfo.getName());
+
+				double[][] result = new double[this.outputCount][count];
+
+				try(TensorList outputTensors = new TensorList(runner.run())){
+					Tensor<?> tensor = outputTensors.get(0);
+
+					if(tensor.numElements() != count * this.outputCount){
+						throw new IllegalArgumentException("Expected " + (count * this.outputCount) + " output elements, got " + tensor.numElements() + " output elements");
+					}
+
+					DataType dataType = tensor.dataType();
+
+					switch(dataType){
+						case FLOAT:
+							{
+								FloatBuffer buffer = FloatBuffer.allocate(tensor.numElements());
+
+								tensor.writeTo(buffer);
+
+								for(int r = 0; r < count; r++){
+
+									for(int i = 0; i < this.outputCount; i++){
+										result[i][r] = buffer.get(r * this.outputCount + i);
+									}
+								}
+							}
+							break;
+						case DOUBLE:
+							{
+								DoubleBuffer buffer = DoubleBuffer.allocate(tensor.numElements());
+
+								tensor.writeTo(buffer);
+
+								for(int r = 0; r < count; r++){
+
+									for(int i = 0; i < this.outputCount; i++){
+										result[i][r] = buffer.get(r * this.outputCount + i);
+									}
+								}
+							}
+							break;
+						default:
+							throw new IllegalArgumentException("Output data type " + dataType + " is not supported");
+					}
+				}
+
+				return result;
+			} finally {
+
+				for(Tensor<?> tensor : inputTensors){
+					tensor.close();
+				}
+
+				long end = System.nanoTime();
+
+				this.latencies.add(end - begin);
+			}
+		}
+
+		public Latencies getLatencies(){
+			return this.latencies;
+		}
+
+		static
+		private Tensor<?> createTensor(String name, TensorInfo inputInfo, List<String[]> records, int column){
+			int count = records.size();
+
+			long[] shape = ((inputInfo.getTensorShape()).getDimCount() > 1 ? new long[]{count, 1} : new long[]{count});
+
+			org.tensorflow.framework.DataType dataType = inputInfo.getDtype();
+
+			switch(dataType){
+				case DT_DOUBLE:
+					{
+						double[] values = new double[count];
+
+						for(int r = 0; r < count; r++){
+							values[r] = parseDouble(name, (records.get(r))[column]);
+						}
+
+						return Tensor.create(shape, DoubleBuffer.wrap(values));
+					}
+				case DT_FLOAT:
+					{
+						float[] values = new float[count];
+
+						for(int r = 0; r < count; r++){
+							values[r] = (float)parseDouble(name, (records.get(r))[column]);
+						}
+
+						return Tensor.create(shape, FloatBuffer.wrap(values));
+					}
+				case DT_INT64:
+					{
+						long[] values = new long[count];
+
+						for(int r = 0; r < count; r++){
+							values[r] = Long.parseLong((records.get(r))[column]);
+						}
+
+						return Tensor.create(shape, LongBuffer.wrap(values));
+					}
+				case DT_INT32:
+					{
+						int[] values = new int[count];
+
+						for(int r = 0; r < count; r++){
+							values[r] = Integer.parseInt((records.get(r))[column]);
+						}
+
+						return Tensor.create(shape, IntBuffer.wrap(values));
+					}
+				case DT_STRING:
+					{
+						byte[][] values = new byte[count][];
+
+						for(int r = 0; r < count; r++){
+							values[r] = ((records.get(r))[column]).getBytes(StandardCharsets.UTF_8);
+						}
+
+						if(shape.length > 1){
+							byte[][][] matrix = new byte[count][][];
+
+							for(int r = 0; r < count; r++){
+								matrix[r] = new byte[][]{values[r]};
+							}
+
+							return Tensor.create(matrix);
+						}
+
+						return Tensor.create(values);
+					}
+				default:
+					throw new IllegalArgumentException("Input " + name + " data type " + dataType + " is not supported");
+			}
+		}
+
+		static
+		private double parseDouble(String name, String value){
+
+			// Boolean fields are continuous in TensorFlow
+			if(("TRUE").equals(value) || ("FALSE").equals(value)){
+				return (("TRUE").equals(value) ? 1d : 0d);
+			}
+
+			try {
+				return Double.parseDouble(value);
+			} catch(NumberFormatException nfe){
+				throw new IllegalArgumentException("Input " + name + " value " + value + " is not a number", nfe);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Evaluates records one by one.
+	 * </p>
+	 */
+	static
+	private class PMMLSide {
+
+		private Evaluator evaluator = null;
+
+		private List<InputField> inputFields = null;
+
+		private int[] columns = null;
+
+		private FieldName targetName = null;
+
+		private List<String> categories = null;
+
+		private Latencies latencies = new Latencies();
+
+
+		private PMMLSide(Evaluator evaluator, List<String> header){
+			this.evaluator = evaluator;
+			this.inputFields = evaluator.getInputFields();
+
+			this.columns = new int[this.inputFields.size()];
+
+			for(int i = 0; i < this.inputFields.size(); i++){
+				InputField inputField = this.inputFields.get(i);
+
+				int column = header.indexOf((inputField.getName()).getValue());
+				if(column < 0){
+					throw new IllegalArgumentException("CSV file does not contain column " + inputField.getName());
+				}
+
+				this.columns[i] = column;
+			}
+
+			TargetField targetField = evaluator.getTargetFields().get(0);
+
+			this.targetName = targetField.getName();
+
+			if((OpType.CATEGORICAL).equals(targetField.getOpType())){
+				DataField dataField = targetField.getDataField();
+
+				this.categories = FieldValueUtil.getTargetCategories(dataField);
+			}
+		}
+
+		public List<String> getNames(){
+
+			if(this.categories != null){
+				List<String> result = new ArrayList<>();
+
+				for(String category : this.categories){
+					result.add("probability(" + category + ")");
+				}
+
+				return result;
+			}
+
+			return Collections.singletonList(this.targetName.getValue());
+		}
+
+		public Callable<double[][]> createTask(final List<String[]> records){
+			return new Callable<double[][]>(){
+
+				@Override
+				public double[][] call(){
+					return PMMLSide.this.score(records);
+				}
+			};
+		}
+
+		private double[][] score(List<String[]> records){
+			int count = records.size();
+
+			double[][] result = new double[(this.categories != null ? this.categories.size() : 1)][count];
+
+			Map<FieldName, FieldValue> arguments = new LinkedHashMap<>();
+
+			for(int r = 0; r < count; r++){
+				String[] record = records.get(r);
+
+				long begin = System.nanoTime();
+
+				for(int i = 0; i < this.inputFields.size(); i++){
+					InputField inputField = this.inputFields.get(i);
+
+					arguments.put(inputField.getName(), inputField.prepare(record[this.columns[i]]));
+				}
+
+				Map<FieldName, ?> results = this.evaluator.evaluate(arguments);
+
+				Object targetValue = results.get(this.targetName);
+
+				if(this.categories != null){
+					HasProbability hasProbability = (HasProbability)targetValue;
+
+					for(int i = 0; i < this.categories.size(); i++){
+						result[i][r] = hasProbability.getProbability(this.categories.get(i));
+					}
+				} else
+
+				{
+					result[0][r] = ((Number)EvaluatorUtil.decode(targetValue)).doubleValue();
+				}
+
+				long end = System.nanoTime();
+
+				this.latencies.add(end - begin);
+			}
+
+			return result;
+		}
+
+		public Latencies getLatencies(){
+			return this.latencies;
+		}
+	}
+
+	static
+	private class Deviation {
+
+		private double max = 0d;
+
+		private double sum = 0d;
+
+		private long count = 0;
+
+		private long failures = 0;
+
+
+		private void update(double expected, double actual, double precision, double zeroThreshold){
+			double deviation = Math.abs(expected - actual);
+
+			// NaN compares as a failure
+			if(!(deviation <= zeroThreshold + precision * Math.abs(expected))){
+				this.failures++;
+			} // End if
+
+			if(Double.isNaN(deviation)){
+				return;
+			}
+
+			this.max = Math.max(this.max, deviation);
+			this.sum += deviation;
+			this.count++;
+		}
+	}
+
+	static
+	private class Latencies {
+
+		private long[] values = new long[1024];
+
+		private int size = 0;
+
+		private long total = 0;
+
+
+		private void add(long value){
+
+			if(this.size == this.values.length){
+				this.values = Arrays.copyOf(this.values, this.values.length * 2);
+			}
+
+			this.values[this.size++] = value;
+
+			this.total += value;
+		}
+
+		public long getTotal(){
+			return this.total;
+		}
+
+		/**
+		 * @param quantile A value in range (0, 1].
+		 */
+		public long getPercentile(double quantile){
+
+			if(this.size == 0){
+				return 0L;
+			}
+
+			long[] values = Arrays.copyOf(this.values, this.size);
+
+			Arrays.sort(values);
+
+			int index = (int)Math.ceil(quantile * values.length) - 1;
+
+			return values[Math.max(index, 0)];
+		}
+	}
+}
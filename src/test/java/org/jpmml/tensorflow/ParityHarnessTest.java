@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Paths;
+
+import com.beust.jcommander.JCommander;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParityHarnessTest {
+
+	@Test
+	public void runLinearClassificationIris() throws Exception {
+		assertTrue(run("LinearClassificationIris", "Iris", "1e-5"));
+	}
+
+	@Test
+	public void runDNNClassificationAudit() throws Exception {
+		assertTrue(run("DNNClassificationAudit", "Audit", "6e-3"));
+
+		// The greatest deviation is around 1e-3
+		assertFalse(run("DNNClassificationAudit", "Audit", "1e-5"));
+	}
+
+	static
+	private boolean run(String name, String dataset, String precision) throws Exception {
+		ParityHarness parityHarness = new ParityHarness();
+
+		JCommander commander = new JCommander(parityHarness);
+		commander.parse("--tf-input", getFile("/savedmodel/" + name).getPath(), "--csv-input", getFile("/csv/" + dataset + ".csv").getPath(), "--batch-size", "100", "--precision", precision);
+
+		return parityHarness.run();
+	}
+
+	static
+	private File getFile(String path) throws Exception {
+		URL resource = (ParityHarnessTest.class).getResource(path);
+
+		return (Paths.get(resource.toURI())).toFile();
+	}
+}
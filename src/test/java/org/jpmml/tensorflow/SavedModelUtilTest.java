@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.google.protobuf.UnsafeByteOperations;
+import org.junit.Test;
+import org.tensorflow.SavedModelBundle;
+import org.tensorflow.Tensor;
+import org.tensorflow.framework.AttrValue;
+import org.tensorflow.framework.GraphDef;
+import org.tensorflow.framework.MetaGraphDef;
+import org.tensorflow.framework.NodeDef;
+import org.tensorflow.framework.TensorProto;
+
+import static org.jpmml.tensorflow.TestUtil.encodePMML;
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDir;
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDirs;
+import static org.jpmml.tensorflow.TestUtil.toXMLString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SavedModelUtilTest {
+
+	@Test
+	public void load() throws Exception {
+		File[] savedModelDirs = getSavedModelDirs();
+
+		for(File savedModelDir : savedModelDirs){
+			String nativePMML;
+
+			SavedModelBundle bundle = SavedModelBundle.load(savedModelDir.getAbsolutePath(), "serve");
+
+			try(SavedModel savedModel = new SavedModel(bundle)){
+				nativePMML = toXMLString(encodePMML(savedModel));
+			}
+
+			String javaPMML;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				javaPMML = toXMLString(encodePMML(savedModel));
+			}
+
+			assertEquals(savedModelDir.getName(), nativePMML, javaPMML);
+		}
+	}
+
+	@Test
+	public void pruneGraph() throws Exception {
+		File[] savedModelDirs = getSavedModelDirs();
+
+		for(File savedModelDir : savedModelDirs){
+			MetaGraphDef metaGraphDef = SavedModelUtil.readMetaGraphDef(savedModelDir, "serve");
+			MetaGraphDef prunedMetaGraphDef = SavedModelUtil.readMetaGraphDef(savedModelDir, "serve", true);
+
+			assertEquals(MetaGraphDefUtil.prune(metaGraphDef, EstimatorFactory.getHeads()), prunedMetaGraphDef);
+
+			int nodeCount = (metaGraphDef.getGraphDef()).getNodeCount();
+			int prunedNodeCount = (prunedMetaGraphDef.getGraphDef()).getNodeCount();
+
+			assertTrue(prunedNodeCount > 0 && prunedNodeCount < nodeCount);
+
+			String expectedPMML;
+
+			SavedModelBundle bundle = SavedModelBundle.load(savedModelDir.getAbsolutePath(), "serve");
+
+			try(SavedModel savedModel = new SavedModel(bundle)){
+				expectedPMML = toXMLString(encodePMML(savedModel));
+			}
+
+			String nativePMML;
+
+			bundle = SavedModelBundle.load(savedModelDir.getAbsolutePath(), "serve");
+
+			try(SavedModel savedModel = new SavedModel(bundle, true)){
+				nativePMML = toXMLString(encodePMML(savedModel));
+			}
+
+			assertEquals(savedModelDir.getName(), expectedPMML, nativePMML);
+
+			String javaPMML;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve", true)){
+				javaPMML = toXMLString(encodePMML(savedModel));
+			}
+
+			assertEquals(savedModelDir.getName(), expectedPMML, javaPMML);
+		}
+	}
+
+	@Test
+	public void readSidecarFile() throws Exception {
+		File savedModelDir = getSavedModelDir("LinearClassificationIris");
+
+		File dir = Files.createTempDirectory("savedmodel").toFile();
+
+		try {
+			File textFile = new File(dir, "saved_model.pbtxt");
+
+			Files.copy((new File(savedModelDir, "saved_model.pbtxt")).toPath(), textFile.toPath());
+
+			org.tensorflow.framework.SavedModel savedModel = SavedModelUtil.readSavedModel(dir);
+
+			// Sidecar files are opt-in
+			assertEquals(0, listSidecarFiles(dir).length);
+
+			assertEquals(savedModel, SavedModelUtil.readSavedModel(dir, true));
+
+			assertEquals(1, listSidecarFiles(dir).length);
+
+			MetaGraphDef prunedMetaGraphDef = MetaGraphDefUtil.prune(savedModel.getMetaGraphs(0), EstimatorFactory.getHeads());
+
+			assertEquals(savedModel, SavedModelUtil.readSavedModel(dir));
+			assertEquals(prunedMetaGraphDef, SavedModelUtil.readMetaGraphDef(dir, "serve", true));
+
+			File sidecarFile = listSidecarFiles(dir)[0];
+
+			// A corrupt sidecar file is deleted, and the text-format file is parsed instead
+			Files.write(sidecarFile.toPath(), new byte[]{(byte)0xFF});
+
+			assertEquals(savedModel, SavedModelUtil.readSavedModel(dir));
+
+			assertEquals(0, listSidecarFiles(dir).length);
+
+			assertEquals(savedModel, SavedModelUtil.readSavedModel(dir, true));
+
+			Files.write(sidecarFile.toPath(), new byte[]{(byte)0xFF});
+
+			assertEquals(prunedMetaGraphDef, SavedModelUtil.readMetaGraphDef(dir, "serve", true));
+
+			assertEquals(0, listSidecarFiles(dir).length);
+
+			assertEquals(savedModel, SavedModelUtil.readSavedModel(dir, true));
+
+			// A changed text-format file invalidates the sidecar file
+			Files.write(textFile.toPath(), Arrays.asList("# Comment"), StandardOpenOption.APPEND);
+
+			assertEquals(savedModel, SavedModelUtil.readSavedModel(dir, true));
+
+			File[] sidecarFiles = listSidecarFiles(dir);
+
+			assertEquals(1, sidecarFiles.length);
+			assertNotEquals(sidecarFile, sidecarFiles[0]);
+		} finally {
+			for(File file : dir.listFiles()){
+				file.delete();
+			}
+
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void readLargeSavedModel() throws Exception {
+		// Over the default size limit of protobuf input streams (64 MB)
+		byte[] content = new byte[65 * 1024 * 1024];
+
+		NodeDef nodeDef = NodeDef.newBuilder()
+			.setName("large")
+			.setOp("Const")
+			.putAttr("value", AttrValue.newBuilder().setTensor(TensorProto.newBuilder().setTensorContent(UnsafeByteOperations.unsafeWrap(content))).build())
+			.build();
+
+		org.tensorflow.framework.SavedModel savedModel = org.tensorflow.framework.SavedModel.newBuilder()
+			.addMetaGraphs(MetaGraphDef.newBuilder().setGraphDef(GraphDef.newBuilder().addNode(nodeDef)))
+			.build();
+
+		File dir = Files.createTempDirectory("savedmodel").toFile();
+
+		File binaryFile = new File(dir, "saved_model.pb");
+
+		try {
+			try(OutputStream os = new FileOutputStream(binaryFile)){
+				savedModel.writeTo(os);
+			}
+
+			savedModel = null;
+
+			org.tensorflow.framework.SavedModel parsedSavedModel = SavedModelUtil.readSavedModel(dir, false);
+
+			NodeDef parsedNodeDef = (parsedSavedModel.getMetaGraphs(0)).getGraphDef().getNode(0);
+
+			assertEquals(content.length, (((parsedNodeDef.getAttrOrThrow("value")).getTensor()).getTensorContent()).size());
+		} finally {
+			binaryFile.delete();
+
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void readVariables() throws Exception {
+		File savedModelDir = getSavedModelDir("DNNClassificationIris");
+
+		SavedModelBundle bundle = SavedModelBundle.load(savedModelDir.getAbsolutePath(), "serve");
+
+		try(SavedModel savedModel = new SavedModel(bundle); CheckpointReader checkpointReader = new CheckpointReader(new File(savedModelDir, "variables/variables"))){
+
+			for(String key : checkpointReader.getKeys()){
+				Object expectedValues;
+
+				try(Tensor tensor = savedModel.run(key)){
+					expectedValues = TensorUtil.toArray(tensor);
+				}
+
+				Object actualValues = checkpointReader.getValues(key);
+
+				assertArrayEquals(key, (TensorUtil.asList(expectedValues)).toArray(), (TensorUtil.asList(actualValues)).toArray());
+			}
+		}
+	}
+
+	static
+	private File[] listSidecarFiles(File dir){
+		FilenameFilter filter = new FilenameFilter(){
+
+			@Override
+			public boolean accept(File dir, String name){
+				return name.startsWith(".saved_model.pbtxt-") && name.endsWith(".pb");
+			}
+		};
+
+		return dir.listFiles(filter);
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.PMML;
+import org.jpmml.evaluator.Evaluator;
+import org.jpmml.evaluator.EvaluatorUtil;
+import org.jpmml.evaluator.FieldValue;
+import org.jpmml.evaluator.HasProbability;
+import org.jpmml.evaluator.InputField;
+import org.jpmml.evaluator.ModelEvaluatorFactory;
+import org.junit.Test;
+
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDir;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScorerTest {
+
+	@Test
+	public void evaluateDNNClassificationAudit() throws Exception {
+		evaluate("DNNClassification", "Audit", 6e-3);
+	}
+
+	@Test
+	public void evaluateDNNClassificationIris() throws Exception {
+		evaluate("DNNClassification", "Iris", 6e-3);
+	}
+
+	@Test
+	public void evaluateDNNRegressionAuto() throws Exception {
+		evaluate("DNNRegression", "Auto", 1e-5);
+	}
+
+	@Test
+	public void evaluateLinearClassificationAudit() throws Exception {
+		evaluate("LinearClassification", "Audit", 1e-5);
+	}
+
+	@Test
+	public void evaluateLinearClassificationIris() throws Exception {
+		evaluate("LinearClassification", "Iris", 1e-5);
+	}
+
+	@Test
+	public void evaluateLinearRegressionAuto() throws Exception {
+		evaluate("LinearRegression", "Auto", 1e-5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void encodeFolded() throws Exception {
+
+		try(SavedModel savedModel = SavedModelUtil.load(getSavedModelDir("DNNClassificationAudit"), "serve")){
+			EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+			Estimator estimator = estimatorFactory.newEstimator(savedModel);
+			estimator.putOption(Estimator.OPTION_FOLD_CATEGORICAL_INPUTS, Boolean.TRUE);
+
+			estimator.encodeScorer();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Compares the scorer with the PMML document that it was compiled from, on every record of the dataset.
+	 * </p>
+	 *
+	 * @param precision The relative tolerance. Scorers sum up float terms in a different order than the PMML evaluator.
+	 */
+	private void evaluate(String name, String dataset, double precision) throws Exception {
+		PMML pmml;
+
+		try(SavedModel savedModel = SavedModelUtil.load(getSavedModelDir(name + dataset), "serve")){
+			EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+			Estimator estimator = estimatorFactory.newEstimator(savedModel);
+
+			pmml = estimator.encodePMML();
+		}
+
+		Scorer scorer = ScorerUtil.createScorer(pmml);
+
+		ModelEvaluatorFactory modelEvaluatorFactory = ModelEvaluatorFactory.newInstance();
+
+		Evaluator evaluator = modelEvaluatorFactory.newModelEvaluator(pmml);
+
+		List<InputField> inputFields = evaluator.getInputFields();
+
+		FieldName targetName = evaluator.getTargetFields().get(0).getName();
+
+		List<Map<String, String>> records = loadRecords(dataset);
+
+		double[] in = new double[scorer.getInputCount()];
+		double[] out = new double[scorer.getOutputCount()];
+
+		List<double[]> inputs = new ArrayList<>();
+
+		for(Map<String, String> record : records){
+			Map<FieldName, FieldValue> arguments = new LinkedHashMap<>();
+
+			for(InputField inputField : inputFields){
+				FieldName fieldName = inputField.getName();
+
+				arguments.put(fieldName, inputField.prepare(record.get(fieldName.getValue())));
+			}
+
+			Map<FieldName, ?> results = evaluator.evaluate(arguments);
+
+			Object targetValue = results.get(targetName);
+
+			encode(scorer, record, in);
+
+			scorer.score(in, out);
+
+			List<String> outputNames = scorer.getOutputNames();
+
+			for(int i = 0; i < outputNames.size(); i++){
+				double expectedValue;
+
+				if(targetValue instanceof HasProbability){
+					expectedValue = ((HasProbability)targetValue).getProbability(outputNames.get(i));
+				} else
+
+				{
+					expectedValue = ((Number)EvaluatorUtil.decode(targetValue)).doubleValue();
+				}
+
+				assertEquals(record.toString(), expectedValue, out[i], 1e-6 + precision * Math.abs(expectedValue));
+			}
+
+			inputs.add(in.clone());
+		}
+
+		evaluateBatch(scorer, inputs);
+
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+		if(threadMXBean instanceof com.sun.management.ThreadMXBean){
+			com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean)threadMXBean;
+
+			long threadId = (Thread.currentThread()).getId();
+
+			long begin = allocationMXBean.getThreadAllocatedBytes(threadId);
+
+			for(int i = 0; i < 10; i++){
+
+				for(double[] input : inputs){
+					scorer.score(input, out);
+				}
+			}
+
+			long end = allocationMXBean.getThreadAllocatedBytes(threadId);
+
+			// Leeway for the allocations of the measurement itself
+			assertTrue(name + dataset + " allocated " + (end - begin) + " bytes", (end - begin) < 1024);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Compares batch scoring with record-at-a-time scoring.
+	 * Both sum up terms in the same order, so their results are identical.
+	 * </p>
+	 */
+	static
+	private void evaluateBatch(Scorer scorer, List<double[]> inputs){
+		int count = inputs.size();
+
+		Object[] columns = new Object[scorer.getInputCount()];
+
+		for(int i = 0; i < columns.length; i++){
+
+			if(scorer.getCategories(i) != null){
+				int[] column = new int[count];
+
+				for(int r = 0; r < count; r++){
+					column[r] = (int)(inputs.get(r))[i];
+				}
+
+				columns[i] = column;
+			} else
+
+			{
+				double[] column = new double[count];
+
+				for(int r = 0; r < count; r++){
+					column[r] = (inputs.get(r))[i];
+				}
+
+				columns[i] = column;
+			}
+		}
+
+		double[][] batchOut = new double[scorer.getOutputCount()][count];
+
+		scorer.scoreBatch(columns, count, batchOut);
+
+		double[] out = new double[scorer.getOutputCount()];
+
+		for(int r = 0; r < count; r++){
+			scorer.score(inputs.get(r), out);
+
+			for(int i = 0; i < out.length; i++){
+				assertEquals(out[i], batchOut[i][r], 0d);
+			}
+		}
+	}
+
+	static
+	private void encode(Scorer scorer, Map<String, String> record, double[] in){
+		List<String> inputNames = scorer.getInputNames();
+
+		for(int i = 0; i < inputNames.size(); i++){
+			String value = record.get(inputNames.get(i));
+
+			if(scorer.getCategories(i) != null){
+				in[i] = scorer.encodeCategory(i, value);
+			} else
+
+			// Boolean fields are continuous in TensorFlow
+			if(("TRUE").equals(value) || ("FALSE").equals(value)){
+				in[i] = (("TRUE").equals(value) ? 1d : 0d);
+			} else
+
+			{
+				in[i] = Double.parseDouble(value);
+			}
+		}
+	}
+
+	static
+	private List<Map<String, String>> loadRecords(String dataset) throws Exception {
+		URL resource = (ScorerTest.class).getResource("/csv/" + dataset + ".csv");
+
+		List<String> lines = Files.readAllLines(Paths.get(resource.toURI()), StandardCharsets.UTF_8);
+
+		List<String> header = Arrays.asList(lines.get(0).split(","));
+
+		List<Map<String, String>> result = new ArrayList<>();
+
+		for(String line : lines.subList(1, lines.size())){
+			String[] values = line.split(",");
+
+			Map<String, String> record = new LinkedHashMap<>();
+
+			for(int i = 0; i < header.size(); i++){
+				record.put(header.get(i), values[i]);
+			}
+
+			result.add(record);
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import org.dmg.pmml.PMML;
+import org.junit.Test;
+
+import static org.jpmml.tensorflow.TestUtil.encodePMML;
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDir;
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDirs;
+import static org.jpmml.tensorflow.TestUtil.toXMLString;
+import static org.junit.Assert.assertEquals;
+
+public class SerializedPMMLUtilTest {
+
+	@Test
+	public void serialize() throws Exception {
+		File[] savedModelDirs = getSavedModelDirs();
+
+		for(File savedModelDir : savedModelDirs){
+			PMML pmml;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				pmml = encodePMML(savedModel);
+			}
+
+			String expectedPMML = toXMLString(pmml);
+
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+			SerializedPMMLUtil.serializePMML(pmml, os);
+
+			// Interning does not change the PMML class model object
+			assertEquals(savedModelDir.getName(), expectedPMML, toXMLString(pmml));
+
+			try(InputStream is = new ByteArrayInputStream(os.toByteArray())){
+				assertEquals(savedModelDir.getName(), expectedPMML, toXMLString(SerializedPMMLUtil.deserializePMML(is)));
+			}
+
+			File file = File.createTempFile("pmml", ".ser");
+
+			try {
+				try(OutputStream fos = new FileOutputStream(file)){
+					os.writeTo(fos);
+				}
+
+				assertEquals(savedModelDir.getName(), expectedPMML, toXMLString(SerializedPMMLUtil.deserializePMML(file)));
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void serializeStreaming() throws Exception {
+		try(SavedModel savedModel = SavedModelUtil.load(getSavedModelDir("DNNClassificationIris"), "serve")){
+			PMML pmml = encodePMML(savedModel, Collections.singletonMap(DNNEstimator.OPTION_STREAMING, Boolean.TRUE));
+
+			SerializedPMMLUtil.serializePMML(pmml, new ByteArrayOutputStream());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.dmg.pmml.PMML;
+import org.junit.Test;
+
+import static org.jpmml.tensorflow.TestUtil.encodePMML;
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDirs;
+import static org.jpmml.tensorflow.TestUtil.toXMLString;
+import static org.jpmml.tensorflow.TestUtil.unmarshalPMML;
+import static org.junit.Assert.assertEquals;
+
+public class StreamingPMMLUtilTest {
+
+	@Test
+	public void marshal() throws Exception {
+		File[] savedModelDirs = getSavedModelDirs();
+
+		for(File savedModelDir : savedModelDirs){
+
+			if(!(savedModelDir.getName()).startsWith("DNN")){
+				continue;
+			}
+
+			String expectedPMML;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				PMML pmml = encodePMML(savedModel);
+
+				expectedPMML = toXMLString(pmml);
+			}
+
+			String actualPMML;
+
+			try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+				PMML pmml = encodePMML(savedModel, Collections.singletonMap(DNNEstimator.OPTION_STREAMING, Boolean.TRUE));
+
+				ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+				StreamingPMMLUtil.marshalPMML(pmml, os);
+
+				try(InputStream is = new ByteArrayInputStream(os.toByteArray())){
+					pmml = unmarshalPMML(is);
+				}
+
+				actualPMML = toXMLString(pmml);
+			}
+
+			assertEquals(savedModelDir.getName(), expectedPMML, actualPMML);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TensorBufferPoolTest {
+
+	@Test
+	public void acquireAndRelease(){
+		int megabyte = 1024 * 1024;
+
+		TensorBufferPool bufferPool = new TensorBufferPool(3 * megabyte);
+
+		ByteBuffer small = bufferPool.acquire(10);
+		ByteBuffer large = bufferPool.acquire(megabyte + 1);
+
+		assertTrue(small.isDirect());
+
+		assertEquals(megabyte, small.capacity());
+		assertEquals(2 * megabyte, large.capacity());
+
+		bufferPool.release(small);
+		bufferPool.release(large);
+
+		assertEquals(3 * megabyte, bufferPool.getIdleBytes());
+
+		assertSame(large, bufferPool.acquire(megabyte + 10));
+		assertSame(small, bufferPool.acquire(megabyte));
+
+		bufferPool.release(bufferPool.acquire(4 * megabyte));
+
+		assertEquals(0L, bufferPool.getIdleBytes());
+
+		bufferPool.release(small);
+		bufferPool.release(large);
+
+		ByteBuffer medium = bufferPool.acquire(2 * megabyte);
+
+		assertSame(large, medium);
+
+		// Drops the small buffer to make room
+		bufferPool.release(bufferPool.acquire(2 * megabyte));
+		bufferPool.release(medium);
+
+		assertEquals(2 * megabyte, bufferPool.getIdleBytes());
+	}
+
+	@Test
+	public void toFloatBuffer(){
+		float[][] values = {
+			{1f, 2f, 3f},
+			{4f, 5f, 6f}
+		};
+
+		TensorBufferPool bufferPool = new TensorBufferPool(1024 * 1024);
+
+		try(Tensor tensor = Tensor.create(values)){
+			ByteBuffer buffer = bufferPool.acquire(tensor.numBytes());
+
+			try {
+				FloatBuffer floatBuffer = TensorUtil.toFloatBuffer(tensor, buffer);
+
+				assertEquals(6, floatBuffer.remaining());
+
+				try {
+					floatBuffer.put(0, 0f);
+
+					fail();
+				} catch(ReadOnlyBufferException robe){
+					// Ignored
+				}
+
+				FloatMatrix matrix = FloatMatrix.transpose(floatBuffer, 2, 3);
+
+				FloatMatrix expectedMatrix = (TensorUtil.toFloatMatrix(tensor)).transpose();
+
+				assertArrayEquals(expectedMatrix.getValues(), matrix.getValues(), 0f);
+			} finally {
+				bufferPool.release(buffer);
+			}
+
+			try {
+				TensorUtil.toIntBuffer(tensor, buffer);
+
+				fail();
+			} catch(IllegalArgumentException iae){
+				// Ignored
+			}
+		}
+	}
+}
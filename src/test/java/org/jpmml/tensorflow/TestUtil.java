@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.dmg.pmml.Header;
+import org.dmg.pmml.PMML;
+import org.jpmml.model.JAXBUtil;
+import org.jpmml.model.MetroJAXBUtil;
+
+class TestUtil {
+
+	private TestUtil(){
+	}
+
+	static
+	public File[] getSavedModelDirs() throws Exception {
+		URL resource = (TestUtil.class).getResource("/savedmodel");
+
+		return (Paths.get(resource.toURI())).toFile().listFiles();
+	}
+
+	static
+	public File getSavedModelDir(String name) throws Exception {
+		URL resource = (TestUtil.class).getResource("/savedmodel/" + name);
+
+		return (Paths.get(resource.toURI())).toFile();
+	}
+
+	static
+	public PMML encodePMML(SavedModel savedModel){
+		return encodePMML(savedModel, Collections.<String, Object>emptyMap());
+	}
+
+	/**
+	 * <p>
+	 * Encodes the PMML document without a timestamp, so that it can be compared with other PMML documents.
+	 * </p>
+	 */
+	static
+	public PMML encodePMML(SavedModel savedModel, Map<String, ?> options){
+		EstimatorFactory estimatorFactory = EstimatorFactory.newInstance();
+
+		Estimator estimator = estimatorFactory.newEstimator(savedModel);
+		(estimator.getOptions()).putAll(options);
+
+		PMML pmml = estimator.encodePMML();
+
+		Header header = pmml.getHeader();
+		header.setTimestamp(null);
+
+		return pmml;
+	}
+
+	static
+	public PMML unmarshalPMML(InputStream is) throws Exception {
+		return JAXBUtil.unmarshalPMML(new StreamSource(is));
+	}
+
+	/**
+	 * <p>
+	 * Clears the timestamp, and marshals the PMML document to a string.
+	 * </p>
+	 */
+	static
+	public String toXMLString(PMML pmml) throws Exception {
+		Header header = pmml.getHeader();
+		header.setTimestamp(null);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+		MetroJAXBUtil.marshalPMML(pmml, os);
+
+		return os.toString("UTF-8");
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class Utf8StringArrayTest {
+
+	@Test
+	public void decodeTensor(){
+		String[] values = {"a", "", Strings.repeat("x", 200), "\u00e4\u20ac", "a", Strings.repeat("\u00fc", 20000)};
+
+		byte[][] bytes = new byte[values.length][];
+
+		for(int i = 0; i < values.length; i++){
+			bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+		}
+
+		try(Tensor tensor = Tensor.create(bytes)){
+			Utf8StringArray array = TensorUtil.toUtf8StringArray(tensor);
+
+			assertEquals(values.length, array.size());
+
+			assertEquals(200, array.getLength(2));
+			assertEquals(40000, array.getLength(5));
+
+			String[] result = TensorUtil.toStringArray(tensor);
+
+			assertArrayEquals(values, result);
+
+			assertSame(result[0], result[4]);
+		}
+	}
+
+	@Test
+	public void select(){
+		Utf8StringArray array = Utf8StringArray.valueOf(new String[]{"a", "bb", "ccc"});
+
+		Utf8StringArray selectedArray = array.select(new int[]{2, 0});
+
+		assertArrayEquals(new String[]{"ccc", "a"}, selectedArray.toStringArray());
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2017 Villu Ruusmann
+ *
+ * This file is part of JPMML-TensorFlow
+ *
+ * JPMML-TensorFlow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPMML-TensorFlow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with JPMML-TensorFlow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jpmml.tensorflow;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Functions;
+import com.google.common.collect.Iterables;
+import org.dmg.pmml.FieldName;
+import org.dmg.pmml.MiningFunction;
+import org.dmg.pmml.PMML;
+import org.dmg.pmml.regression.RegressionModel;
+import org.dmg.pmml.regression.RegressionTable;
+import org.jpmml.evaluator.BatchUtil;
+import org.jpmml.evaluator.CsvUtil;
+import org.jpmml.evaluator.Evaluator;
+import org.jpmml.evaluator.EvaluatorUtil;
+import org.jpmml.evaluator.FieldValue;
+import org.jpmml.evaluator.InputField;
+import org.jpmml.evaluator.ModelEvaluatorFactory;
+import org.jpmml.evaluator.OutputField;
+import org.jpmml.evaluator.TargetField;
+import org.junit.Test;
+
+import static org.jpmml.tensorflow.TestUtil.getSavedModelDir;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WeightPrunerTest {
+
+	@Test
+	public void prune(){
+		float[] values = {
+			0.5f, -0.05f, 0f, 0.2f,
+			-0.01f, 0.09f, -1f, Float.NaN
+		};
+
+		FloatMatrix weights = new FloatMatrix(values, 2, 4);
+
+		WeightPruner weightPruner = new WeightPruner(0.1d, 0d);
+		weightPruner.prune(weights);
+
+		assertArrayEquals(new float[]{0.5f, 0f, 0f, 0.2f, 0f, 0f, -1f, Float.NaN}, values, 0f);
+
+		assertEquals(8L, weightPruner.getWeights());
+		assertEquals(3L, weightPruner.getPrunedWeights());
+		assertEquals(4L, weightPruner.getZeroWeights());
+		assertEquals(0.5d, weightPruner.getSparsity(), 0d);
+		assertEquals(0.01d + 0.09d, weightPruner.getMaxDroppedWeight(), 1e-7);
+
+		values = new float[]{
+			2f, 0.1f,
+			-0.3f, 0.01f
+		};
+
+		weights = new FloatMatrix(values, 2, 2, false);
+
+		weightPruner = new WeightPruner(0d, 0.1d);
+		weightPruner.prune(weights);
+
+		assertArrayEquals(new float[]{2f, 0f, -0.3f, 0f}, values, 0f);
+
+		assertEquals(2L, weightPruner.getPrunedWeights());
+		assertEquals(0.1d + 0.01d, weightPruner.getMaxDroppedWeight(), 1e-7);
+	}
+
+	@Test
+	public void pruneNeuralNetwork() throws Exception {
+		double deviation = evaluateDeviation("DNNClassification", "Audit", 0d, 0.01d);
+
+		assertTrue(deviation < 1e-3);
+
+		deviation = evaluateDeviation("DNNClassification", "Iris", 0d, 0.01d);
+
+		assertTrue(deviation < 5e-3);
+	}
+
+	@Test
+	public void pruneRegression() throws Exception {
+		File savedModelDir = getSavedModelDir("LinearClassificationAudit");
+
+		int expectedCount;
+
+		try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+			Estimator estimator = (EstimatorFactory.newInstance()).newEstimator(savedModel);
+
+			expectedCount = countPredictors(estimator.encodePMML());
+		}
+
+		int actualCount;
+
+		WeightPruner weightPruner;
+
+		try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+			Estimator estimator = (EstimatorFactory.newInstance()).newEstimator(savedModel);
+			estimator.putOption(Estimator.OPTION_PRUNE_THRESHOLD, 1e-3);
+
+			actualCount = countPredictors(estimator.encodePMML());
+
+			weightPruner = estimator.getWeightPruner();
+		}
+
+		assertTrue(weightPruner.getPrunedWeights() > 0L);
+
+		assertEquals(expectedCount - weightPruner.getPrunedWeights(), actualCount);
+	}
+
+	/**
+	 * @return The maximum absolute difference between the numeric output fields (eg. probabilities) of the pruned and the unpruned PMML documents, over all records of the dataset.
+	 */
+	static
+	private double evaluateDeviation(String name, String dataset, double threshold, double relativeThreshold) throws Exception {
+		File savedModelDir = getSavedModelDir(name + dataset);
+
+		Evaluator expectedEvaluator;
+		Evaluator actualEvaluator;
+
+		WeightPruner weightPruner;
+
+		try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+			Estimator estimator = (EstimatorFactory.newInstance()).newEstimator(savedModel);
+
+			expectedEvaluator = createEvaluator(estimator.encodePMML());
+		}
+
+		try(SavedModel savedModel = SavedModelUtil.load(savedModelDir, "serve")){
+			Estimator estimator = (EstimatorFactory.newInstance()).newEstimator(savedModel);
+			estimator.putOption(Estimator.OPTION_PRUNE_THRESHOLD, threshold);
+			estimator.putOption(Estimator.OPTION_PRUNE_RELATIVE_THRESHOLD, relativeThreshold);
+
+			actualEvaluator = createEvaluator(estimator.encodePMML());
+
+			weightPruner = estimator.getWeightPruner();
+		}
+
+		assertTrue(weightPruner.getPrunedWeights() > 0L);
+
+		List<Map<FieldName, String>> records;
+
+		try(InputStream is = (WeightPrunerTest.class).getResourceAsStream("/csv/" + dataset + ".csv")){
+			records = BatchUtil.parseRecords(CsvUtil.readTable(is, ","), Functions.<String>identity());
+		}
+
+		double result = 0d;
+
+		for(Map<FieldName, String> record : records){
+			Map<String, ?> expectedResults = evaluate(expectedEvaluator, record);
+			Map<String, ?> actualResults = evaluate(actualEvaluator, record);
+
+			List<String> fields = new ArrayList<>();
+
+			// The predicted value of a regression model, and the probabilities of a classification model
+			if((MiningFunction.REGRESSION).equals(expectedEvaluator.getMiningFunction())){
+				List<TargetField> targetFields = expectedEvaluator.getTargetFields();
+
+				for(TargetField targetField : targetFields){
+					fields.add((targetField.getName()).getValue());
+				}
+			}
+
+			List<OutputField> outputFields = expectedEvaluator.getOutputFields();
+			for(OutputField outputField : outputFields){
+				fields.add((outputField.getName()).getValue());
+			}
+
+			for(String field : fields){
+				Object expectedValue = expectedResults.get(field);
+				Object actualValue = actualResults.get(field);
+
+				if(expectedValue instanceof Number){
+					result = Math.max(result, Math.abs(((Number)expectedValue).doubleValue() - ((Number)actualValue).doubleValue()));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	static
+	private int countPredictors(PMML pmml){
+		RegressionModel regressionModel = (RegressionModel)Iterables.getOnlyElement(pmml.getModels());
+
+		int result = 0;
+
+		List<RegressionTable> regressionTables = regressionModel.getRegressionTables();
+		for(RegressionTable regressionTable : regressionTables){
+			result += (regressionTable.getNumericPredictors()).size() + (regressionTable.getCategoricalPredictors()).size();
+		}
+
+		return result;
+	}
+
+	static
+	private Evaluator createEvaluator(PMML pmml){
+		ModelEvaluatorFactory modelEvaluatorFactory = ModelEvaluatorFactory.newInstance();
+
+		Evaluator evaluator = modelEvaluatorFactory.newModelEvaluator(pmml);
+		evaluator.verify();
+
+		return evaluator;
+	}
+
+	static
+	private Map<String, ?> evaluate(Evaluator evaluator, Map<FieldName, String> record){
+		Map<FieldName, FieldValue> arguments = new LinkedHashMap<>();
+
+		List<InputField> inputFields = evaluator.getInputFields();
+		for(InputField inputField : inputFields){
+			FieldName name = inputField.getName();
+
+			arguments.put(name, inputField.prepare(record.get(name)));
+		}
+
+		return EvaluatorUtil.decode(evaluator.evaluate(arguments));
+	}
+}